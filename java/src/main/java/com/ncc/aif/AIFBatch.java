@@ -0,0 +1,533 @@
+package com.ncc.aif;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Bulk versions of the {@link AIFUtils} methods called most often while building a document's knowledge elements.
+ * Each call produces the same triples and blank nodes as the equivalent {@link AIFUtils} calls, but collects them in
+ * a buffer sized in advance and adds them to the model's graph in one batch, so that graph listeners are notified
+ * once per call rather than once per triple.  Confidences are shared as {@link AIFUtils#enableInterning(Model)}
+ * describes, and text justifications as {@link AIFUtils#enableJustificationSharing(Model)} does, if the model shares
+ * them, and resources without a URI are named by the model's
+ * {@link AIFUtils#setIriGenerator IriGenerator}, if it has one.  Claims are written in bulk by a {@link ClaimWriter}.
+ */
+public final class AIFBatch {
+
+    // Do not instantiate AIFBatch, just access public methods statically.
+    private AIFBatch() {
+    }
+
+    /**
+     * A snippet of text justifying a knowledge element, as made by
+     * {@link AIFUtils#makeTextJustification(Model, String, int, int, Resource, Double, String)}.
+     */
+    public static final class TextSpan {
+        private final String docId;
+        private final int startOffset;
+        private final int endOffsetInclusive;
+        private final double confidence;
+        private String uri;
+
+        public TextSpan(String docId, int startOffset, int endOffsetInclusive, double confidence) {
+            if (endOffsetInclusive < startOffset) {
+                throw new IllegalArgumentException("End offset " + endOffsetInclusive + " precedes start offset " + startOffset);
+            }
+            if (startOffset < 0) {
+                throw new IllegalArgumentException("Start offset must be non-negative but got " + startOffset);
+            }
+            this.docId = docId;
+            this.startOffset = startOffset;
+            this.endOffsetInclusive = endOffsetInclusive;
+            this.confidence = confidence;
+        }
+
+        public TextSpan setUri(String uri) {
+            this.uri = uri;
+            return this;
+        }
+
+        public String getDocId() {
+            return docId;
+        }
+
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+        public int getEndOffsetInclusive() {
+            return endOffsetInclusive;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+    }
+
+    /**
+     * An entity, event, or relation to make, with an optional type assertion and the text justifying it.  Once made,
+     * its resources are available from {@link #getResource()} and {@link #getTypeAssertion()}.
+     */
+    public static final class KE {
+        private final String uri;
+        private final Resource classType;
+        private Resource system;
+        private Resource type;
+        private Double typeConfidence;
+        private String typeAssertionUri;
+        private final List<TextSpan> justifications = new ArrayList<>(1);
+        private Resource resource;
+        private Resource typeAssertion;
+
+        private KE(String uri, Resource classType) {
+            this.uri = uri;
+            this.classType = classType;
+        }
+
+        public static KE entity(String uri) {
+            return new KE(uri, InterchangeOntology.Entity);
+        }
+
+        public static KE event(String uri) {
+            return new KE(uri, InterchangeOntology.Event);
+        }
+
+        public static KE relation(String uri) {
+            return new KE(uri, InterchangeOntology.Relation);
+        }
+
+        /**
+         * Set the system that made this KE, in place of the one given for the whole batch
+         */
+        public KE setSystem(Resource system) {
+            this.system = system;
+            return this;
+        }
+
+        /**
+         * Assert that this KE has <code>type</code>, as {@link AIFUtils#markType} does
+         */
+        public KE setType(Resource type, Double confidence) {
+            this.type = type;
+            this.typeConfidence = confidence;
+            return this;
+        }
+
+        public KE setTypeAssertionUri(String typeAssertionUri) {
+            this.typeAssertionUri = typeAssertionUri;
+            return this;
+        }
+
+        /**
+         * Justify this KE's type assertion, or the KE itself if it has no type, with a snippet of text
+         */
+        public KE addJustification(TextSpan justification) {
+            justifications.add(justification);
+            return this;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public Resource getType() {
+            return type;
+        }
+
+        public List<TextSpan> getJustifications() {
+            return justifications;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public Resource getTypeAssertion() {
+            return typeAssertion;
+        }
+    }
+
+    /**
+     * Make each of <code>kes</code>, with its type assertion and text justifications.
+     *
+     * @param model  The underlying RDF model for the operation
+     * @param kes    The knowledge elements to make
+     * @param system The system object for the system which created the KEs, unless a KE sets its own
+     * @return The created KE resources, in the order of <code>kes</code>
+     */
+    public static List<Resource> makeKEs(@Nonnull Model model, @Nonnull List<KE> kes, @Nullable Resource system) {
+        int size = 0;
+        for (KE ke : kes) {
+            final Resource keSystem = ke.system == null ? system : ke.system;
+            size += resourceSize(keSystem);
+            if (ke.type != null) {
+                size += resourceSize(keSystem) + 4 + (ke.typeConfidence == null ? 0 : confidenceSize(keSystem));
+            }
+            size += ke.justifications.size() * (textJustificationSize(keSystem) + 1);
+        }
+
+        final TripleBuffer triples = new TripleBuffer(model, size);
+        final List<Resource> made = new ArrayList<>(kes.size());
+        for (KE ke : kes) {
+            final Resource keSystem = ke.system == null ? system : ke.system;
+            final Node resource = triples.aifResource(ke.uri, ke.classType, keSystem);
+            Node justified = resource;
+            if (ke.type != null) {
+                justified = triples.aifResource(ke.typeAssertionUri, RDF.Statement, keSystem);
+                triples.add(justified, RDF.subject, resource);
+                triples.add(justified, RDF.predicate, RDF.type.asNode());
+                triples.add(justified, RDF.object, ke.type.asNode());
+                if (ke.typeConfidence != null) {
+                    triples.confidence(justified, ke.typeConfidence, keSystem);
+                }
+                triples.add(justified, RDF.type, InterchangeOntology.TypeStatement.asNode());
+                ke.typeAssertion = model.wrapAsResource(justified);
+            }
+            for (TextSpan span : ke.justifications) {
+                triples.add(justified, InterchangeOntology.justifiedBy, triples.textJustification(span, keSystem));
+            }
+            ke.resource = model.wrapAsResource(resource);
+            made.add(ke.resource);
+        }
+        triples.addToModel();
+        return made;
+    }
+
+    /**
+     * Mark each of <code>toMarkOn</code> as justified by the snippet of text at the same position in
+     * <code>justifications</code>, as {@link AIFUtils#markTextJustification} does.
+     *
+     * @param model          The underlying RDF model for the operation
+     * @param toMarkOn       The Resources to be marked
+     * @param justifications The justification of each resource to be marked
+     * @param system         The system object for the system which marked these justifications
+     * @return The created text justification resources, in order
+     */
+    public static List<Resource> markTextJustifications(@Nonnull Model model, @Nonnull List<Resource> toMarkOn,
+                                                        @Nonnull List<TextSpan> justifications,
+                                                        @Nullable Resource system) {
+        checkSameSize(toMarkOn, justifications.size());
+        final TripleBuffer triples = new TripleBuffer(model,
+                justifications.size() * (textJustificationSize(system) + 1));
+        final List<Resource> made = new ArrayList<>(justifications.size());
+        for (int i = 0; i < justifications.size(); i++) {
+            final Node justification = triples.textJustification(justifications.get(i), system);
+            triples.add(toMarkOn.get(i).asNode(), InterchangeOntology.justifiedBy, justification);
+            made.add(model.wrapAsResource(justification));
+        }
+        triples.addToModel();
+        return made;
+    }
+
+    /**
+     * Mark each of <code>toMarkOn</code> with the confidence at the same position in <code>confidences</code>, as
+     * {@link AIFUtils#markConfidence} does.
+     *
+     * @param model       The underlying RDF model for the operation
+     * @param toMarkOn    The Resources to mark with confidences
+     * @param confidences The confidence with which to mark each resource
+     * @param system      The system object for the system which marked these confidences
+     */
+    public static void markConfidences(@Nonnull Model model, @Nonnull List<Resource> toMarkOn,
+                                       @Nonnull double[] confidences, @Nullable Resource system) {
+        checkSameSize(toMarkOn, confidences.length);
+        final TripleBuffer triples = new TripleBuffer(model, confidences.length * confidenceSize(system));
+        for (int i = 0; i < confidences.length; i++) {
+            triples.confidence(toMarkOn.get(i).asNode(), confidences[i], system);
+        }
+        triples.addToModel();
+    }
+
+    /**
+     * Mark each of <code>toMarkOn</code> as coming from <code>system</code>, as {@link AIFUtils#markSystem} does.
+     *
+     * @param model    The underlying RDF model for the operation
+     * @param toMarkOn The Resources to mark
+     * @param system   The system with which to mark the resources
+     */
+    public static void markSystem(@Nonnull Model model, @Nonnull Collection<Resource> toMarkOn,
+                                  @Nonnull Resource system) {
+        final TripleBuffer triples = new TripleBuffer(model, toMarkOn.size());
+        for (Resource resource : toMarkOn) {
+            triples.add(resource.asNode(), InterchangeOntology.system, system.asNode());
+        }
+        triples.addToModel();
+    }
+
+    /**
+     * Writes many claims and their components in bulk, producing the same triples as {@link Claim#addToModel} and
+     * {@link ClaimComponent#addToModel} except that unnamed components are shared.  A component written without a URI
+     * that has the same name, identity, types, provenance, and KE as one already written without a URI, such as the
+     * claimer of many claims, is not written again; {@link #addComponent} returns the resource of the first instead.
+     * Triples are added to the model in batches, so writing to a model made by {@link AIFUtils#createStreamingModel}
+     * streams claims to its sink as they are written, while only the unnamed components are remembered.  Close the
+     * writer, or {@link #flush()} it, to add the last batch.
+     * <p>
+     * A writer is not thread-safe.
+     */
+    public static final class ClaimWriter implements AutoCloseable {
+        // The number of triples to collect before adding them to the model
+        private static final int BATCH_SIZE = 8192;
+
+        private final Model model;
+        private final Resource system;
+        private final TripleBuffer triples;
+        private final Map<List<Object>, Resource> components = new HashMap<>();
+
+        /**
+         * @param model  The underlying RDF model to which to write
+         * @param system The system object for the system which made the claims
+         */
+        public ClaimWriter(@Nonnull Model model, @Nullable Resource system) {
+            this.model = model;
+            this.system = system;
+            this.triples = new TripleBuffer(model, BATCH_SIZE);
+        }
+
+        /**
+         * Write <code>component</code>, as {@link ClaimComponent#addToModel} does.  A component without a URI is not
+         * written if an identical one has been written without a URI; a component with a URI is always written with
+         * that URI, so it is never merged into another.
+         *
+         * @param component The component to write
+         * @param uri       The URI of the component, or null to share an identical unnamed component
+         * @return The resource of the component, or of the identical unnamed one written before
+         */
+        public Resource addComponent(@Nonnull ClaimComponent component, @Nullable String uri) {
+            if (uri != null) {
+                final Resource resource = writeComponent(component, uri);
+                component.setResource(resource);
+                return resource;
+            }
+            final List<Object> key = Arrays.asList(component.getName(), component.getIdentity(),
+                    component.getTypes() == null ? Collections.emptySet() : new HashSet<>(component.getTypes()),
+                    component.getProvenance(), component.getKE() == null ? null : component.getKE().asNode());
+            Resource resource = components.get(key);
+            if (resource == null) {
+                resource = writeComponent(component, null);
+                components.put(key, resource);
+            }
+            component.setResource(resource);
+            return resource;
+        }
+
+        private Resource writeComponent(ClaimComponent component, String uri) {
+            final Node node = triples.aifResource(uri, InterchangeOntology.ClaimComponent, system);
+            triples.add(node, InterchangeOntology.componentName, string(component.getName()));
+            triples.add(node, InterchangeOntology.componentIdentity, string(component.getIdentity()));
+            if (component.getProvenance() != null) {
+                triples.add(node, InterchangeOntology.componentProvenance, string(component.getProvenance()));
+            }
+            if (component.getKE() != null) {
+                triples.add(node, InterchangeOntology.componentKE, component.getKE().asNode());
+            }
+            addStrings(node, InterchangeOntology.componentType, component.getTypes());
+            flushIfFull();
+            return model.wrapAsResource(node);
+        }
+
+        /**
+         * Write <code>claim</code>, as {@link Claim#addToModel} does.  Its components should already have been
+         * written with {@link #addComponent} so that they are shared.
+         *
+         * @param claim The claim to write
+         * @param uri   The URI of the claim
+         * @return The resource of the claim
+         */
+        public Resource addClaim(@Nonnull Claim claim, @Nullable String uri) {
+            final Node node = triples.aifResource(uri, InterchangeOntology.Claim, system);
+            // required properties
+            triples.add(node, InterchangeOntology.sourceDocument, string(claim.getSourceDocument()));
+            triples.add(node, InterchangeOntology.topic, string(claim.getTopic()));
+            triples.add(node, InterchangeOntology.subtopic, string(claim.getSubtopic()));
+            triples.add(node, InterchangeOntology.claimTemplate, string(claim.getClaimTemplate()));
+            triples.add(node, InterchangeOntology.naturalLanguageDescription,
+                    string(claim.getNaturalLanguageDescription()));
+            triples.add(node, InterchangeOntology.claimer, claim.getClaimer().asNode());
+            triples.add(node, InterchangeOntology.epistemic, claim.getEpistemic().asNode());
+            triples.add(node, InterchangeOntology.sentiment, claim.getSentiment().asNode());
+            if (claim.hasImportance()) {
+                triples.add(node, InterchangeOntology.importance,
+                        model.createTypedLiteral(claim.getImportance()).asNode());
+            }
+
+            // optional properties
+            if (claim.getClaimId() != null) {
+                triples.add(node, InterchangeOntology.claimId, string(claim.getClaimId()));
+            }
+            if (claim.getQueryId() != null) {
+                triples.add(node, InterchangeOntology.queryId, string(claim.getQueryId()));
+            }
+            addResource(node, InterchangeOntology.claimDateTime, claim.getClaimDateTime());
+            addResource(node, InterchangeOntology.claimLocation, claim.getClaimLocation());
+            addResource(node, InterchangeOntology.claimMedium, claim.getClaimMedium());
+
+            // collections
+            addResources(node, InterchangeOntology.xVariable, claim.getXVariables());
+            addResources(node, InterchangeOntology.claimSemantics, claim.getClaimSemantics());
+            addResources(node, InterchangeOntology.associatedKEs, claim.getAssociatedKEs());
+            addResources(node, InterchangeOntology.claimerAffiliation, claim.getClaimerAffiliation());
+            addStrings(node, InterchangeOntology.identicalClaims, claim.getIdenticalClaims());
+            addStrings(node, InterchangeOntology.relatedClaims, claim.getRelatedClaims());
+            addStrings(node, InterchangeOntology.supportingClaims, claim.getSupportingClaims());
+            addStrings(node, InterchangeOntology.refutingClaims, claim.getRefutingClaims());
+
+            final Resource resource = model.wrapAsResource(node);
+            claim.setResource(resource);
+            flushIfFull();
+            return resource;
+        }
+
+        private static Node string(String value) {
+            return NodeFactory.createLiteral(value);
+        }
+
+        private void addResource(Node subject, Property property, Resource object) {
+            if (object != null) {
+                triples.add(subject, property, object.asNode());
+            }
+        }
+
+        private void addResources(Node subject, Property property, Collection<Resource> objects) {
+            if (objects != null) {
+                objects.forEach(object -> addResource(subject, property, object));
+            }
+        }
+
+        private void addStrings(Node subject, Property property, Collection<String> objects) {
+            if (objects != null) {
+                objects.forEach(object -> triples.add(subject, property, string(object)));
+            }
+        }
+
+        private void flushIfFull() {
+            if (triples.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Add the triples written so far to the model
+         */
+        public void flush() {
+            triples.addToModel();
+        }
+
+        /**
+         * Add the triples written so far to the model.  The model is not closed.
+         */
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+
+    private static void checkSameSize(List<Resource> toMarkOn, int size) {
+        if (toMarkOn.size() != size) {
+            throw new IllegalArgumentException("Expected " + toMarkOn.size() + " values to mark but got " + size);
+        }
+    }
+
+    // The number of triples added by TripleBuffer.aifResource, confidence, and textJustification
+    private static int resourceSize(Resource system) {
+        return system == null ? 1 : 2;
+    }
+
+    private static int confidenceSize(Resource system) {
+        return resourceSize(system) + 2;
+    }
+
+    private static int textJustificationSize(Resource system) {
+        return resourceSize(system) + 3 + confidenceSize(system);
+    }
+
+    // Triples made for one call, added to the model together
+    private static final class TripleBuffer {
+        private final Model model;
+        private final List<Triple> triples;
+
+        private TripleBuffer(Model model, int size) {
+            this.model = model;
+            this.triples = new ArrayList<>(size);
+        }
+
+        private void add(Node subject, Property predicate, Node object) {
+            triples.add(Triple.create(subject, predicate.asNode(), object));
+        }
+
+        // As AIFUtils.makeAIFResource
+        private Node aifResource(String uri, Resource classType, Resource system) {
+            return blankAIFResource(uri == null ? AIFUtils.nextIri(model, classType) : uri, classType, system);
+        }
+
+        private Node blankAIFResource(String uri, Resource classType, Resource system) {
+            final Node resource = uri == null ? NodeFactory.createBlankNode() : NodeFactory.createURI(uri);
+            add(resource, RDF.type, classType.asNode());
+            if (system != null) {
+                add(resource, InterchangeOntology.system, system.asNode());
+            }
+            return resource;
+        }
+
+        // As AIFUtils.markConfidence
+        private void confidence(Node toMarkOn, double confidence, Resource system) {
+            final Node node = NodeCache.ANNOTATIONS.get(model, () -> {
+                final Node created = blankAIFResource(null, InterchangeOntology.Confidence, system);
+                add(created, InterchangeOntology.confidenceValue, model.createTypedLiteral(confidence).asNode());
+                return created;
+            }, InterchangeOntology.Confidence, confidence, system == null ? null : system.asNode());
+            add(toMarkOn, InterchangeOntology.confidence, node);
+        }
+
+        // As AIFUtils.makeTextJustification, sharing a justification without a URI under the same key
+        private Node textJustification(TextSpan span, Resource system) {
+            if (span.uri != null) {
+                return newTextJustification(span, system);
+            }
+            return NodeCache.JUSTIFICATIONS.get(model, () -> newTextJustification(span, system),
+                    InterchangeOntology.TextJustification, span.docId, span.startOffset, span.endOffsetInclusive,
+                    system, span.confidence);
+        }
+
+        private Node newTextJustification(TextSpan span, Resource system) {
+            final Node justification = aifResource(span.uri, InterchangeOntology.TextJustification, system);
+            add(justification, InterchangeOntology.source, model.createTypedLiteral(span.docId).asNode());
+            confidence(justification, span.confidence, system);
+            add(justification, InterchangeOntology.startOffset, model.createTypedLiteral(span.startOffset).asNode());
+            add(justification, InterchangeOntology.endOffsetInclusive,
+                    model.createTypedLiteral(span.endOffsetInclusive).asNode());
+            return justification;
+        }
+
+        private int size() {
+            return triples.size();
+        }
+
+        private void addToModel() {
+            GraphUtil.add(model.getGraph(), triples);
+            triples.clear();
+        }
+    }
+}
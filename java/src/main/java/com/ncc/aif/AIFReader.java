@@ -0,0 +1,635 @@
+package com.ncc.aif;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.ncc.aif.AIFUtils.BoundingBox;
+import com.ncc.aif.AIFUtils.Point;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Typed, read-only views of the entities, events, clusters, justifications, and claims of an AIF model, the reading
+ * counterpart of {@link AIFUtils} and {@link Claim}.
+ * <p>
+ * A view is only a node of the model's graph; nothing is read until a getter is called, and then only by looking up
+ * that node in the graph's indexes.  Each view caches what it has looked up, so a view should not outlive changes to
+ * the model, nor be shared between threads.  Streams of all views of a type read the graph as they are consumed, so
+ * they may be used on KBs of any size; close them if they are not consumed to the end.
+ */
+public final class AIFReader {
+    private final Model model;
+    private final Graph graph;
+
+    /**
+     * Create a reader of <code>model</code>
+     *
+     * @param model The model to read
+     */
+    public AIFReader(@Nonnull Model model) {
+        this.model = model;
+        this.graph = model.getGraph();
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * @return A stream of the entities of the model
+     */
+    public Stream<EntityView> entities() {
+        return instancesOf(InterchangeOntology.Entity, EntityView::new);
+    }
+
+    /**
+     * @return A stream of the events of the model
+     */
+    public Stream<EventView> events() {
+        return instancesOf(InterchangeOntology.Event, EventView::new);
+    }
+
+    /**
+     * @return A stream of the same-as clusters of the model
+     */
+    public Stream<ClusterView> clusters() {
+        return instancesOf(InterchangeOntology.SameAsCluster, ClusterView::new);
+    }
+
+    /**
+     * @return A stream of the claims of the model
+     */
+    public Stream<ClaimView> claims() {
+        return instancesOf(InterchangeOntology.Claim, ClaimView::new);
+    }
+
+    public EntityView entity(@Nonnull Resource entity) {
+        return new EntityView(this, entity.asNode());
+    }
+
+    public EventView event(@Nonnull Resource event) {
+        return new EventView(this, event.asNode());
+    }
+
+    public ClusterView cluster(@Nonnull Resource cluster) {
+        return new ClusterView(this, cluster.asNode());
+    }
+
+    public JustificationView justification(@Nonnull Resource justification) {
+        return new JustificationView(this, justification.asNode());
+    }
+
+    public ClaimView claim(@Nonnull Resource claim) {
+        return new ClaimView(this, claim.asNode());
+    }
+
+    private interface ViewFactory<T extends View> {
+        T create(AIFReader reader, Node node);
+    }
+
+    private <T extends View> Stream<T> instancesOf(Resource classType, ViewFactory<T> factory) {
+        final ExtendedIterator<T> views = graph.find(Node.ANY, RDF.Nodes.type, classType.asNode())
+                .mapWith(triple -> factory.create(this, triple.getSubject()));
+        return Iter.asStream(views).onClose(views::close);
+    }
+
+    private ImmutableList<Node> objects(Node subject, Property property) {
+        return collect(graph.find(subject, property.asNode(), Node.ANY), Triple::getObject);
+    }
+
+    private ImmutableList<Node> subjects(Property property, Node object) {
+        return collect(graph.find(Node.ANY, property.asNode(), object), Triple::getSubject);
+    }
+
+    private static ImmutableList<Node> collect(ExtendedIterator<Triple> triples, Function<Triple, Node> position) {
+        final ImmutableList.Builder<Node> nodes = ImmutableList.builder();
+        try {
+            while (triples.hasNext()) {
+                nodes.add(position.apply(triples.next()));
+            }
+        } finally {
+            triples.close();
+        }
+        return nodes.build();
+    }
+
+    @Nullable
+    private Node object(Node subject, Property property) {
+        final ExtendedIterator<Triple> triples = graph.find(subject, property.asNode(), Node.ANY);
+        try {
+            return triples.hasNext() ? triples.next().getObject() : null;
+        } finally {
+            triples.close();
+        }
+    }
+
+    private ImmutableList<Resource> resources(ImmutableList<Node> nodes) {
+        final ImmutableList.Builder<Resource> resources = ImmutableList.builderWithExpectedSize(nodes.size());
+        for (Node node : nodes) {
+            if (!node.isLiteral()) {
+                resources.add(model.wrapAsResource(node));
+            }
+        }
+        return resources.build();
+    }
+
+    private static ImmutableList<String> strings(ImmutableList<Node> nodes) {
+        final ImmutableList.Builder<String> strings = ImmutableList.builderWithExpectedSize(nodes.size());
+        for (Node node : nodes) {
+            if (node.isLiteral()) {
+                strings.add(node.getLiteralLexicalForm());
+            }
+        }
+        return strings.build();
+    }
+
+    @Nullable
+    private static Number number(@Nullable Node node) {
+        if (node == null || !node.isLiteral()) {
+            return null;
+        }
+        final Object value = node.getLiteralValue();
+        return value instanceof Number ? (Number) value : Double.valueOf(node.getLiteralLexicalForm());
+    }
+
+    /**
+     * A view of a node of the model, with the properties common to AIF objects
+     */
+    public abstract static class View {
+        final AIFReader reader;
+        final Node node;
+        // The objects of each property of this node looked up so far
+        private final Map<Property, ImmutableList<Node>> related = new HashMap<>();
+
+        private View(AIFReader reader, Node node) {
+            this.reader = reader;
+            this.node = node;
+        }
+
+        /**
+         * @return The objects of <code>property</code> of this node, looked up once
+         */
+        final ImmutableList<Node> related(Property property) {
+            return related.computeIfAbsent(property, p -> reader.objects(node, p));
+        }
+
+        @Nullable
+        final Node first(Property property) {
+            final ImmutableList<Node> objects = related(property);
+            return objects.isEmpty() ? null : objects.get(0);
+        }
+
+        @Nullable
+        final String string(Property property) {
+            final Node object = first(property);
+            return object == null || !object.isLiteral() ? null : object.getLiteralLexicalForm();
+        }
+
+        @Nullable
+        final Resource resource(Property property) {
+            final Node object = first(property);
+            return object == null || object.isLiteral() ? null : reader.model.wrapAsResource(object);
+        }
+
+        public Node getNode() {
+            return node;
+        }
+
+        public Resource getResource() {
+            return reader.model.wrapAsResource(node);
+        }
+
+        /**
+         * @return The URI of this node, or null if it is a blank node
+         */
+        @Nullable
+        public String getUri() {
+            return node.isURI() ? node.getURI() : null;
+        }
+
+        /**
+         * @return The system which made this object, or null if none is given
+         */
+        @Nullable
+        public Resource getSystem() {
+            return resource(InterchangeOntology.system);
+        }
+
+        /**
+         * @return The values of the confidences of this object
+         */
+        public ImmutableList<Double> getConfidences() {
+            final ImmutableList<Node> confidences = related(InterchangeOntology.confidence);
+            final ImmutableList.Builder<Double> values = ImmutableList.builderWithExpectedSize(confidences.size());
+            for (Node confidence : confidences) {
+                final Number value = number(reader.object(confidence, InterchangeOntology.confidenceValue));
+                if (value != null) {
+                    values.add(value.doubleValue());
+                }
+            }
+            return values.build();
+        }
+
+        /**
+         * @return The justifications of this object
+         */
+        public ImmutableList<JustificationView> getJustifications() {
+            return justifications(related(InterchangeOntology.justifiedBy));
+        }
+
+        final ImmutableList<JustificationView> justifications(ImmutableList<Node> nodes) {
+            final ImmutableList.Builder<JustificationView> views = ImmutableList.builderWithExpectedSize(nodes.size());
+            for (Node justification : nodes) {
+                views.add(new JustificationView(reader, justification));
+            }
+            return views.build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o != null && o.getClass() == getClass() && node.equals(((View) o).node)
+                    && reader.graph == ((View) o).reader.graph;
+        }
+
+        @Override
+        public int hashCode() {
+            return node.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + node + ")";
+        }
+    }
+
+    /**
+     * A view of an entity, event, or relation
+     */
+    public abstract static class KEView extends View {
+        private ImmutableList<Node> typeAssertions;
+        private ImmutableList<Node> otherStatements;
+        private ImmutableList<ClusterView> clusters;
+
+        private KEView(AIFReader reader, Node node) {
+            super(reader, node);
+        }
+
+        // Sort the statements about this KE, found in one lookup, into type assertions and others
+        private void loadStatements() {
+            if (typeAssertions != null) {
+                return;
+            }
+            final ImmutableList.Builder<Node> types = ImmutableList.builder();
+            final ImmutableList.Builder<Node> others = ImmutableList.builder();
+            for (Node statement : reader.subjects(RDF.subject, node)) {
+                if (reader.graph.contains(statement, RDF.Nodes.type, RDF.Nodes.Statement)) {
+                    if (reader.graph.contains(statement, RDF.Nodes.predicate, RDF.Nodes.type)) {
+                        types.add(statement);
+                    } else {
+                        others.add(statement);
+                    }
+                }
+            }
+            typeAssertions = types.build();
+            otherStatements = others.build();
+        }
+
+        /**
+         * @return The statements that this KE has a type, as made by {@link AIFUtils#markType}
+         */
+        public ImmutableList<Resource> getTypeAssertions() {
+            loadStatements();
+            return reader.resources(typeAssertions);
+        }
+
+        /**
+         * @return The types asserted of this KE
+         */
+        public ImmutableList<Resource> getTypes() {
+            loadStatements();
+            final ImmutableList.Builder<Node> types = ImmutableList.builderWithExpectedSize(typeAssertions.size());
+            for (Node typeAssertion : typeAssertions) {
+                final Node type = reader.object(typeAssertion, RDF.object);
+                if (type != null) {
+                    types.add(type);
+                }
+            }
+            return reader.resources(types.build());
+        }
+
+        /**
+         * @return The justifications of the type assertions of this KE
+         */
+        public ImmutableList<JustificationView> getTypeJustifications() {
+            loadStatements();
+            final ImmutableList.Builder<Node> justifications = ImmutableList.builder();
+            for (Node typeAssertion : typeAssertions) {
+                justifications.addAll(reader.objects(typeAssertion, InterchangeOntology.justifiedBy));
+            }
+            return justifications(justifications.build());
+        }
+
+        /**
+         * @return The clusters of which this KE is a possible member
+         */
+        public ImmutableList<ClusterView> getClusters() {
+            if (clusters == null) {
+                final ImmutableList.Builder<ClusterView> views = ImmutableList.builder();
+                for (Node membership : reader.subjects(InterchangeOntology.clusterMember, node)) {
+                    final Node cluster = reader.object(membership, InterchangeOntology.cluster);
+                    if (cluster != null) {
+                        views.add(new ClusterView(reader, cluster));
+                    }
+                }
+                clusters = views.build();
+            }
+            return clusters;
+        }
+
+        /**
+         * @return The reified statements about this KE other than type assertions, such as argument assertions
+         */
+        final ImmutableList<Node> getOtherStatements() {
+            loadStatements();
+            return otherStatements;
+        }
+    }
+
+    /**
+     * A view of an entity
+     */
+    public static final class EntityView extends KEView {
+        private EntityView(AIFReader reader, Node node) {
+            super(reader, node);
+        }
+
+        /**
+         * @return The names of this entity, as marked by {@link AIFUtils#markName}
+         */
+        public ImmutableList<String> getNames() {
+            return strings(related(InterchangeOntology.hasName));
+        }
+    }
+
+    /**
+     * A view of an event
+     */
+    public static final class EventView extends KEView {
+        private ImmutableListMultimap<Resource, Resource> arguments;
+
+        private EventView(AIFReader reader, Node node) {
+            super(reader, node);
+        }
+
+        /**
+         * @return The arguments of this event by role, as marked by {@link AIFUtils#markAsArgument}
+         */
+        public ImmutableListMultimap<Resource, Resource> getArguments() {
+            if (arguments == null) {
+                final ImmutableListMultimap.Builder<Resource, Resource> builder = ImmutableListMultimap.builder();
+                for (Node statement : getOtherStatements()) {
+                    final Node role = reader.object(statement, RDF.predicate);
+                    final Node argument = reader.object(statement, RDF.object);
+                    if (role != null && argument != null && !argument.isLiteral()) {
+                        builder.put(reader.model.wrapAsResource(role), reader.model.wrapAsResource(argument));
+                    }
+                }
+                arguments = builder.build();
+            }
+            return arguments;
+        }
+    }
+
+    /**
+     * A view of a same-as cluster
+     */
+    public static final class ClusterView extends View {
+        private ImmutableList<Node> members;
+
+        private ClusterView(AIFReader reader, Node node) {
+            super(reader, node);
+        }
+
+        @Nullable
+        public Resource getPrototype() {
+            return resource(InterchangeOntology.prototype);
+        }
+
+        @Nullable
+        public String getHandle() {
+            return string(InterchangeOntology.handle);
+        }
+
+        /**
+         * @return The possible members of this cluster, including its prototype if it is marked as a member
+         */
+        public ImmutableList<Resource> getMembers() {
+            if (members == null) {
+                final ImmutableList.Builder<Node> builder = ImmutableList.builder();
+                for (Node membership : reader.subjects(InterchangeOntology.cluster, node)) {
+                    final Node member = reader.object(membership, InterchangeOntology.clusterMember);
+                    if (member != null) {
+                        builder.add(member);
+                    }
+                }
+                members = builder.build();
+            }
+            return reader.resources(members);
+        }
+    }
+
+    /**
+     * A view of a justification of any kind
+     */
+    public static final class JustificationView extends View {
+        private JustificationView(AIFReader reader, Node node) {
+            super(reader, node);
+        }
+
+        /**
+         * @return The class of this justification, such as {@link InterchangeOntology#TextJustification}
+         */
+        @Nullable
+        public Resource getJustificationType() {
+            return resource(RDF.type);
+        }
+
+        @Nullable
+        public String getSource() {
+            return string(InterchangeOntology.source);
+        }
+
+        @Nullable
+        public String getSourceDocument() {
+            return string(InterchangeOntology.sourceDocument);
+        }
+
+        /**
+         * @return The start offset of this text justification, or null if it is not one
+         */
+        @Nullable
+        public Integer getStartOffset() {
+            final Number offset = number(first(InterchangeOntology.startOffset));
+            return offset == null ? null : offset.intValue();
+        }
+
+        /**
+         * @return The inclusive end offset of this text justification, or null if it is not one
+         */
+        @Nullable
+        public Integer getEndOffsetInclusive() {
+            final Number offset = number(first(InterchangeOntology.endOffsetInclusive));
+            return offset == null ? null : offset.intValue();
+        }
+
+        /**
+         * @return The bounding box of this image or key frame justification, or null if it has none
+         */
+        @Nullable
+        public BoundingBox getBoundingBox() {
+            final Node box = first(InterchangeOntology.boundingBox);
+            if (box == null) {
+                return null;
+            }
+            final Number[] coordinates = {
+                    number(reader.object(box, InterchangeOntology.boundingBoxUpperLeftX)),
+                    number(reader.object(box, InterchangeOntology.boundingBoxUpperLeftY)),
+                    number(reader.object(box, InterchangeOntology.boundingBoxLowerRightX)),
+                    number(reader.object(box, InterchangeOntology.boundingBoxLowerRightY))};
+            for (Number coordinate : coordinates) {
+                if (coordinate == null) {
+                    return null;
+                }
+            }
+            return new BoundingBox(new Point(coordinates[0].intValue(), coordinates[1].intValue()),
+                    new Point(coordinates[2].intValue(), coordinates[3].intValue()));
+        }
+    }
+
+    /**
+     * A view of a claim, as made by {@link Claim#addToModel}
+     */
+    public static final class ClaimView extends View {
+        private ClaimView(AIFReader reader, Node node) {
+            super(reader, node);
+        }
+
+        @Nullable
+        public String getClaimId() {
+            return string(InterchangeOntology.claimId);
+        }
+
+        @Nullable
+        public String getQueryId() {
+            return string(InterchangeOntology.queryId);
+        }
+
+        @Nullable
+        public String getSourceDocument() {
+            return string(InterchangeOntology.sourceDocument);
+        }
+
+        @Nullable
+        public Double getImportance() {
+            final Number importance = number(first(InterchangeOntology.importance));
+            return importance == null ? null : importance.doubleValue();
+        }
+
+        @Nullable
+        public String getTopic() {
+            return string(InterchangeOntology.topic);
+        }
+
+        @Nullable
+        public String getSubtopic() {
+            return string(InterchangeOntology.subtopic);
+        }
+
+        @Nullable
+        public String getClaimTemplate() {
+            return string(InterchangeOntology.claimTemplate);
+        }
+
+        @Nullable
+        public String getNaturalLanguageDescription() {
+            return string(InterchangeOntology.naturalLanguageDescription);
+        }
+
+        @Nullable
+        public Resource getClaimer() {
+            return resource(InterchangeOntology.claimer);
+        }
+
+        @Nullable
+        public Resource getEpistemic() {
+            return resource(InterchangeOntology.epistemic);
+        }
+
+        @Nullable
+        public Resource getSentiment() {
+            return resource(InterchangeOntology.sentiment);
+        }
+
+        @Nullable
+        public Resource getClaimDateTime() {
+            return resource(InterchangeOntology.claimDateTime);
+        }
+
+        @Nullable
+        public Resource getClaimLocation() {
+            return resource(InterchangeOntology.claimLocation);
+        }
+
+        @Nullable
+        public Resource getClaimMedium() {
+            return resource(InterchangeOntology.claimMedium);
+        }
+
+        public ImmutableList<Resource> getXVariables() {
+            return reader.resources(related(InterchangeOntology.xVariable));
+        }
+
+        public ImmutableList<Resource> getClaimSemantics() {
+            return reader.resources(related(InterchangeOntology.claimSemantics));
+        }
+
+        public ImmutableList<Resource> getClaimerAffiliation() {
+            return reader.resources(related(InterchangeOntology.claimerAffiliation));
+        }
+
+        public ImmutableList<Resource> getAssociatedKEs() {
+            return reader.resources(related(InterchangeOntology.associatedKEs));
+        }
+
+        public ImmutableList<String> getIdenticalClaims() {
+            return strings(related(InterchangeOntology.identicalClaims));
+        }
+
+        public ImmutableList<String> getRelatedClaims() {
+            return strings(related(InterchangeOntology.relatedClaims));
+        }
+
+        public ImmutableList<String> getSupportingClaims() {
+            return strings(related(InterchangeOntology.supportingClaims));
+        }
+
+        public ImmutableList<String> getRefutingClaims() {
+            return strings(related(InterchangeOntology.refutingClaims));
+        }
+    }
+}
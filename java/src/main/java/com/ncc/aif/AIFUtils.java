@@ -1,23 +1,35 @@
 package com.ncc.aif;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 
 import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
@@ -26,10 +38,13 @@ import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.NodeIterator;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.XSD;
 
@@ -43,10 +58,127 @@ import org.apache.jena.vocabulary.XSD;
  */
 public class AIFUtils {
 
+    // Shared by every call, as an ObjectMapper may be used by many threads once configured
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    // Generators of the graphs of models that name resources with them
+    private static final GraphRegistry<IriGenerator> IRI_GENERATORS = new GraphRegistry<>();
+
     // Do not instantiate AIFUtils, just access public methods statically.
     private AIFUtils() {
     }
 
+    /**
+     * Create a model whose statements are written to <code>stream</code> as they are added, rather than kept in
+     * memory.  Every method here that builds AIF may be used with it, producing the same triples and blank nodes as
+     * with an in-memory model, so that KBs of any size can be generated in constant memory.  The model is always
+     * empty when queried.  Close the model to finish the stream.  See {@link SinkGraph}.
+     *
+     * @param stream The stream to which to pass each statement added
+     * @return A write-only model
+     */
+    public static Model createStreamingModel(StreamRDF stream) {
+        return ModelFactory.createModelForGraph(new SinkGraph(stream));
+    }
+
+    /**
+     * Create a model whose statements are written to the KB at <code>path</code> as they are added, in the format
+     * and compression its name indicates, such as <code>KB.ttl</code> or <code>KB.rt.zst</code>.  Close the model to
+     * finish and close the file.  See {@link #createStreamingModel(StreamRDF)}.
+     *
+     * @param path The file to which to write the KB
+     * @return A write-only model
+     * @throws IOException if the file cannot be created
+     */
+    public static Model createStreamingModel(Path path) throws IOException {
+        return ModelFactory.createModelForGraph(SinkGraph.create(path));
+    }
+
+    /**
+     * Share identical confidence and bounding box nodes within <code>model</code>.  Once enabled, marking a confidence
+     * with the same value and system as an earlier one, or a justification with the same bounding box, refers to the
+     * node made earlier instead of making another, which the AIF shapes allow.  Only the 10,000 most recently used
+     * nodes are remembered.  Do not add properties to confidence or bounding box nodes of a model that shares them.
+     *
+     * @param model The model in which to share nodes
+     */
+    public static void enableInterning(Model model) {
+        enableInterning(model, NodeCache.ANNOTATIONS.getDefaultMaxSize());
+    }
+
+    /**
+     * Share identical confidence and bounding box nodes within <code>model</code>, remembering up to
+     * <code>maxNodes</code> of the most recently used.  See {@link #enableInterning(Model)}.
+     *
+     * @param model    The model in which to share nodes
+     * @param maxNodes The number of nodes to remember
+     */
+    public static void enableInterning(Model model, int maxNodes) {
+        NodeCache.ANNOTATIONS.enable(model, maxNodes);
+    }
+
+    /**
+     * Stop sharing nodes within <code>model</code>.  Nodes already shared remain so.
+     *
+     * @param model The model in which to stop sharing nodes
+     */
+    public static void disableInterning(Model model) {
+        NodeCache.ANNOTATIONS.disable(model);
+    }
+
+    /**
+     * Share identical justifications within <code>model</code>.  Once enabled, making a text, image, key frame, shot,
+     * audio, or video justification without a URI whose type, source document, span, system, and confidence match an
+     * earlier one returns the justification made earlier instead of making another, so that marking the same span on
+     * many KEs, for example with {@link #markJustification(Collection, Resource)}, adds one justification to the KB.
+     * Justifications made with a URI are never shared.  Only the 100,000 most recently used justifications are
+     * remembered.  Do not add properties, such as with {@link #addSourceDocumentToJustification}, to justifications
+     * of a model that shares them.
+     *
+     * @param model The model in which to share justifications
+     */
+    public static void enableJustificationSharing(Model model) {
+        enableJustificationSharing(model, NodeCache.JUSTIFICATIONS.getDefaultMaxSize());
+    }
+
+    /**
+     * Share identical justifications within <code>model</code>, remembering up to <code>maxJustifications</code> of
+     * the most recently used.  See {@link #enableJustificationSharing(Model)}.
+     *
+     * @param model             The model in which to share justifications
+     * @param maxJustifications The number of justifications to remember
+     */
+    public static void enableJustificationSharing(Model model, int maxJustifications) {
+        NodeCache.JUSTIFICATIONS.enable(model, maxJustifications);
+    }
+
+    /**
+     * Stop sharing justifications within <code>model</code>.  Justifications already shared remain so.
+     *
+     * @param model The model in which to stop sharing justifications
+     */
+    public static void disableJustificationSharing(Model model) {
+        NodeCache.JUSTIFICATIONS.disable(model);
+    }
+
+    /**
+     * Name the resources made in <code>model</code> without a URI with IRIs from <code>generator</code>, rather than
+     * as blank nodes.  This applies to every factory here and in {@link AIFBatch} that accepts a null URI, such as
+     * {@link #makeEntity} or {@link #makeTextJustification}.  Confidences, bounding boxes, times, and the other
+     * structures these factories make for themselves remain blank nodes.
+     *
+     * @param model     The model whose resources to name
+     * @param generator The generator to name them with, such as {@link IriGenerator#timeOrdered(String)}, or null to
+     *                  make blank nodes again
+     */
+    public static void setIriGenerator(@Nonnull Model model, @Nullable IriGenerator generator) {
+        if (generator == null) {
+            IRI_GENERATORS.remove(model.getGraph());
+        } else {
+            IRI_GENERATORS.put(model.getGraph(), generator);
+        }
+    }
+
     /**
      * Adds common non-ontology-specific namespaces to make AIF files more readable.
      */
@@ -357,6 +489,15 @@ public class AIFUtils {
         return justification;
     }
 
+    // Helper function to reuse an identical justification when the model shares them.  Justifications with a URI are
+    // always made by create.
+    private static Resource shareJustification(Model model, String uri, Supplier<Resource> create, Object... span) {
+        if (uri != null) {
+            return create.get();
+        }
+        return model.wrapAsResource(NodeCache.JUSTIFICATIONS.get(model, () -> create.get().asNode(), span));
+    }
+
     /**
      * Mark something as being justified by a particular justification.
      *
@@ -414,15 +555,17 @@ public class AIFUtils {
             throw new IllegalArgumentException("Start offset must be non-negative but got " + startOffset);
         }
 
-        final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.TextJustification,
-                system, confidence, uri);
-        // the document ID for the justifying source document
-        justification.addProperty(InterchangeOntology.startOffset,
-                model.createTypedLiteral(startOffset));
-        justification.addProperty(InterchangeOntology.endOffsetInclusive,
-                model.createTypedLiteral(endOffsetInclusive));
+        return shareJustification(model, uri, () -> {
+            final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.TextJustification,
+                    system, confidence, uri);
+            // the document ID for the justifying source document
+            justification.addProperty(InterchangeOntology.startOffset,
+                    model.createTypedLiteral(startOffset));
+            justification.addProperty(InterchangeOntology.endOffsetInclusive,
+                    model.createTypedLiteral(endOffsetInclusive));
 
-        return justification;
+            return justification;
+        }, InterchangeOntology.TextJustification, docId, startOffset, endOffsetInclusive, system, confidence);
     }
 
     /**
@@ -623,16 +766,20 @@ public class AIFUtils {
     // Mark the specified resource with the specified bounding box.
     private static Resource markBoundingBox(Model model, Resource toMarkOn, BoundingBox boundingBox) {
 
-        final Resource boundingBoxResource = model.createResource();
-        boundingBoxResource.addProperty(RDF.type, InterchangeOntology.BoundingBox);
-        boundingBoxResource.addProperty(InterchangeOntology.boundingBoxUpperLeftX,
-                model.createTypedLiteral(boundingBox.upperLeft.x));
-        boundingBoxResource.addProperty(InterchangeOntology.boundingBoxUpperLeftY,
-                model.createTypedLiteral(boundingBox.upperLeft.y));
-        boundingBoxResource.addProperty(InterchangeOntology.boundingBoxLowerRightX,
-                model.createTypedLiteral(boundingBox.lowerRight.x));
-        boundingBoxResource.addProperty(InterchangeOntology.boundingBoxLowerRightY,
-                model.createTypedLiteral(boundingBox.lowerRight.y));
+        final Resource boundingBoxResource = model.wrapAsResource(NodeCache.ANNOTATIONS.get(model, () -> {
+            final Resource created = model.createResource();
+            created.addProperty(RDF.type, InterchangeOntology.BoundingBox);
+            created.addProperty(InterchangeOntology.boundingBoxUpperLeftX,
+                    model.createTypedLiteral(boundingBox.upperLeft.x));
+            created.addProperty(InterchangeOntology.boundingBoxUpperLeftY,
+                    model.createTypedLiteral(boundingBox.upperLeft.y));
+            created.addProperty(InterchangeOntology.boundingBoxLowerRightX,
+                    model.createTypedLiteral(boundingBox.lowerRight.x));
+            created.addProperty(InterchangeOntology.boundingBoxLowerRightY,
+                    model.createTypedLiteral(boundingBox.lowerRight.y));
+            return created.asNode();
+        }, InterchangeOntology.BoundingBox, boundingBox.upperLeft.x, boundingBox.upperLeft.y,
+                boundingBox.lowerRight.x, boundingBox.lowerRight.y));
 
         toMarkOn.addProperty(InterchangeOntology.boundingBox, boundingBoxResource);
 
@@ -667,10 +814,13 @@ public class AIFUtils {
      */
     public static Resource makeImageJustification(Model model, String docId, BoundingBox boundingBox, Resource system,
                                                   Double confidence, String uri) {
-        final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.ImageJustification,
-                system, confidence, uri);
-        markBoundingBox(model, justification, boundingBox);
-        return justification;
+        return shareJustification(model, uri, () -> {
+            final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.ImageJustification,
+                    system, confidence, uri);
+            markBoundingBox(model, justification, boundingBox);
+            return justification;
+        }, InterchangeOntology.ImageJustification, docId, boundingBox.upperLeft.x, boundingBox.upperLeft.y,
+                boundingBox.lowerRight.x, boundingBox.lowerRight.y, system, confidence);
     }
 
     /**
@@ -771,11 +921,14 @@ public class AIFUtils {
      */
     public static Resource makeKeyFrameVideoJustification(Model model, String docId, String keyFrame, BoundingBox boundingBox,
                                                           Resource system, Double confidence, String uri) {
-        final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.KeyFrameVideoJustification,
-                system, confidence, uri);
-        justification.addProperty(InterchangeOntology.keyFrame, model.createTypedLiteral(keyFrame));
-        markBoundingBox(model, justification, boundingBox);
-        return justification;
+        return shareJustification(model, uri, () -> {
+            final Resource justification = makeAIFJustification(model, docId,
+                    InterchangeOntology.KeyFrameVideoJustification, system, confidence, uri);
+            justification.addProperty(InterchangeOntology.keyFrame, model.createTypedLiteral(keyFrame));
+            markBoundingBox(model, justification, boundingBox);
+            return justification;
+        }, InterchangeOntology.KeyFrameVideoJustification, docId, keyFrame, boundingBox.upperLeft.x,
+                boundingBox.upperLeft.y, boundingBox.lowerRight.x, boundingBox.lowerRight.y, system, confidence);
     }
 
     /**
@@ -880,10 +1033,12 @@ public class AIFUtils {
      */
     public static Resource makeShotVideoJustification(Model model, String docId, String shotId, Resource system,
                                                       Double confidence, String uri) {
-        final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.ShotVideoJustification,
-                system, confidence, uri);
-        justification.addProperty(InterchangeOntology.shot, model.createTypedLiteral(shotId));
-        return justification;
+        return shareJustification(model, uri, () -> {
+            final Resource justification = makeAIFJustification(model, docId,
+                    InterchangeOntology.ShotVideoJustification, system, confidence, uri);
+            justification.addProperty(InterchangeOntology.shot, model.createTypedLiteral(shotId));
+            return justification;
+        }, InterchangeOntology.ShotVideoJustification, docId, shotId, system, confidence);
     }
 
     /**
@@ -988,15 +1143,17 @@ public class AIFUtils {
             throw new IllegalArgumentException("End timestamp " + endTimestamp
                     + " does not follow start timestamp " + startTimestamp);
         }
-        final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.AudioJustification,
-                system, confidence, uri);
+        return shareJustification(model, uri, () -> {
+            final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.AudioJustification,
+                    system, confidence, uri);
 
-        justification.addProperty(InterchangeOntology.startTimestamp,
-                model.createTypedLiteral(startTimestamp));
-        justification.addProperty(InterchangeOntology.endTimestamp,
-                model.createTypedLiteral(endTimestamp));
+            justification.addProperty(InterchangeOntology.startTimestamp,
+                    model.createTypedLiteral(startTimestamp));
+            justification.addProperty(InterchangeOntology.endTimestamp,
+                    model.createTypedLiteral(endTimestamp));
 
-        return justification;
+            return justification;
+        }, InterchangeOntology.AudioJustification, docId, startTimestamp, endTimestamp, system, confidence);
     }
 
     /**
@@ -1096,14 +1253,16 @@ public class AIFUtils {
             throw new IllegalArgumentException("End timestamp " + endTimestamp
                     + " does not follow start timestamp " + startTimestamp);
         }
-        final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.VideoJustification,
-                system, confidence, uri);
+        return shareJustification(model, uri, () -> {
+            final Resource justification = makeAIFJustification(model, docId, InterchangeOntology.VideoJustification,
+                    system, confidence, uri);
 
-        justification.addProperty(InterchangeOntology.startTimestamp, model.createTypedLiteral(startTimestamp));
-        justification.addProperty(InterchangeOntology.endTimestamp, model.createTypedLiteral(endTimestamp));
-        justification.addProperty(InterchangeOntology.channel, channel);
+            justification.addProperty(InterchangeOntology.startTimestamp, model.createTypedLiteral(startTimestamp));
+            justification.addProperty(InterchangeOntology.endTimestamp, model.createTypedLiteral(endTimestamp));
+            justification.addProperty(InterchangeOntology.channel, channel);
 
-        return justification;
+            return justification;
+        }, InterchangeOntology.VideoJustification, docId, startTimestamp, endTimestamp, channel, system, confidence);
     }
     /**
      * Make an video justification.
@@ -1135,7 +1294,7 @@ public class AIFUtils {
     public static Resource markCompoundJustification(Model model, Collection<Resource> toMarkOn,
                                                      Collection<Resource> justifications,
                                                      Resource system, Double confidence) {
-        final Resource compoundJustification = makeAIFResource(model, null,
+        final Resource compoundJustification = makeBlankAIFResource(model,
                 InterchangeOntology.CompoundJustification, system);
         markConfidence(model, compoundJustification, confidence, system);
         justifications.forEach(j -> compoundJustification.addProperty(InterchangeOntology.containedJustification, j));
@@ -1152,10 +1311,13 @@ public class AIFUtils {
      * @param system     The system object for the system which marked this confidence
      */
     public static void markConfidence(Model model, Resource toMarkOn, Double confidence, Resource system) {
-        Resource confidenceBlankNode = model.createResource();
-        confidenceBlankNode.addProperty(RDF.type, InterchangeOntology.Confidence);
-        confidenceBlankNode.addProperty(InterchangeOntology.confidenceValue, model.createTypedLiteral(confidence));
-        markSystem(confidenceBlankNode, system);
+        Resource confidenceBlankNode = model.wrapAsResource(NodeCache.ANNOTATIONS.get(model, () -> {
+            final Resource created = model.createResource();
+            created.addProperty(RDF.type, InterchangeOntology.Confidence);
+            created.addProperty(InterchangeOntology.confidenceValue, model.createTypedLiteral(confidence));
+            markSystem(created, system);
+            return created.asNode();
+        }, InterchangeOntology.Confidence, confidence, system == null ? null : system.asNode()));
         toMarkOn.addProperty(InterchangeOntology.confidence, confidenceBlankNode);
     }
 
@@ -1206,7 +1368,7 @@ public class AIFUtils {
                     "things when making a mutual exclusion constraint, but got " + alternatives.size());
         }
         final Resource mutualExclusionAssertion =
-                makeAIFResource(model, null, InterchangeOntology.MutualExclusion, system);
+                makeBlankAIFResource(model, InterchangeOntology.MutualExclusion, system);
 
         // Iterate through each subgraph (collection of edges)
         for (Collection<Resource> edges : alternatives.keySet()) {
@@ -1455,7 +1617,7 @@ public class AIFUtils {
      */
     public static Resource markPrivateData(Model model, Resource resource, String jsonContent,
                                            Resource system) {
-        final Resource privateData = makeAIFResource(model, null, InterchangeOntology.PrivateData, system);
+        final Resource privateData = makeBlankAIFResource(model, InterchangeOntology.PrivateData, system);
         privateData.addProperty(InterchangeOntology.jsonContent, model.createTypedLiteral(jsonContent));
 
         resource.addProperty(InterchangeOntology.privateData, privateData);
@@ -1489,10 +1651,213 @@ public class AIFUtils {
      */
     public static Resource markPrivateData(Model model, Resource resource, String vectorType,
                                            List<Double> vectorData, Resource system) throws JsonProcessingException {
-        final ObjectMapper mapper = new ObjectMapper();
         final ImmutableMap<String, Object> jsonMap =
                 ImmutableMap.of("vector_type", vectorType, "vector_data", vectorData);
-        return markPrivateData(model, resource, mapper.writeValueAsString(jsonMap), system);
+        return markPrivateData(model, resource, JSON_MAPPER.writeValueAsString(jsonMap), system);
+    }
+
+    /**
+     * Mark data as <i>private</i> from vector data, stored compactly as 32-bit floats.  See
+     * {@link #markPrivateData(Model, Resource, String, List, Resource)} for what private data may contain.
+     * <p>
+     * Rather than a list of numbers, the JSON content of the private data holds the dimension of the vector and the
+     * base64 encoding of its little-endian values:
+     * <pre>
+     *     {"vector_type":"...","vector_encoding":"float32","vector_dimension":768,"vector_data_base64":"..."}
+     * </pre>
+     * which is about a quarter of the size, and much faster to read with {@link #getPrivateDataVectors(Resource)}.
+     *
+     * @param model      The underlying RDF model for the operation
+     * @param resource   The entity with which to associate private data
+     * @param vectorType A String URI describing the type of data
+     * @param vectorData The numeric data that represents the private data
+     * @param system     The system object for the system which marks the private data
+     * @return The created private data resource
+     * @throws JsonProcessingException if there was an error generating JSON from the specified vector data
+     */
+    public static Resource markPrivateData(Model model, Resource resource, String vectorType,
+                                           float[] vectorData, Resource system) throws JsonProcessingException {
+        final ByteBuffer bytes = ByteBuffer.allocate(vectorData.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(vectorData);
+        return markPrivateDataVector(model, resource, vectorType, PrivateDataVector.FLOAT32, vectorData.length,
+                bytes, system);
+    }
+
+    /**
+     * Mark data as <i>private</i> from vector data, stored compactly as 64-bit floats.  See
+     * {@link #markPrivateData(Model, Resource, String, float[], Resource)}, of which this is the
+     * <code>"float64"</code> encoding.
+     *
+     * @param model      The underlying RDF model for the operation
+     * @param resource   The entity with which to associate private data
+     * @param vectorType A String URI describing the type of data
+     * @param vectorData The numeric data that represents the private data
+     * @param system     The system object for the system which marks the private data
+     * @return The created private data resource
+     * @throws JsonProcessingException if there was an error generating JSON from the specified vector data
+     */
+    public static Resource markPrivateData(Model model, Resource resource, String vectorType,
+                                           double[] vectorData, Resource system) throws JsonProcessingException {
+        final ByteBuffer bytes = ByteBuffer.allocate(vectorData.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asDoubleBuffer().put(vectorData);
+        return markPrivateDataVector(model, resource, vectorType, PrivateDataVector.FLOAT64, vectorData.length,
+                bytes, system);
+    }
+
+    private static Resource markPrivateDataVector(Model model, Resource resource, String vectorType, String encoding,
+                                                  int dimension, ByteBuffer bytes, Resource system)
+            throws JsonProcessingException {
+        final ImmutableMap<String, Object> jsonMap = ImmutableMap.of("vector_type", vectorType,
+                "vector_encoding", encoding, "vector_dimension", dimension,
+                "vector_data_base64", Base64.getEncoder().encodeToString(bytes.array()));
+        return markPrivateData(model, resource, JSON_MAPPER.writeValueAsString(jsonMap), system);
+    }
+
+    /**
+     * Retrieve the vectors in the private data of a resource, whether stored as a list of numbers or compactly.
+     * Private data which is not a vector is skipped.
+     *
+     * @param resource The entity whose private data to read
+     * @return The vectors in the private data of <code>resource</code>
+     */
+    public static ImmutableList<PrivateDataVector> getPrivateDataVectors(Resource resource) {
+        final ImmutableList.Builder<PrivateDataVector> vectors = ImmutableList.builder();
+        final NodeIterator privateData = resource.getModel().listObjectsOfProperty(resource,
+                InterchangeOntology.privateData);
+        try {
+            while (privateData.hasNext()) {
+                final RDFNode data = privateData.next();
+                if (!data.isResource()) {
+                    continue;
+                }
+                final NodeIterator contents = resource.getModel().listObjectsOfProperty(data.asResource(),
+                        InterchangeOntology.jsonContent);
+                while (contents.hasNext()) {
+                    final RDFNode content = contents.next();
+                    final PrivateDataVector vector = content.isLiteral() ?
+                            PrivateDataVector.parse(content.asLiteral().getLexicalForm()) : null;
+                    if (vector != null) {
+                        vectors.add(vector);
+                    }
+                }
+            }
+        } finally {
+            privateData.close();
+        }
+        return vectors.build();
+    }
+
+    /**
+     * A vector read from private data, as marked by {@link #markPrivateData(Model, Resource, String, List, Resource)}
+     * and its compact variants.  Its values are kept as they were stored, as floats or doubles, and converted only if
+     * asked for the other.
+     */
+    public static final class PrivateDataVector {
+        static final String FLOAT32 = "float32";
+        static final String FLOAT64 = "float64";
+
+        private final String vectorType;
+        private final float[] floats;
+        private final double[] doubles;
+
+        private PrivateDataVector(String vectorType, float[] floats, double[] doubles) {
+            this.vectorType = vectorType;
+            this.floats = floats;
+            this.doubles = doubles;
+        }
+
+        /**
+         * Parse the JSON content of private data.
+         *
+         * @param jsonContent The JSON content of private data
+         * @return The vector in <code>jsonContent</code>, or null if it is not a vector
+         * @throws IllegalArgumentException if <code>jsonContent</code> is a compactly stored vector which is corrupt
+         */
+        @Nullable
+        public static PrivateDataVector parse(String jsonContent) {
+            final JsonNode json;
+            try {
+                json = JSON_MAPPER.readTree(jsonContent);
+            } catch (JsonProcessingException e) {
+                return null;
+            }
+            if (json == null || !json.isObject()) {
+                return null;
+            }
+            final String vectorType = json.path("vector_type").asText(null);
+            final JsonNode list = json.get("vector_data");
+            if (list != null && list.isArray()) {
+                final double[] values = new double[list.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = list.get(i).asDouble();
+                }
+                return new PrivateDataVector(vectorType, null, values);
+            }
+            final JsonNode base64 = json.get("vector_data_base64");
+            if (base64 == null || !base64.isTextual()) {
+                return null;
+            }
+            final String encoding = json.path("vector_encoding").asText();
+            final int width = FLOAT32.equals(encoding) ? Float.BYTES : FLOAT64.equals(encoding) ? Double.BYTES : 0;
+            if (width == 0) {
+                throw new IllegalArgumentException("Unknown vector encoding " + encoding);
+            }
+            final ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(base64.asText()))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            final int dimension = json.path("vector_dimension").asInt(-1);
+            if (bytes.remaining() != dimension * width) {
+                throw new IllegalArgumentException("Expected a vector of dimension " + dimension + " but got "
+                        + bytes.remaining() + " bytes of " + encoding);
+            }
+            if (width == Float.BYTES) {
+                final float[] values = new float[dimension];
+                bytes.asFloatBuffer().get(values);
+                return new PrivateDataVector(vectorType, values, null);
+            }
+            final double[] values = new double[dimension];
+            bytes.asDoubleBuffer().get(values);
+            return new PrivateDataVector(vectorType, null, values);
+        }
+
+        /**
+         * @return The URI describing the type of data, or null if none was given
+         */
+        @Nullable
+        public String getVectorType() {
+            return vectorType;
+        }
+
+        public int getDimension() {
+            return floats != null ? floats.length : doubles.length;
+        }
+
+        /**
+         * @return A copy of the values of the vector as floats
+         */
+        public float[] toFloatArray() {
+            if (floats != null) {
+                return floats.clone();
+            }
+            final float[] values = new float[doubles.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (float) doubles[i];
+            }
+            return values;
+        }
+
+        /**
+         * @return A copy of the values of the vector as doubles
+         */
+        public double[] toDoubleArray() {
+            if (doubles != null) {
+                return doubles.clone();
+            }
+            final double[] values = new double[floats.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = floats[i];
+            }
+            return values;
+        }
     }
 
     /**
@@ -1507,7 +1872,7 @@ public class AIFUtils {
      */
     public static Resource linkToExternalKB(Model model, Resource toLink, String externalKbId, Resource system,
                                             Double confidence) {
-        final Resource linkAssertion = makeAIFResource(model, null, InterchangeOntology.LinkAssertion, system);
+        final Resource linkAssertion = makeBlankAIFResource(model, InterchangeOntology.LinkAssertion, system);
         toLink.addProperty(InterchangeOntology.link, linkAssertion);
         linkAssertion.addProperty(InterchangeOntology.linkTarget, model.createTypedLiteral(externalKbId));
         if (confidence != null) {
@@ -1527,6 +1892,27 @@ public class AIFUtils {
                         "}").replace("\n", System.getProperty("line.separator")));
     }
 
+    /**
+     * Keep an index of the type assertions about each resource in <code>model</code>, so that
+     * {@link #getTypeAssertions(Model, Resource)} looks them up rather than querying the model.  The index is built
+     * from the model now and kept up to date as statements are added and removed, at a small cost to each.  Enable it
+     * before looking up the type assertions of many resources one at a time.
+     *
+     * @param model The model to index
+     */
+    public static void enableTypeAssertionIndex(Model model) {
+        TypeAssertionIndex.enable(model);
+    }
+
+    /**
+     * Stop indexing the type assertions in <code>model</code>.  See {@link #enableTypeAssertionIndex(Model)}.
+     *
+     * @param model The model to stop indexing
+     */
+    public static void disableTypeAssertionIndex(Model model) {
+        TypeAssertionIndex.disable(model);
+    }
+
     /**
      * Retrieve all type assertions from an entity.
      *
@@ -1535,6 +1921,14 @@ public class AIFUtils {
      * @return A set of type assertions for the specified entity
      */
     public static ImmutableSet<Resource> getTypeAssertions(Model model, Resource typedObject) {
+        final TypeAssertionIndex index = TypeAssertionIndex.get(model);
+        if (index != null) {
+            final ImmutableSet<Node> typeAssertions = index.getTypeAssertions(model.getGraph(), typedObject.asNode());
+            final ImmutableSet.Builder<Resource> resources = ImmutableSet.builderWithExpectedSize(typeAssertions.size());
+            typeAssertions.forEach(typeAssertion -> resources.add(model.wrapAsResource(typeAssertion)));
+            return resources.build();
+        }
+
         final QuerySolutionMap boundVariables = new QuerySolutionMap();
         boundVariables.add("typedObject", typedObject);
 
@@ -1553,6 +1947,68 @@ public class AIFUtils {
                 .build();
     }
 
+    /**
+     * Retrieve the type assertions of each of several entities, in one pass over the model's type assertions, or
+     * from the index if the model has one.
+     *
+     * @param model        The underlying RDF model for the operation
+     * @param typedObjects The entities from which to retrieve type assertions
+     * @return The type assertions of each of <code>typedObjects</code> that has any
+     */
+    public static ImmutableSetMultimap<Resource, Resource> getTypeAssertions(Model model,
+                                                                           Collection<Resource> typedObjects) {
+        final TypeAssertionIndex index = TypeAssertionIndex.get(model);
+        if (index != null) {
+            final ImmutableSetMultimap.Builder<Resource, Resource> typeAssertions = ImmutableSetMultimap.builder();
+            for (Resource typedObject : typedObjects) {
+                typeAssertions.putAll(typedObject, getTypeAssertions(model, typedObject));
+            }
+            return typeAssertions.build();
+        }
+        final Set<Node> wanted = new HashSet<>(typedObjects.size() * 2);
+        typedObjects.forEach(typedObject -> wanted.add(typedObject.asNode()));
+        return findTypeAssertions(model, wanted::contains);
+    }
+
+    /**
+     * Retrieve the type assertions of every resource in the model, in one pass over the model's type assertions.
+     *
+     * @param model The underlying RDF model for the operation
+     * @return The type assertions of each resource that has any
+     */
+    public static ImmutableSetMultimap<Resource, Resource> getAllTypeAssertions(Model model) {
+        return findTypeAssertions(model, typedObject -> true);
+    }
+
+    private static ImmutableSetMultimap<Resource, Resource> findTypeAssertions(Model model,
+                                                                             Predicate<Node> isWanted) {
+        final Graph graph = model.getGraph();
+        final ImmutableSetMultimap.Builder<Resource, Resource> typeAssertions = ImmutableSetMultimap.builder();
+        final ExtendedIterator<Triple> typePredicates = graph.find(Node.ANY, RDF.Nodes.predicate, RDF.Nodes.type);
+        try {
+            while (typePredicates.hasNext()) {
+                final Node statement = typePredicates.next().getSubject();
+                if (!graph.contains(statement, RDF.Nodes.type, RDF.Nodes.Statement)) {
+                    continue;
+                }
+                final ExtendedIterator<Triple> subjects = graph.find(statement, RDF.Nodes.subject, Node.ANY);
+                try {
+                    while (subjects.hasNext()) {
+                        final Node typedObject = subjects.next().getObject();
+                        if (isWanted.test(typedObject)) {
+                            typeAssertions.put(model.wrapAsResource(typedObject), model.wrapAsResource(statement));
+                        }
+                    }
+                } finally {
+                    subjects.close();
+                }
+            }
+        } finally {
+            typePredicates.close();
+        }
+        return typeAssertions.build();
+    }
+
     /**
      * Retrieve all confidence assertions from an entity.
      *
@@ -1561,16 +2017,13 @@ public class AIFUtils {
      * @return A set of type assertions for the specified entity
      */
     public static ImmutableSet<Resource> getConfidenceAssertions(Model model, Resource confidencedObject) {
-        NodeIterator iter =
+        final NodeIterator iter =
                 model.listObjectsOfProperty(confidencedObject, InterchangeOntology.confidence);
-        HashSet<Resource> matchSet = new HashSet<>();
+        final ImmutableSet.Builder<Resource> matchSet = ImmutableSet.builder();
         while (iter.hasNext()) {
             matchSet.add(iter.nextNode().asResource());
         }
-
-        return ImmutableSet.<Resource>builder()
-                .addAll(matchSet)
-                .build();
+        return matchSet.build();
     }
 
     /**
@@ -1594,7 +2047,7 @@ public class AIFUtils {
         }
 
         public Resource makeAIFTimeComponent(Model model) {
-            final Resource timeComponent = makeAIFResource(model, null, InterchangeOntology.LDCTimeComponent, null);
+            final Resource timeComponent = makeBlankAIFResource(model, InterchangeOntology.LDCTimeComponent, null);
             timeComponent.addProperty(InterchangeOntology.timeType, type.toString());
             addLiteral(model, timeComponent, InterchangeOntology.year, year, XSD.gYear);
             addLiteral(model, timeComponent, InterchangeOntology.month, month, XSD.gMonth);
@@ -1657,7 +2110,7 @@ public class AIFUtils {
      * @return
      */
     public static Resource markLDCTime(Model model, Resource toMark, LDCTimeComponent start, LDCTimeComponent end, Resource system) {
-        final Resource ldcTime = makeAIFResource(model, null, InterchangeOntology.LDCTime, system);
+        final Resource ldcTime = makeBlankAIFResource(model, InterchangeOntology.LDCTime, system);
         if (start != null) {
             ldcTime.addProperty(InterchangeOntology.start, start.makeAIFTimeComponent(model));
         }
@@ -1685,7 +2138,7 @@ public class AIFUtils {
                                             LDCTimeComponent startEarliest, LDCTimeComponent startLatest,
                                             LDCTimeComponent endEarliest, LDCTimeComponent endLatest,
                                             Resource system) {
-        final Resource ldcTime = makeAIFResource(model, null, InterchangeOntology.LDCTime, system);
+        final Resource ldcTime = makeBlankAIFResource(model, InterchangeOntology.LDCTime, system);
         if (endLatest != null) {
             ldcTime.addProperty(InterchangeOntology.end, endLatest.makeAIFTimeComponent(model));
         }
@@ -1741,7 +2194,7 @@ public class AIFUtils {
                                             String startEarliest, String startLatest,
                                             String endEarliest, String endLatest,
                                             Resource system) {
-        final Resource ldcTime = makeAIFResource(model, null, InterchangeOntology.LDCTime, system);
+        final Resource ldcTime = makeBlankAIFResource(model, InterchangeOntology.LDCTime, system);
         ldcTime.addProperty(InterchangeOntology.end,
             LDCTimeComponent.createTime("BEFORE", endLatest).makeAIFTimeComponent(model));
         ldcTime.addProperty(InterchangeOntology.end,
@@ -1754,7 +2207,17 @@ public class AIFUtils {
     }
     
     // Helper function to create an event, relation, justification, etc. in the system.
+    // A null uri is minted by the model's IriGenerator, if it has one.
     static Resource makeAIFResource(@Nonnull Model model, @Nullable String uri, @Nonnull Resource classType, @Nullable Resource system) {
+        return makeBlankAIFResource(model, uri == null ? nextIri(model, classType) : uri, classType, system);
+    }
+
+    // Helper function to create an AIF structure, such as a time or private data, which is always a blank node
+    private static Resource makeBlankAIFResource(@Nonnull Model model, @Nonnull Resource classType, @Nullable Resource system) {
+        return makeBlankAIFResource(model, null, classType, system);
+    }
+
+    private static Resource makeBlankAIFResource(@Nonnull Model model, @Nullable String uri, @Nonnull Resource classType, @Nullable Resource system) {
         // Model automatically creates blank node if uri is null
         Resource resource = model.createResource(uri).addProperty(RDF.type, classType);
         if (system != null) {
@@ -1763,6 +2226,16 @@ public class AIFUtils {
         return resource;
     }
 
+    /**
+     * @return the next IRI of the generator set on <code>model</code> for a resource of <code>classType</code>, or
+     * null if it has none
+     */
+    @Nullable
+    static String nextIri(@Nonnull Model model, @Nonnull Resource classType) {
+        final IriGenerator generator = IRI_GENERATORS.get(model.getGraph());
+        return generator == null ? null : generator.nextIri(classType);
+    }
+
     /**
      * Add items from {@code collection} to {@code property} of {@code resource}
      *
@@ -1790,48 +2263,3 @@ public class AIFUtils {
         return resource;
     }
 }
-
-/**
- * A strategy for generating RDF graph nodes
- */
-interface IriGenerator {
-    String nextIri();
-}
-
-/**
- * A node generation strategy which uses UUIDs appended to a base URI.
- */
-final class UuidIriGenerator implements IriGenerator {
-    private String baseUri;
-
-    /**
-     * Create a dummy UuidIriGenerator.
-     */
-    UuidIriGenerator() {
-        baseUri = "dummy:uri";
-    }
-
-    /**
-     * Create a UuidIriGenerator from a base URI.
-     *
-     * @param baseUri A valid base URI
-     */
-    UuidIriGenerator(String baseUri) {
-        if (baseUri == null || baseUri.isEmpty()) {
-            throw new IllegalArgumentException("Base URI cannot be empty");
-        }
-        if (!baseUri.substring(1).contains(":")) {
-            throw new IllegalArgumentException("Base URI must contain a prefix followed by a colon separator");
-        }
-        if (baseUri.endsWith("/")) {
-            throw new IllegalArgumentException("Base URI cannot end in /");
-        }
-        this.baseUri = baseUri;
-    }
-
-    // Inherit Javadoc from interface
-    @Override
-    public String nextIri() {
-        return baseUri + '/' + UUID.randomUUID().toString();
-    }
-}
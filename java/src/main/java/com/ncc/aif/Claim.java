@@ -298,6 +298,14 @@ public class Claim {
         return this.resource;
     }
 
+    boolean hasImportance() {
+        return importance != null;
+    }
+
+    void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
     public Resource addToModel(Model model, String uri, Resource system) {
         // required properties
         resource = AIFUtils.makeAIFResource(model, uri, InterchangeOntology.Claim, system)
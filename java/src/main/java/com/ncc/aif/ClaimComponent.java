@@ -71,6 +71,10 @@ public class ClaimComponent {
         return this.resource;
     }
 
+    void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
     public Resource addToModel(Model model, String uri, Resource system) {
         resource = AIFUtils.makeAIFResource(model, uri, InterchangeOntology.ClaimComponent, system)
             .addProperty(InterchangeOntology.componentName, name)
@@ -24,10 +24,12 @@ public class ClassConstraintExecutor implements ConstraintExecutor {
     @Override
     public void executeConstraint(Constraint constraint, ValidationEngine engine, Collection<RDFNode> focusNodes) {
         RDFNode classType = constraint.getParameterValue();
+        DomainOntologyIndex index = engine instanceof ThreadedValidationEngine ?
+                ((ThreadedValidationEngine) engine).getDomainIndex() : null;
         for(RDFNode focusNode : focusNodes) {
             engine.checkCanceled();
             for(RDFNode valueNode : engine.getValueNodes(constraint, focusNode)) {
-                if (!valueNode.isResource() || !hasClass(valueNode.asResource().getPropertyResourceValue(RDF.type), classType)) {
+                if (!valueNode.isResource() || !hasClass(index, valueNode.asResource().getPropertyResourceValue(RDF.type), classType)) {
                     Resource result = engine.createResult(SH.ValidationResult, constraint, focusNode);
                     result.addProperty(SH.value, valueNode);
                     Resource path = constraint.getShapeResource().getPath();
@@ -50,9 +52,11 @@ public class ClassConstraintExecutor implements ConstraintExecutor {
         }
     }
 
-    private static boolean hasClass(RDFNode current, RDFNode classType) {
+    private static boolean hasClass(DomainOntologyIndex index, RDFNode current, RDFNode classType) {
         if (current == null || classType == null) {
             return false;
+        } else if (index != null) {
+            return index.isSubClassOf(current.asNode(), classType.asNode());
         } else if (current.equals(classType)) {
             return true;
         } else if (current.isResource()) {
@@ -61,7 +65,7 @@ public class ClassConstraintExecutor implements ConstraintExecutor {
                     .mapWith(Statement::getObject)
                     .toList();
             for (RDFNode next : nodes) {
-                if (hasClass(next, classType)) {
+                if (hasClass(null, next, classType)) {
                     return true;
                 }
             }
@@ -0,0 +1,538 @@
+package com.ncc.aif;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * A memory-efficient, in-memory {@link Graph} for large AIF KBs.  Rather than holding {@link Node} and
+ * {@link Triple} objects in three hash indexes as {@link org.apache.jena.mem.GraphMem} does, every term is
+ * dictionary-encoded to an <code>int</code> and triples are kept in primitive arrays sorted by subject, with
+ * predicate-first and object-first orderings kept as permutations of those arrays.  IRIs are split into a shared
+ * namespace prefix and a local name, so long ontology namespaces are stored once rather than once per term.
+ * <p>
+ * Added and deleted triples are buffered and merged into the sorted arrays the next time the graph is read, so
+ * bulk loading (e.g., parsing a KB) costs one sort rather than one index update per triple.  The sorted arrays are
+ * kept as a few runs of geometrically decreasing size, and buffered triples become a new small run that is merged
+ * with its neighbors only once it has grown to half their size, so that code alternating adds and reads, such as
+ * KB generation, merges each triple a logarithmic number of times rather than sorting the whole graph per read.  Once loading is
+ * finished, any number of threads may read the graph concurrently.  Adding or deleting triples while other
+ * threads read the graph is not supported.
+ * <p>
+ * Note that, unlike {@link org.apache.jena.mem.GraphMem}, literals are matched by term rather than by value,
+ * e.g., <code>"1"^^xsd:int</code> does not match <code>"01"^^xsd:int</code>.
+ */
+public final class CompactGraph extends GraphBase {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Term dictionary.  IRIs are stored as a prefix ID and a local name; all other terms are stored as Nodes
+    // with a prefix ID of -1.
+    private final Map<String, Integer> prefixIds = new HashMap<>();
+    private String[] prefixes = new String[16];
+    private int[] termPrefix = new int[INITIAL_CAPACITY];
+    private Object[] termValue = new Object[INITIAL_CAPACITY];
+    private int termCount = 0;
+    // Open-addressing hash table of term IDs + 1 (0 is empty)
+    private int[] termSlots = new int[INITIAL_CAPACITY * 2];
+    // Recently decoded IRIs, to avoid rebuilding frequently used nodes such as predicates and types
+    private final DecodedNode[] decoded = new DecodedNode[4096];
+
+    // Buffered changes, guarded by this.  Deletions are positions in the run at the same index.
+    private int[] pending = new int[INITIAL_CAPACITY * 3];
+    private int pendingCount = 0;
+    private BitSet[] deleted = new BitSet[0];
+    private volatile boolean dirty = false;
+
+    // Sorted runs of triples, largest first, each more than twice the size of the next.  No triple is in two runs.
+    private volatile Index[] runs = new Index[0];
+
+    /**
+     * Create an empty model backed by a new {@link CompactGraph}.
+     *
+     * @return a new, empty model
+     */
+    public static Model createModel() {
+        return ModelFactory.createModelForGraph(new CompactGraph());
+    }
+
+    //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
+    // Term dictionary
+    // ----------------------------
+
+    // Index of the character following the namespace of the specified IRI
+    private static int splitPoint(String uri) {
+        int hash = uri.lastIndexOf('#');
+        int slash = uri.lastIndexOf('/');
+        return Math.max(hash, slash) + 1;
+    }
+
+    private static int localHash(String uri, int from) {
+        int hash = 0;
+        for (int i = from; i < uri.length(); i++) {
+            hash = 31 * hash + uri.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+
+    private int prefixId(String prefix, boolean create) {
+        Integer id = prefixIds.get(prefix);
+        if (id == null && create) {
+            id = prefixIds.size();
+            if (id == prefixes.length) {
+                prefixes = Arrays.copyOf(prefixes, id * 2);
+            }
+            prefixes[id] = prefix;
+            prefixIds.put(prefix, id);
+        }
+        return id == null ? -1 : id;
+    }
+
+    // Returns the ID of the specified term, or -1 if it isn't in the dictionary and create is false
+    private int encode(Node node, boolean create) {
+        final int prefix;
+        final int hash;
+        final String uri;
+        final int split;
+        if (node.isURI()) {
+            uri = node.getURI();
+            split = splitPoint(uri);
+            prefix = prefixId(uri.substring(0, split), create);
+            if (prefix < 0) {
+                return -1;
+            }
+            hash = mix(31 * prefix + localHash(uri, split));
+        } else {
+            uri = null;
+            split = 0;
+            prefix = -1;
+            hash = mix(node.hashCode());
+        }
+
+        final int mask = termSlots.length - 1;
+        int slot = hash & mask;
+        for (int entry = termSlots[slot]; entry != 0; entry = termSlots[slot]) {
+            int id = entry - 1;
+            if (termPrefix[id] == prefix && (uri == null ? node.equals(termValue[id]) :
+                    ((String) termValue[id]).length() == uri.length() - split &&
+                            uri.regionMatches(split, (String) termValue[id], 0, uri.length() - split))) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+
+        final int id = termCount++;
+        if (id == termPrefix.length) {
+            termPrefix = Arrays.copyOf(termPrefix, id * 2);
+            termValue = Arrays.copyOf(termValue, id * 2);
+        }
+        termPrefix[id] = prefix;
+        termValue[id] = uri == null ? node : uri.substring(split);
+        termSlots[slot] = id + 1;
+        if (termCount * 2 > termSlots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] slots = new int[termSlots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < termCount; id++) {
+            int hash = termPrefix[id] < 0 ? mix(termValue[id].hashCode()) :
+                    mix(31 * termPrefix[id] + termValue[id].hashCode());
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+        termSlots = slots;
+    }
+
+    private final TripleIndex.Dictionary dictionary = new TripleIndex.Dictionary() {
+        @Override
+        public int lookup(Node node) {
+            return encode(node, false);
+        }
+
+        @Override
+        public Node decode(int id) {
+            return CompactGraph.this.decode(id);
+        }
+    };
+
+    private Node decode(int id) {
+        if (termPrefix[id] < 0) {
+            return (Node) termValue[id];
+        }
+        int slot = id & (decoded.length - 1);
+        DecodedNode cached = decoded[slot];
+        if (cached != null && cached.id == id) {
+            return cached.node;
+        }
+        Node node = NodeFactory.createURI(prefixes[termPrefix[id]] + termValue[id]);
+        decoded[slot] = new DecodedNode(id, node);
+        return node;
+    }
+
+    private static final class DecodedNode {
+        final int id;
+        final Node node;
+
+        DecodedNode(int id, Node node) {
+            this.id = id;
+            this.node = node;
+        }
+    }
+
+    //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
+    // Updates
+    // ----------------------------
+
+    @Override
+    public synchronized void performAdd(Triple triple) {
+        if (pendingCount * 3 == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        int offset = pendingCount++ * 3;
+        pending[offset] = encode(triple.getSubject(), true);
+        pending[offset + 1] = encode(triple.getPredicate(), true);
+        pending[offset + 2] = encode(triple.getObject(), true);
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void performDelete(Triple triple) {
+        // Deletions are recorded against the current index, so pending additions must be merged first
+        if (pendingCount > 0) {
+            flush();
+        }
+        Index[] current = runs;
+        int s = encode(triple.getSubject(), false);
+        int p = encode(triple.getPredicate(), false);
+        int o = encode(triple.getObject(), false);
+        if (s >= 0 && p >= 0 && o >= 0) {
+            for (int r = 0; r < current.length; r++) {
+                int position = current[r].find(s, p, o);
+                if (position >= 0) {
+                    if (deleted[r] == null) {
+                        deleted[r] = new BitSet();
+                    }
+                    deleted[r].set(position);
+                    dirty = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    // Return the current runs, first merging any buffered changes into them.
+    private Index[] current() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    flush();
+                }
+            }
+        }
+        return runs;
+    }
+
+    // Merge buffered changes into the runs.  Callers must hold the lock on this.
+    private void flush() {
+        List<Index> merged = new ArrayList<>(runs.length + 1);
+        for (int r = 0; r < runs.length; r++) {
+            Index run = deleted[r] == null ? runs[r] : runs[r].merge(deleted[r], new int[0], 0);
+            if (run.size() > 0) {
+                push(merged, run);
+            }
+        }
+        if (pendingCount > 0) {
+            // triples already in a run are dropped here, so that no triple is in two runs
+            int[] added = new int[pendingCount * 3];
+            int addedCount = 0;
+            for (int i = 0; i < pendingCount * 3; i += 3) {
+                if (!contains(merged, pending[i], pending[i + 1], pending[i + 2])) {
+                    System.arraycopy(pending, i, added, addedCount++ * 3, 3);
+                }
+            }
+            if (addedCount > 0) {
+                push(merged, Index.EMPTY.merge(new BitSet(), added, addedCount));
+            }
+        }
+        setRuns(merged);
+        pendingCount = 0;
+        if (pending.length > INITIAL_CAPACITY * 3) {
+            pending = new int[INITIAL_CAPACITY * 3];
+        }
+        dirty = false;
+    }
+
+    private static boolean contains(List<Index> runs, int s, int p, int o) {
+        for (Index run : runs) {
+            if (run.find(s, p, o) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Add a run after the others, merging it with the runs before it that are not more than twice its size
+    private static void push(List<Index> runs, Index run) {
+        runs.add(run);
+        int last = runs.size() - 1;
+        while (last > 0 && runs.get(last - 1).size() <= 2 * runs.get(last).size()) {
+            Index smaller = runs.remove(last--);
+            runs.set(last, runs.get(last).merge(new BitSet(), smaller.triples(), smaller.size()));
+        }
+    }
+
+    private void setRuns(List<Index> merged) {
+        runs = merged.toArray(new Index[0]);
+        deleted = new BitSet[runs.length];
+    }
+
+    //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
+    // Queries
+    // ----------------------------
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        Index[] current = current();
+        if (current.length == 0) {
+            return NullIterator.instance();
+        }
+        ExtendedIterator<Triple> found = current[0].find(pattern, dictionary);
+        for (int r = 1; r < current.length; r++) {
+            found = found.andThen(current[r].find(pattern, dictionary));
+        }
+        return found;
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        int size = 0;
+        for (Index run : current()) {
+            size += run.size();
+        }
+        return size;
+    }
+
+    // Number of distinct terms ever added, for exporting the dictionary
+    int termCount() {
+        return termCount;
+    }
+
+    // The term with the specified ID, for exporting the dictionary
+    Node term(int id) {
+        return decode(id);
+    }
+
+    // The current sorted triples, for exporting the index, merged into one run
+    synchronized TripleIndex index() {
+        Index[] current = current();
+        if (current.length == 0) {
+            return Index.EMPTY;
+        }
+        if (current.length > 1) {
+            Index all = current[0];
+            for (int r = 1; r < current.length; r++) {
+                all = all.merge(new BitSet(), current[r].triples(), current[r].size());
+            }
+            setRuns(Collections.singletonList(all));
+        }
+        return runs[0];
+    }
+
+    /**
+     * A {@link TripleIndex} held in heap arrays.  Immutable once built.
+     */
+    private static final class Index extends TripleIndex {
+        static final Index EMPTY = new Index(new int[0], new int[0], new int[0]);
+
+        final int[] subjects;
+        final int[] predicates;
+        final int[] objects;
+        final int[] posOrder;
+        final int[] ospOrder;
+
+        // The arrays must already be sorted in SPO order without duplicates
+        Index(int[] subjects, int[] predicates, int[] objects) {
+            this.subjects = subjects;
+            this.predicates = predicates;
+            this.objects = objects;
+            this.posOrder = sortedPermutation(size(), (a, b) -> compare(POS, a, b));
+            this.ospOrder = sortedPermutation(size(), (a, b) -> compare(OSP, a, b));
+        }
+
+        @Override
+        int size() {
+            return subjects.length;
+        }
+
+        @Override
+        int subject(int position) {
+            return subjects[position];
+        }
+
+        @Override
+        int predicate(int position) {
+            return predicates[position];
+        }
+
+        @Override
+        int object(int position) {
+            return objects[position];
+        }
+
+        @Override
+        int posOrder(int i) {
+            return posOrder[i];
+        }
+
+        @Override
+        int ospOrder(int i) {
+            return ospOrder[i];
+        }
+
+        // The triples as consecutive subject, predicate, object IDs, in SPO order
+        int[] triples() {
+            int[] triples = new int[size() * 3];
+            for (int i = 0; i < size(); i++) {
+                triples[i * 3] = subjects[i];
+                triples[i * 3 + 1] = predicates[i];
+                triples[i * 3 + 2] = objects[i];
+            }
+            return triples;
+        }
+
+        /**
+         * Return a new index without the removed positions and with the added triples, which are given as
+         * consecutive subject, predicate, object IDs in no particular order and may contain duplicates.
+         */
+        Index merge(BitSet removed, int[] added, int addedCount) {
+            int[] order = sortedPermutation(addedCount, (a, b) -> {
+                for (int k = 0; k < 3; k++) {
+                    int cmp = Integer.compare(added[a * 3 + k], added[b * 3 + k]);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return 0;
+            });
+
+            int capacity = size() - removed.cardinality() + addedCount;
+            int[] s = new int[capacity];
+            int[] p = new int[capacity];
+            int[] o = new int[capacity];
+            int count = 0;
+            int i = removed.nextClearBit(0);
+            int j = 0;
+            while (i < size() || j < addedCount) {
+                int cmp;
+                if (i >= size()) {
+                    cmp = 1;
+                } else if (j >= addedCount) {
+                    cmp = -1;
+                } else {
+                    int a = order[j] * 3;
+                    cmp = Integer.compare(subjects[i], added[a]);
+                    if (cmp == 0) {
+                        cmp = Integer.compare(predicates[i], added[a + 1]);
+                    }
+                    if (cmp == 0) {
+                        cmp = Integer.compare(objects[i], added[a + 2]);
+                    }
+                }
+                if (cmp <= 0) {
+                    s[count] = subjects[i];
+                    p[count] = predicates[i];
+                    o[count] = objects[i];
+                    i = removed.nextClearBit(i + 1);
+                } else {
+                    int a = order[j] * 3;
+                    s[count] = added[a];
+                    p[count] = added[a + 1];
+                    o[count] = added[a + 2];
+                }
+                if (cmp >= 0) {
+                    // skip this added triple and any duplicates of it
+                    int a = order[j++] * 3;
+                    while (j < addedCount && added[order[j] * 3] == added[a] &&
+                            added[order[j] * 3 + 1] == added[a + 1] && added[order[j] * 3 + 2] == added[a + 2]) {
+                        j++;
+                    }
+                }
+                count++;
+            }
+            return count == capacity ? new Index(s, p, o) :
+                    new Index(Arrays.copyOf(s, count), Arrays.copyOf(p, count), Arrays.copyOf(o, count));
+        }
+    }
+
+    private interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    // Return the integers [0, size) sorted by the specified comparator.  Uses a stable merge sort on primitives.
+    private static int[] sortedPermutation(int size, IntComparator comparator) {
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        mergeSort(permutation, new int[size], 0, size, comparator);
+        return permutation;
+    }
+
+    private static void mergeSort(int[] a, int[] scratch, int from, int to, IntComparator comparator) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) { // insertion sort
+                int value = a[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(a[j], value) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = value;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, scratch, from, mid, comparator);
+        mergeSort(a, scratch, mid, to, comparator);
+        if (comparator.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, scratch, from, to - from);
+        for (int i = from, left = from, right = mid; i < to; i++) {
+            if (right >= to || (left < mid && comparator.compare(scratch[left], scratch[right]) <= 0)) {
+                a[i] = scratch[left++];
+            } else {
+                a[i] = scratch[right++];
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.ncc.aif;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.ncc.aif.util.KBFiles;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+/**
+ * A command-line converter between the formats in which AIF KBs can be read and written: Turtle, and binary RDF Thrift,
+ * which later pipeline stages load several times faster than Turtle.  Either may be compressed.  See {@link KBFiles}.
+ */
+@CommandLine.Command(name = "convertAIF",
+        sortOptions = false,
+        synopsisHeading = "%nUsage: ",
+        descriptionHeading = "%nDescription:%n  ",
+        parameterListHeading = "%nParameters:%n",
+        optionListHeading = "%nOptions:%n",
+        description = "Convert an AIDA Interchange Format (AIF) KB between Turtle (.ttl) and RDF Thrift (.rt or .trdf),"
+                + " each optionally compressed (.gz or .zst).  Formats are chosen by file name.",
+        versionProvider = ValidateAIFCli.PropertyVersionProvider.class)
+public class ConvertAIFCli implements Callable<Integer> {
+    static final String ERR_UNKNOWN_FORMAT = "%s does not have a .ttl, .rt, or .trdf suffix";
+
+    private static final Logger logger = (Logger) (org.slf4j.LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME));
+
+    @Parameters(index = "0", paramLabel = "INPUT", description = "KB to convert")
+    private File input;
+
+    @Parameters(index = "1", paramLabel = "OUTPUT", description = "File to which to write the converted KB")
+    private File output;
+
+    @Option(names = {"-h", "--help"}, usageHelp = true, description = "This help and usage text")
+    boolean help;
+
+    @Option(names = {"-v", "--version"}, versionHelp = true, description = "Print the converter version")
+    boolean version;
+
+    @Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    public static void main(String[] args) {
+        System.exit(execute(args));
+    }
+
+    public static int execute(String[] args) {
+        CommandLine cmd = new CommandLine(new ConvertAIFCli());
+        cmd.setUsageHelpWidth(76);
+        CommandLine.Help.Ansi ansi = CommandLine.Help.Ansi.AUTO;
+        List<Object> results = cmd.parseWithHandlers(
+                new CommandLine.RunLast().useOut(System.out).useAnsi(ansi),
+                new CommandLine.DefaultExceptionHandler<List<Object>>().useErr(System.err).useAnsi(ansi), args);
+        Integer result = (results == null || results.isEmpty()) ? null : (Integer) results.get(0);
+        return result == null ? ValidateAIFCli.ReturnCode.USAGE_ERROR.ordinal() : result;
+    }
+
+    @Override
+    public Integer call() {
+        for (File file : new File[]{input, output}) {
+            if (!KBFiles.isKB(file.getName())) {
+                throw new CommandLine.ParameterException(spec.commandLine(), String.format(ERR_UNKNOWN_FORMAT, file));
+            }
+        }
+        logger.setLevel(Level.INFO);
+
+        final long start = System.currentTimeMillis();
+        final Model model = ModelFactory.createDefaultModel();
+        try {
+            KBFiles.read(model, input.toPath());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not read " + input + ".");
+            logger.error("--> " + e.getLocalizedMessage());
+            return ValidateAIFCli.ReturnCode.FILE_ERROR.ordinal();
+        }
+        final long read = System.currentTimeMillis();
+        logger.info("-> Read " + model.size() + " triples from " + input + " in " + (read - start) + " ms.");
+
+        try {
+            KBFiles.write(model, output.toPath());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not write " + output + ".");
+            logger.error("--> " + e.getLocalizedMessage());
+            return ValidateAIFCli.ReturnCode.FILE_ERROR.ordinal();
+        }
+        logger.info("-> Wrote " + output + " in " + (System.currentTimeMillis() - read) + " ms.");
+        return ValidateAIFCli.ReturnCode.SUCCESS.ordinal();
+    }
+}
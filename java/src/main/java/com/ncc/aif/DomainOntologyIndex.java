@@ -0,0 +1,82 @@
+package com.ncc.aif;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * An immutable index of the class hierarchy of a domain ontology, built once so that validation can answer
+ * <code>sh:class</code> constraints with hash lookups rather than by walking <code>rdfs:subClassOf</code> through the
+ * ontology for every value node.  The index records the reflexive, transitive closure of <code>rdfs:subClassOf</code>.
+ * <p>
+ * Answers reflect only the ontology the index was built from.  If a KB adds its own <code>rdfs:subClassOf</code>
+ * statements, its class hierarchy must be consulted directly instead.
+ */
+public final class DomainOntologyIndex {
+    private static final Node SUB_CLASS_OF = RDFS.subClassOf.asNode();
+
+    private final Map<Node, Set<Node>> superClasses;
+
+    private DomainOntologyIndex(Graph ontology) {
+        superClasses = closeSubClasses(ontology);
+    }
+
+    /**
+     * Build an index of the specified domain ontology.
+     *
+     * @param ontology model containing the domain ontology
+     * @return an index of <code>ontology</code>
+     */
+    public static DomainOntologyIndex build(Model ontology) {
+        return new DomainOntologyIndex(ontology.getGraph());
+    }
+
+    // Map each class to all of its superclasses, including itself
+    private static Map<Node, Set<Node>> closeSubClasses(Graph ontology) {
+        Map<Node, Set<Node>> direct = new HashMap<>();
+        ontology.find(Node.ANY, SUB_CLASS_OF, Node.ANY).forEachRemaining(triple ->
+                direct.computeIfAbsent(triple.getSubject(), c -> new HashSet<>()).add(triple.getObject()));
+
+        Map<Node, Set<Node>> closure = new HashMap<>();
+        for (Node start : direct.keySet()) {
+            Set<Node> reached = new HashSet<>();
+            Deque<Node> pending = new ArrayDeque<>();
+            pending.push(start);
+            while (!pending.isEmpty()) { // iterative, since hierarchies may be deep or cyclic
+                Node current = pending.pop();
+                if (reached.add(current)) {
+                    Set<Node> known = closure.get(current);
+                    if (known != null) {
+                        reached.addAll(known);
+                    } else {
+                        pending.addAll(direct.getOrDefault(current, Collections.emptySet()));
+                    }
+                }
+            }
+            closure.put(start, Collections.unmodifiableSet(reached));
+        }
+        return closure;
+    }
+
+    /**
+     * @param subClass   a class
+     * @param superClass another class
+     * @return whether <code>subClass</code> is <code>superClass</code> or one of its (transitive) subclasses
+     */
+    public boolean isSubClassOf(Node subClass, Node superClass) {
+        if (subClass.equals(superClass)) {
+            return true;
+        }
+        Set<Node> supers = superClasses.get(subClass);
+        return supers != null && supers.contains(superClass);
+    }
+}
@@ -0,0 +1,180 @@
+package com.ncc.aif;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * An immutable, indexed snapshot of one or more {@link Graph}s.  All triples are copied once at construction
+ * into subject, predicate, and object indexes, duplicates across the source graphs are dropped at that time,
+ * and the snapshot is never modified afterwards.  Lookups therefore take no locks and perform no duplicate
+ * checks, and a single snapshot may be read by any number of threads concurrently.
+ * <p>
+ * This is intended for validation, where the KB and the domain ontology would otherwise be queried through a
+ * {@link org.apache.jena.graph.compose.Union}, which touches both graphs and filters duplicates on every
+ * <code>find</code>.  Attempts to add or delete triples throw the usual Jena permission exceptions.  Prefixes
+ * may still be set on the snapshot.
+ */
+public final class FrozenGraph extends GraphBase {
+    private static final Triple[] EMPTY = new Triple[0];
+
+    private final Triple[] triples;
+    private final Map<Object, Triple[]> bySubject;
+    private final Map<Object, Triple[]> byPredicate;
+    private final Map<Object, Triple[]> byObject;
+
+    private FrozenGraph(Triple[] triples) {
+        this.triples = triples;
+        this.bySubject = index(triples, 0);
+        this.byPredicate = index(triples, 1);
+        this.byObject = index(triples, 2);
+    }
+
+    /**
+     * Create a frozen snapshot containing the union of the specified graphs.  Triples that occur in more than one
+     * graph are stored once.  Prefixes of all graphs are copied to the snapshot, with earlier graphs taking precedence.
+     *
+     * @param graphs the graphs to snapshot
+     * @return a frozen snapshot of the union of <code>graphs</code>
+     */
+    public static FrozenGraph union(Graph... graphs) {
+        int capacity = 0;
+        for (Graph graph : graphs) {
+            capacity += graph.size();
+        }
+        Triple[] all = new Triple[capacity];
+        int count = 0;
+        for (int i = 0; i < graphs.length; i++) {
+            ExtendedIterator<Triple> it = graphs[i].find();
+            try {
+                while (it.hasNext()) {
+                    Triple triple = it.next();
+                    if (!containedInEarlier(graphs, i, triple)) {
+                        if (count == all.length) {
+                            all = Arrays.copyOf(all, Math.max(16, count * 2));
+                        }
+                        all[count++] = triple;
+                    }
+                }
+            } finally {
+                it.close();
+            }
+        }
+        FrozenGraph frozen = new FrozenGraph(count == all.length ? all : Arrays.copyOf(all, count));
+        for (int i = graphs.length - 1; i >= 0; i--) {
+            frozen.getPrefixMapping().setNsPrefixes(graphs[i].getPrefixMapping());
+        }
+        return frozen;
+    }
+
+    private static boolean containedInEarlier(Graph[] graphs, int current, Triple triple) {
+        for (int i = 0; i < current; i++) {
+            if (graphs[i].contains(triple)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Build an index on the specified triple position (0 = subject, 1 = predicate, 2 = object).  Counts are
+    // gathered first so that each bucket is allocated exactly once at its final size.
+    private static Map<Object, Triple[]> index(Triple[] triples, int position) {
+        Map<Object, int[]> counts = new HashMap<>();
+        for (Triple triple : triples) {
+            counts.computeIfAbsent(key(triple, position), k -> new int[1])[0]++;
+        }
+        Map<Object, Triple[]> index = new HashMap<>((int) (counts.size() / 0.75f) + 1);
+        for (Map.Entry<Object, int[]> entry : counts.entrySet()) {
+            index.put(entry.getKey(), new Triple[entry.getValue()[0]]);
+            entry.getValue()[0] = 0; // reuse the counter as the fill position
+        }
+        for (Triple triple : triples) {
+            Object key = key(triple, position);
+            int[] fill = counts.get(key);
+            index.get(key)[fill[0]++] = triple;
+        }
+        return index;
+    }
+
+    private static Object key(Triple triple, int position) {
+        switch (position) {
+            case 0:
+                return triple.getSubject();
+            case 1:
+                return triple.getPredicate();
+            default:
+                return objectKey(triple.getObject());
+        }
+    }
+
+    // Literal objects are indexed by value so that literal lookups behave as they do in GraphMem
+    private static Object objectKey(Node object) {
+        return object.isLiteral() ? object.getIndexingValue() : object;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        final Node s = pattern.getMatchSubject();
+        final Node p = pattern.getMatchPredicate();
+        final Node o = pattern.getMatchObject();
+
+        final Triple[] candidates;
+        final boolean exact; // whether every candidate is known to match the pattern
+        if (s != null) {
+            candidates = bySubject.getOrDefault(s, EMPTY);
+            exact = p == null && o == null;
+        } else if (o != null) {
+            Triple[] withObject = byObject.getOrDefault(objectKey(o), EMPTY);
+            Triple[] withPredicate = p == null ? null : byPredicate.getOrDefault(p, EMPTY);
+            candidates = withPredicate != null && withPredicate.length < withObject.length ? withPredicate : withObject;
+            exact = p == null && !o.isLiteral();
+        } else if (p != null) {
+            candidates = byPredicate.getOrDefault(p, EMPTY);
+            exact = true;
+        } else {
+            candidates = triples;
+            exact = true;
+        }
+
+        if (candidates.length == 0) {
+            return NullIterator.instance();
+        }
+        return exact ? new ArrayIterator(candidates) : new ArrayIterator(candidates).filterKeep(pattern::matches);
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return triples.length;
+    }
+
+    /**
+     * A read-only iterator over an array of triples.  Never copies the array.
+     */
+    private static final class ArrayIterator extends NiceIterator<Triple> {
+        private final Triple[] array;
+        private int next = 0;
+
+        ArrayIterator(Triple[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < array.length;
+        }
+
+        @Override
+        public Triple next() {
+            ensureHasNext();
+            return array[next++];
+        }
+    }
+}
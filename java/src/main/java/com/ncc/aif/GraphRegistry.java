@@ -0,0 +1,48 @@
+package com.ncc.aif;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+import org.apache.jena.graph.Graph;
+
+/**
+ * A value kept for each graph that has asked for one, such as the generator or cache of a model.  Graphs are compared
+ * by identity and held weakly, so that a graph that is no longer used can be collected along with its value.
+ *
+ * @param <T> the type of value kept for each graph
+ */
+final class GraphRegistry<T> {
+    private final Map<Graph, T> values = Collections.synchronizedMap(new WeakHashMap<>());
+    // Whether any graph has ever had a value, to skip the lookup for models that never do
+    private volatile boolean anyPut = false;
+
+    void put(Graph graph, T value) {
+        values.put(graph, value);
+        anyPut = true;
+    }
+
+    /**
+     * @return the value of <code>graph</code>, or else the one returned by <code>create</code>, which is kept
+     */
+    T computeIfAbsent(Graph graph, Function<Graph, T> create) {
+        final T value = values.computeIfAbsent(graph, create);
+        anyPut = true;
+        return value;
+    }
+
+    /**
+     * @return the value removed from <code>graph</code>, or null if it had none
+     */
+    T remove(Graph graph) {
+        return values.remove(graph);
+    }
+
+    /**
+     * @return the value of <code>graph</code>, or null if it has none
+     */
+    T get(Graph graph) {
+        return anyPut ? values.get(graph) : null;
+    }
+}
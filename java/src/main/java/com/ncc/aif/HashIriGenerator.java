@@ -0,0 +1,99 @@
+package com.ncc.aif;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * A node generation strategy for reproducible runs, whose IDs are the first 128 bits of a SHA-256 hash, in
+ * hexadecimal, of a seed and some content.
+ * <p>
+ * Resources named by {@link #nextIri(Resource)} are hashed from their type and their position among the resources of
+ * that type named so far, so a run which makes the same resources of each type in the same order names them the same,
+ * however resources of different types are interleaved.  Where a resource is identified by content known to the
+ * caller, such as a document and offsets, {@link #iriFor(String...)} names it by that content regardless of order.
+ */
+public final class HashIriGenerator implements IriGenerator {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // The number of bytes of the hash used in an ID
+    private static final int ID_BYTES = 16;
+    // Tags distinguishing IRIs named by type and sequence from those named by the caller's content
+    private static final String SEQUENCE_TAG = "sequence";
+    private static final String CONTENT_TAG = "content";
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is unavailable", e);
+        }
+    });
+
+    private final String prefix;
+    private final String seed;
+    // The number of IRIs generated so far for each type, by type URI
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+    HashIriGenerator(String baseUri, String seed) {
+        if (seed == null) {
+            throw new IllegalArgumentException("Seed cannot be null");
+        }
+        this.prefix = UuidIriGenerator.checkBaseUri(baseUri) + '/';
+        this.seed = seed;
+    }
+
+    // Inherit Javadoc from interface
+    @Override
+    public String nextIri() {
+        return nextIri("");
+    }
+
+    // Inherit Javadoc from interface
+    @Override
+    public String nextIri(Resource classType) {
+        return nextIri(classType.isURIResource() ? classType.getURI() : "");
+    }
+
+    private String nextIri(String classUri) {
+        final long sequence = sequences.computeIfAbsent(classUri, k -> new AtomicLong()).getAndIncrement();
+        return hash(SEQUENCE_TAG, classUri, Long.toString(sequence));
+    }
+
+    /**
+     * @param content The strings identifying a resource
+     * @return the IRI of the resource identified by <code>content</code>, which is the same in every run with the same
+     * base URI and seed, and never that of a resource named by {@link #nextIri(Resource)}
+     */
+    public String iriFor(String... content) {
+        return hash(CONTENT_TAG, content);
+    }
+
+    // Hash the seed, then tag, then content, so that IRIs hashed with different tags cannot collide
+    private String hash(String tag, String... content) {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        update(digest, seed);
+        update(digest, tag);
+        for (String part : content) {
+            update(digest, part);
+        }
+        final byte[] hash = digest.digest();
+        final StringBuilder iri = new StringBuilder(prefix.length() + ID_BYTES * 2).append(prefix);
+        for (int i = 0; i < ID_BYTES; i++) {
+            iri.append(HEX_DIGITS[(hash[i] >> 4) & 0xF]).append(HEX_DIGITS[hash[i] & 0xF]);
+        }
+        return iri.toString();
+    }
+
+    // Prefix each string with its length so that the boundaries between strings are part of the hash
+    private static void update(MessageDigest digest, String part) {
+        final byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        final int length = bytes.length;
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        digest.update(bytes);
+    }
+}
@@ -0,0 +1,57 @@
+package com.ncc.aif;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * A strategy for generating RDF graph nodes.  Set one on a model with
+ * {@link AIFUtils#setIriGenerator(Model, IriGenerator)} to name the resources made there without a URI.
+ * <p>
+ * Generators may be shared between threads.  Each of those here builds the IRI <code>baseUri/ID</code>, where the
+ * base URI must have a prefix followed by a colon and must not end in <code>/</code>.
+ */
+public interface IriGenerator {
+    /**
+     * @return a new IRI
+     */
+    String nextIri();
+
+    /**
+     * @param classType The type of the resource to be named
+     * @return a new IRI for a resource of <code>classType</code>
+     */
+    default String nextIri(Resource classType) {
+        return nextIri();
+    }
+
+    /**
+     * Create a generator of random, version 4 UUIDs, drawn from a random number generator local to each thread so that
+     * threads minting IRIs do not contend.
+     *
+     * @param baseUri A valid base URI
+     */
+    static IriGenerator random(String baseUri) {
+        return new UuidIriGenerator(baseUri);
+    }
+
+    /**
+     * Create a generator of IDs that sort in the order in which they were made, by millisecond and then by sequence
+     * within each thread.  See {@link TimeOrderedIriGenerator}.
+     *
+     * @param baseUri A valid base URI
+     */
+    static IriGenerator timeOrdered(String baseUri) {
+        return new TimeOrderedIriGenerator(baseUri);
+    }
+
+    /**
+     * Create a generator of IDs hashed from <code>seed</code>, so that a run which makes the same resources in the
+     * same order names them the same.  See {@link HashIriGenerator}.
+     *
+     * @param baseUri A valid base URI
+     * @param seed    Distinguishes the IRIs of one run from those of other runs
+     */
+    static HashIriGenerator contentHash(String baseUri, String seed) {
+        return new HashIriGenerator(baseUri, seed);
+    }
+}
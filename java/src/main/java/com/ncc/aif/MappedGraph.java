@@ -0,0 +1,869 @@
+package com.ncc.aif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hashing;
+import com.ncc.aif.util.ExternalSorter;
+import com.ncc.aif.util.KBFiles;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * A read-only {@link org.apache.jena.graph.Graph} over an off-heap, memory-mapped index of a KB.  Terms are
+ * dictionary-encoded and triples are stored as columns of <code>int</code> term IDs in files that are mapped
+ * into memory, so a KB of tens of millions of triples occupies almost no Java heap and creates no garbage
+ * collection pressure beyond the nodes returned by each <code>find</code>.
+ * <p>
+ * Use {@link #open(Path, Path)} to obtain a graph for a KB file.  The first time a KB is opened, it is parsed and
+ * its index is written to a directory under the specified index root.  Building the index sorts the KB's terms and
+ * triples in bounded runs on disk, so KBs much larger than the heap can be indexed.  Subsequent opens of the same, unchanged
+ * KB map the existing index directly and skip parsing entirely.  Any number of threads may read the graph
+ * concurrently.  Closing the graph unmaps its index files at once, so it must not be closed while any thread is still
+ * reading it, including through an iterator returned by <code>find</code>.
+ * <p>
+ * Note that, as in {@link CompactGraph}, literals are matched by term rather than by value, e.g.,
+ * <code>"1"^^xsd:int</code> does not match <code>"01"^^xsd:int</code>.
+ */
+public final class MappedGraph extends GraphBase {
+    private static final String FORMAT_VERSION = "2";
+    private static final String MANIFEST = "manifest.properties";
+    private static final String PREFIXES = "prefixes.properties";
+    private static final String TERMS = "terms.dat";
+    private static final String TERM_OFFSETS = "terms.idx";
+    private static final String TERM_HASH = "terms.hash";
+    private static final String SUBJECTS = "s.dat";
+    private static final String PREDICATES = "p.dat";
+    private static final String OBJECTS = "o.dat";
+    private static final String POS_ORDER = "pos.dat";
+    private static final String OSP_ORDER = "osp.dat";
+
+    // Manifest keys
+    private static final String VERSION_KEY = "version";
+    private static final String SOURCE_KEY = "source";
+    private static final String SIZE_KEY = "sourceSize";
+    private static final String MODIFIED_KEY = "sourceModified";
+    private static final String TRIPLES_KEY = "triples";
+    private static final String TERMS_KEY = "terms";
+    private static final String HASH_SLOTS_KEY = "hashSlots";
+
+    // Records sorted in memory at once while building an index
+    private static final int RUN_SIZE = 1 << 18;
+
+    // Term kinds
+    private static final byte URI = 'U';
+    private static final byte BLANK = 'B';
+    private static final byte LITERAL = 'L';
+
+    private final Path directory;
+    private final MappedIndex index;
+    private final MappedDictionary dictionary;
+
+    private MappedGraph(Path directory, Properties manifest) throws IOException {
+        this.directory = directory;
+        int triples = Integer.parseInt(manifest.getProperty(TRIPLES_KEY));
+        int terms = Integer.parseInt(manifest.getProperty(TERMS_KEY));
+        long hashSlots = Long.parseLong(manifest.getProperty(HASH_SLOTS_KEY));
+        this.index = new MappedIndex(triples,
+                MappedFile.open(directory.resolve(SUBJECTS)),
+                MappedFile.open(directory.resolve(PREDICATES)),
+                MappedFile.open(directory.resolve(OBJECTS)),
+                MappedFile.open(directory.resolve(POS_ORDER)),
+                MappedFile.open(directory.resolve(OSP_ORDER)));
+        this.dictionary = new MappedDictionary(terms, hashSlots,
+                MappedFile.open(directory.resolve(TERMS)),
+                MappedFile.open(directory.resolve(TERM_OFFSETS)),
+                MappedFile.open(directory.resolve(TERM_HASH)));
+        Properties prefixes = readProperties(directory.resolve(PREFIXES));
+        for (String prefix : prefixes.stringPropertyNames()) {
+            getPrefixMapping().setNsPrefix(prefix, prefixes.getProperty(prefix));
+        }
+    }
+
+    /**
+     * Open a memory-mapped graph of the specified KB.  If <code>indexRoot</code> already contains an index of
+     * this KB that was built since the KB was last modified, it is reused.  Otherwise, the KB is parsed (in the
+     * format indicated by its file extension, Turtle by default) and a new index is built.
+     *
+     * @param kb        the KB file
+     * @param indexRoot directory under which indexes of KBs are kept
+     * @return a graph of the KB
+     * @throws IOException if the index cannot be read or written
+     */
+    public static MappedGraph open(Path kb, Path indexRoot) throws IOException {
+        return open(kb, indexRoot, RUN_SIZE);
+    }
+
+    // Open a graph whose index, if built, is sorted in runs of runSize records
+    static MappedGraph open(Path kb, Path indexRoot, int runSize) throws IOException {
+        Path directory = indexDirectory(kb, indexRoot);
+        if (!hasCurrentIndex(kb, indexRoot)) {
+            build(kb, directory, runSize);
+        }
+        return new MappedGraph(directory, readProperties(directory.resolve(MANIFEST)));
+    }
+
+    /**
+     * Open a model backed by a memory-mapped graph of the specified KB.  See {@link #open(Path, Path)}.
+     *
+     * @param kb        the KB file
+     * @param indexRoot directory under which indexes of KBs are kept
+     * @return a read-only model of the KB
+     * @throws IOException if the index cannot be read or written
+     */
+    public static Model openModel(Path kb, Path indexRoot) throws IOException {
+        return ModelFactory.createModelForGraph(open(kb, indexRoot));
+    }
+
+    /**
+     * Returns whether <code>indexRoot</code> contains a reusable index of the specified KB, i.e., one that was built
+     * from a file of the same path, size, and modification time by this version of the index format.
+     *
+     * @param kb        the KB file
+     * @param indexRoot directory under which indexes of KBs are kept
+     * @return true if opening <code>kb</code> would reuse an existing index
+     */
+    public static boolean hasCurrentIndex(Path kb, Path indexRoot) {
+        Path manifestPath = indexDirectory(kb, indexRoot).resolve(MANIFEST);
+        if (!Files.exists(manifestPath)) {
+            return false;
+        }
+        try {
+            Properties manifest = readProperties(manifestPath);
+            return FORMAT_VERSION.equals(manifest.getProperty(VERSION_KEY))
+                    && kb.toAbsolutePath().toString().equals(manifest.getProperty(SOURCE_KEY))
+                    && Long.toString(Files.size(kb)).equals(manifest.getProperty(SIZE_KEY))
+                    && Long.toString(Files.getLastModifiedTime(kb).toMillis()).equals(manifest.getProperty(MODIFIED_KEY));
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Named for the KB's file name and a digest of its absolute path, so that KBs of the same name do not collide
+    private static Path indexDirectory(Path kb, Path indexRoot) {
+        Path absolute = kb.toAbsolutePath();
+        return indexRoot.resolve(absolute.getFileName() + "-"
+                + Hashing.sha256().hashString(absolute.toString(), StandardCharsets.UTF_8).toString().substring(0, 32));
+    }
+
+    private static Properties readProperties(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static void writeProperties(Properties properties, Path path) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(path.toFile());
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+
+    //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
+    // Building
+    // ----------------------------
+
+    // Parse the KB and write its dictionary and sorted columns without holding its terms or triples on the heap.
+    // Each step streams one sorted run file set into the next, holding at most runSize records at once:
+    //  1. every term occurrence, as its encoding and its place in the KB, sorted by encoding;
+    //  2. term IDs, numbered in encoding order as the terms are written, sorted back by place;
+    //  3. triples of term IDs, sorted by subject, predicate, object and written as columns, without duplicates;
+    //  4. the positions of those triples, sorted by predicate, object, subject and by object, subject, predicate.
+    // Every file is forced to disk before the manifest is written last, so that an interrupted build is never
+    // reused.
+    private static void build(Path kb, Path directory, int runSize) throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        Files.createDirectories(directory);
+
+        final Properties prefixes = new Properties();
+        final long triples;
+        final int terms;
+        final int distinct;
+        try (ExternalSorter<TermRef> occurrences = new ExternalSorter<>(TermRef.CODEC, TermRef.ORDER, runSize,
+                directory)) {
+            final long[] places = {0};
+            KBFiles.parse(kb, new StreamRDFBase() {
+                @Override
+                public void triple(Triple triple) {
+                    occurrences.add(new TermRef(encodeTerm(triple.getSubject()), places[0]++));
+                    occurrences.add(new TermRef(encodeTerm(triple.getPredicate()), places[0]++));
+                    occurrences.add(new TermRef(encodeTerm(triple.getObject()), places[0]++));
+                }
+
+                @Override
+                public void prefix(String prefix, String iri) {
+                    prefixes.setProperty(prefix, iri);
+                }
+            });
+            triples = places[0] / 3;
+            if (triples >= Integer.MAX_VALUE) {
+                throw new IOException("Cannot index more than " + Integer.MAX_VALUE + " triples of " + kb);
+            }
+
+            try (ExternalSorter<long[]> ids = new ExternalSorter<>(LONGS, Comparator.comparingLong(id -> id[0]),
+                    runSize, directory)) {
+                terms = writeTerms(occurrences.sorted(), ids, directory);
+                occurrences.close();
+                distinct = writeTriples(ids.sorted(), (int) triples, runSize, directory);
+            }
+        }
+        final long hashSlots = writeHash(terms, directory);
+        writeProperties(prefixes, directory.resolve(PREFIXES));
+
+        Properties manifest = new Properties();
+        manifest.setProperty(VERSION_KEY, FORMAT_VERSION);
+        manifest.setProperty(SOURCE_KEY, kb.toAbsolutePath().toString());
+        manifest.setProperty(SIZE_KEY, Long.toString(Files.size(kb)));
+        manifest.setProperty(MODIFIED_KEY, Long.toString(Files.getLastModifiedTime(kb).toMillis()));
+        manifest.setProperty(TRIPLES_KEY, Integer.toString(distinct));
+        manifest.setProperty(TERMS_KEY, Integer.toString(terms));
+        manifest.setProperty(HASH_SLOTS_KEY, Long.toString(hashSlots));
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        writeProperties(manifest, temp);
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Write each distinct term, in encoding order, and its offset, and add the ID of every occurrence to ids as a
+    // place and term ID pair.  Returns the number of terms.
+    private static int writeTerms(Iterator<TermRef> occurrences, ExternalSorter<long[]> ids, Path directory)
+            throws IOException {
+        int terms = 0;
+        try (SyncedOutput termOut = new SyncedOutput(directory.resolve(TERMS));
+             SyncedOutput offsetOut = new SyncedOutput(directory.resolve(TERM_OFFSETS))) {
+            byte[] previous = null;
+            long offset = 0;
+            while (occurrences.hasNext()) {
+                TermRef occurrence = occurrences.next();
+                if (previous == null || !Arrays.equals(previous, occurrence.term)) {
+                    if (terms == Integer.MAX_VALUE - 1) {
+                        throw new IOException("Cannot index more than " + terms + " terms");
+                    }
+                    terms++;
+                    termOut.write(occurrence.term);
+                    offsetOut.putLong(offset);
+                    offset += occurrence.term.length;
+                    previous = occurrence.term;
+                }
+                ids.add(new long[]{occurrence.place, terms - 1});
+            }
+            offsetOut.putLong(offset);
+        }
+        return terms;
+    }
+
+    // Write the subject, predicate, and object columns in SPO order from term IDs in place order, then the POS and
+    // OSP permutations of their positions.  Returns the number of distinct triples.
+    private static int writeTriples(Iterator<long[]> ids, int triples, int runSize, Path directory)
+            throws IOException {
+        int position = 0;
+        try (ExternalSorter<int[]> spo = new ExternalSorter<>(INTS, KEY_ORDER, runSize, directory)) {
+            for (int i = 0; i < triples; i++) {
+                spo.add(new int[]{(int) ids.next()[1], (int) ids.next()[1], (int) ids.next()[1]});
+            }
+            try (ExternalSorter<int[]> pos = new ExternalSorter<>(INTS, KEY_ORDER, runSize, directory);
+                 ExternalSorter<int[]> osp = new ExternalSorter<>(INTS, KEY_ORDER, runSize, directory)) {
+                try (SyncedOutput subjects = new SyncedOutput(directory.resolve(SUBJECTS));
+                     SyncedOutput predicates = new SyncedOutput(directory.resolve(PREDICATES));
+                     SyncedOutput objects = new SyncedOutput(directory.resolve(OBJECTS))) {
+                    int[] previous = null;
+                    for (Iterator<int[]> sorted = spo.sorted(); sorted.hasNext(); ) {
+                        int[] triple = sorted.next();
+                        if (previous != null && KEY_ORDER.compare(previous, triple) == 0) {
+                            continue;
+                        }
+                        subjects.putInt(triple[0]);
+                        predicates.putInt(triple[1]);
+                        objects.putInt(triple[2]);
+                        pos.add(new int[]{triple[1], triple[2], triple[0], position});
+                        osp.add(new int[]{triple[2], triple[0], triple[1], position});
+                        position++;
+                        previous = triple;
+                    }
+                }
+                spo.close();
+                writePositions(pos.sorted(), directory.resolve(POS_ORDER));
+                pos.close();
+                writePositions(osp.sorted(), directory.resolve(OSP_ORDER));
+            }
+        }
+        return position;
+    }
+
+    private static void writePositions(Iterator<int[]> sorted, Path path) throws IOException {
+        try (SyncedOutput out = new SyncedOutput(path)) {
+            while (sorted.hasNext()) {
+                out.putInt(sorted.next()[3]);
+            }
+        }
+    }
+
+    // Write an open-addressing hash table of term IDs + 1 (0 is empty) from the written terms.  Returns its size,
+    // a power of two at least twice the number of terms.
+    private static long writeHash(int terms, Path directory) throws IOException {
+        long hashSlots = Long.highestOneBit(Math.max(terms, 1)) * 4;
+        MappedFile bytes = MappedFile.open(directory.resolve(TERMS));
+        MappedFile offsets = MappedFile.open(directory.resolve(TERM_OFFSETS));
+        MappedFile hash = MappedFile.create(directory.resolve(TERM_HASH), hashSlots * Integer.BYTES);
+        try {
+            for (int id = 0; id < terms; id++) {
+                long slot = hash(termBytes(bytes, offsets, id)) & (hashSlots - 1);
+                while (hash.getInt(slot) != 0) {
+                    slot = (slot + 1) & (hashSlots - 1);
+                }
+                hash.putInt(slot, id + 1);
+            }
+            hash.force();
+        } finally {
+            bytes.close();
+            offsets.close();
+            hash.close();
+        }
+        return hashSlots;
+    }
+
+    private static byte[] termBytes(MappedFile bytes, MappedFile offsets, int id) {
+        long from = offsets.getLong(id);
+        long to = offsets.getLong(id + 1);
+        byte[] term = new byte[(int) (to - from)];
+        for (int i = 0; i < term.length; i++) {
+            term[i] = bytes.get(from + i);
+        }
+        return term;
+    }
+
+    // Orders keys of equal length, such as triples of term IDs, lexicographically, ignoring any trailing position
+    private static final Comparator<int[]> KEY_ORDER = (a, b) -> {
+        for (int k = 0; k < 3; k++) {
+            int cmp = Integer.compare(a[k], b[k]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    };
+
+    private static final ExternalSorter.Codec<int[]> INTS = new ExternalSorter.Codec<int[]>() {
+        @Override
+        public void write(DataOutput out, int[] record) throws IOException {
+            out.writeByte(record.length);
+            for (int value : record) {
+                out.writeInt(value);
+            }
+        }
+
+        @Override
+        public int[] read(DataInput in) throws IOException {
+            int[] record = new int[in.readByte()];
+            for (int i = 0; i < record.length; i++) {
+                record[i] = in.readInt();
+            }
+            return record;
+        }
+    };
+
+    private static final ExternalSorter.Codec<long[]> LONGS = new ExternalSorter.Codec<long[]>() {
+        @Override
+        public void write(DataOutput out, long[] record) throws IOException {
+            out.writeLong(record[0]);
+            out.writeLong(record[1]);
+        }
+
+        @Override
+        public long[] read(DataInput in) throws IOException {
+            return new long[]{in.readLong(), in.readLong()};
+        }
+    };
+
+    /**
+     * One occurrence of a term in a KB: its encoding and its place, three times the triple's number in the KB plus
+     * 0, 1, or 2 for its subject, predicate, or object.
+     */
+    private static final class TermRef {
+        static final Comparator<TermRef> ORDER = (a, b) -> Arrays.compareUnsigned(a.term, b.term);
+        static final ExternalSorter.Codec<TermRef> CODEC = new ExternalSorter.Codec<TermRef>() {
+            @Override
+            public void write(DataOutput out, TermRef record) throws IOException {
+                out.writeInt(record.term.length);
+                out.write(record.term);
+                out.writeLong(record.place);
+            }
+
+            @Override
+            public TermRef read(DataInput in) throws IOException {
+                byte[] term = new byte[in.readInt()];
+                in.readFully(term);
+                return new TermRef(term, in.readLong());
+            }
+        };
+
+        final byte[] term;
+        final long place;
+
+        TermRef(byte[] term, long place) {
+            this.term = term;
+            this.place = place;
+        }
+    }
+
+    /**
+     * Writes little-endian values to a file through a buffer, and forces them to disk when closed.
+     */
+    private static final class SyncedOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        SyncedOutput(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                drain();
+            }
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < Long.BYTES) {
+                drain();
+            }
+            buffer.putLong(value);
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
+    // Term encoding
+    // ----------------------------
+
+    // A kind byte followed by the UTF-8 IRI or blank node label, or for literals the lexical form, language, and
+    // datatype IRI, each preceded by its length
+    static byte[] encodeTerm(Node node) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        if (node.isURI()) {
+            bytes.write(URI);
+            bytes.writeBytes(node.getURI().getBytes(StandardCharsets.UTF_8));
+        } else if (node.isBlank()) {
+            bytes.write(BLANK);
+            bytes.writeBytes(node.getBlankNodeLabel().getBytes(StandardCharsets.UTF_8));
+        } else if (node.isLiteral()) {
+            bytes.write(LITERAL);
+            writeString(bytes, node.getLiteralLexicalForm());
+            writeString(bytes, node.getLiteralLanguage());
+            writeString(bytes, node.getLiteralDatatypeURI() == null ? "" : node.getLiteralDatatypeURI());
+        } else {
+            throw new IllegalArgumentException("Cannot index variable or wildcard node " + node);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream bytes, String string) {
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        int length = utf8.length;
+        while (length >= 0x80) { // unsigned variable-length length
+            bytes.write((length & 0x7f) | 0x80);
+            length >>>= 7;
+        }
+        bytes.write(length);
+        bytes.writeBytes(utf8);
+    }
+
+    static Node decodeTerm(byte[] bytes) {
+        switch (bytes[0]) {
+            case URI:
+                return NodeFactory.createURI(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8));
+            case BLANK:
+                return NodeFactory.createBlankNode(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8));
+            case LITERAL:
+                int[] position = {1};
+                String lexical = readString(bytes, position);
+                String language = readString(bytes, position);
+                String datatype = readString(bytes, position);
+                return language.isEmpty() ?
+                        NodeFactory.createLiteral(lexical, TypeMapper.getInstance().getSafeTypeByName(datatype)) :
+                        NodeFactory.createLiteral(lexical, language);
+            default:
+                throw new IllegalStateException("Corrupt term of kind " + bytes[0]);
+        }
+    }
+
+    private static String readString(byte[] bytes, int[] position) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        String string = new String(bytes, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return string;
+    }
+
+    // A 64-bit hash, so that tables of more than 2^31 slots are addressed evenly
+    private static long hash(byte[] bytes) {
+        long hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
+    // Queries
+    // ----------------------------
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        return index.find(pattern, dictionary);
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return index.size();
+    }
+
+    @Override
+    public void close() {
+        if (!isClosed()) {
+            super.close();
+            index.close();
+            dictionary.close();
+        }
+    }
+
+    /**
+     * @return the directory holding this graph's index files
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * A {@link TripleIndex} whose columns are memory-mapped files.
+     */
+    private static final class MappedIndex extends TripleIndex {
+        private final int size;
+        private final MappedFile subjects;
+        private final MappedFile predicates;
+        private final MappedFile objects;
+        private final MappedFile posOrder;
+        private final MappedFile ospOrder;
+
+        MappedIndex(int size, MappedFile subjects, MappedFile predicates, MappedFile objects,
+                    MappedFile posOrder, MappedFile ospOrder) {
+            this.size = size;
+            this.subjects = subjects;
+            this.predicates = predicates;
+            this.objects = objects;
+            this.posOrder = posOrder;
+            this.ospOrder = ospOrder;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int subject(int position) {
+            return subjects.getInt(position);
+        }
+
+        @Override
+        int predicate(int position) {
+            return predicates.getInt(position);
+        }
+
+        @Override
+        int object(int position) {
+            return objects.getInt(position);
+        }
+
+        @Override
+        int posOrder(int i) {
+            return posOrder.getInt(i);
+        }
+
+        @Override
+        int ospOrder(int i) {
+            return ospOrder.getInt(i);
+        }
+
+        void close() {
+            subjects.close();
+            predicates.close();
+            objects.close();
+            posOrder.close();
+            ospOrder.close();
+        }
+    }
+
+    /**
+     * A term dictionary whose terms, offsets, and hash table are memory-mapped files.  Recently decoded terms are
+     * cached so that frequently used nodes such as predicates and types are not rebuilt on every lookup.
+     */
+    private static final class MappedDictionary implements TripleIndex.Dictionary {
+        private final int terms;
+        private final long hashSlots;
+        private final MappedFile bytes;
+        private final MappedFile offsets;
+        private final MappedFile hash;
+        private final DecodedNode[] decoded = new DecodedNode[4096];
+
+        MappedDictionary(int terms, long hashSlots, MappedFile bytes, MappedFile offsets, MappedFile hash) {
+            this.terms = terms;
+            this.hashSlots = hashSlots;
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.hash = hash;
+        }
+
+        private boolean termEquals(int id, byte[] term) {
+            long from = offsets.getLong(id);
+            if (offsets.getLong(id + 1) - from != term.length) {
+                return false;
+            }
+            for (int i = 0; i < term.length; i++) {
+                if (bytes.get(from + i) != term[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int lookup(Node node) {
+            if (!node.isConcrete()) {
+                return -1;
+            }
+            byte[] term = encodeTerm(node);
+            long slot = MappedGraph.hash(term) & (hashSlots - 1);
+            for (int entry = hash.getInt(slot); entry != 0; entry = hash.getInt(slot)) {
+                if (termEquals(entry - 1, term)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & (hashSlots - 1);
+            }
+            return -1;
+        }
+
+        @Override
+        public Node decode(int id) {
+            if (id < 0 || id >= terms) {
+                throw new IllegalArgumentException("No term with ID " + id);
+            }
+            int slot = id & (decoded.length - 1);
+            DecodedNode cached = decoded[slot];
+            if (cached != null && cached.id == id) {
+                return cached.node;
+            }
+            Node node = decodeTerm(termBytes(bytes, offsets, id));
+            decoded[slot] = new DecodedNode(id, node);
+            return node;
+        }
+
+        void close() {
+            bytes.close();
+            offsets.close();
+            hash.close();
+        }
+    }
+
+    private static final class DecodedNode {
+        final int id;
+        final Node node;
+
+        DecodedNode(int id, Node node) {
+            this.id = id;
+            this.node = node;
+        }
+    }
+
+    /**
+     * A file mapped into memory in segments of up to 1GB, so that files larger than 2GB can be mapped.  Reads use
+     * absolute positions only and are safe from any number of threads.
+     */
+    private static final class MappedFile {
+        private static final int SEGMENT_BITS = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+        // Unmaps a buffer at once rather than once it is collected, where the JDK allows it
+        private static final Unmapper UNMAPPER = Unmapper.find();
+
+        private final MappedByteBuffer[] segments;
+
+        private MappedFile(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(mode, start, Math.min(size - start, 1L << SEGMENT_BITS));
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        static MappedFile open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            }
+        }
+
+        static MappedFile create(Path path, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size);
+            }
+        }
+
+        /**
+         * Unmap the file.  Reading it afterwards fails rather than reading unmapped memory, unless the read races
+         * with closing.
+         */
+        void close() {
+            for (int i = 0; i < segments.length; i++) {
+                MappedByteBuffer segment = segments[i];
+                segments[i] = null;
+                if (segment != null) {
+                    UNMAPPER.unmap(segment);
+                }
+            }
+        }
+
+        // Write any changes made to a file mapped for writing through to disk
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        byte get(long position) {
+            return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+        }
+
+        // Ints and longs never straddle segments, since the segment size is a multiple of their size
+        int getInt(long index) {
+            long position = index * Integer.BYTES;
+            return segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+        }
+
+        void putInt(long index, int value) {
+            long position = index * Integer.BYTES;
+            segments[(int) (position >>> SEGMENT_BITS)].putInt((int) (position & SEGMENT_MASK), value);
+        }
+
+        long getLong(long index) {
+            long position = index * Long.BYTES;
+            return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+        }
+    }
+
+    /**
+     * Releases the mapping of a buffer through <code>sun.misc.Unsafe.invokeCleaner</code>, which the JDK has offered
+     * since Java 9 for this purpose.  Where it is unavailable, the mapping is released once the buffer is collected.
+     */
+    private static final class Unmapper {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Unmapper find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                return new Unmapper(field.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return new Unmapper(null, null);
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            if (invokeCleaner == null) {
+                return;
+            }
+            try {
+                invokeCleaner.invoke(unsafe, buffer);
+            } catch (ReflectiveOperationException e) {
+                // left for the collector to release
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.ncc.aif;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import com.ncc.aif.util.Compression;
+import com.ncc.aif.util.KBFiles;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+
+/**
+ * Keeps validation within the available Java heap.  Before a KB is loaded, the governor estimates how much memory it
+ * will need from the size of its file and chooses the cheapest {@link Storage} that fits.  While the KB is parsed, the
+ * estimate is refined from the actual number of triples, and parsing is abandoned as soon as the KB is known not to
+ * fit, so that the caller can fall back to the next storage tier instead of running out of memory part way through.
+ * <p>
+ * During validation, the governor watches heap usage after garbage collection.  Once it crosses a threshold,
+ * {@link #admit()} lets only one validation task run at a time until usage drops again, trading speed for the memory
+ * that each concurrent task would otherwise hold.
+ */
+public final class MemoryGovernor {
+    /**
+     * Default fraction of the maximum heap that may be in use after garbage collection before tasks are throttled.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.85;
+
+    // Conservative number of bytes of Turtle per triple; AIF KBs usually take 55-75
+    private static final long FILE_BYTES_PER_TRIPLE = 50;
+
+    // Fraction of the available heap a KB may occupy, leaving the rest for validation itself
+    private static final double KB_SHARE = 0.5;
+
+    // How often, in triples, parsing checks whether the KB still fits
+    private static final int CHECK_INTERVAL = 1 << 14;
+
+    /**
+     * Ways of storing a KB for validation, from the fastest and largest to the slowest and smallest.
+     */
+    public enum Storage {
+        /**
+         * Jena's default in-memory graph
+         */
+        MEMORY(500),
+        /**
+         * A dictionary-encoded {@link CompactGraph}
+         */
+        COMPACT(120),
+        /**
+         * An off-heap {@link MappedGraph}
+         */
+        MAPPED(0);
+
+        private final long bytesPerTriple;
+
+        Storage(long bytesPerTriple) {
+            this.bytesPerTriple = bytesPerTriple;
+        }
+
+        /**
+         * @return approximate heap used per triple of a KB stored this way
+         */
+        public long getBytesPerTriple() {
+            return bytesPerTriple;
+        }
+
+        /**
+         * @return the next smaller way of storing a KB, or this one if it is the smallest
+         */
+        public Storage next() {
+            return this == MAPPED ? MAPPED : values()[ordinal() + 1];
+        }
+    }
+
+    /**
+     * Thrown while loading a KB that would exceed its memory budget.
+     */
+    public static final class BudgetExceededException extends RuntimeException {
+        private final long triples;
+
+        BudgetExceededException(long triples, long budget) {
+            super("KB exceeded its memory budget of " + (budget >> 20) + "MB after " + triples + " triples");
+            this.triples = triples;
+        }
+
+        /**
+         * @return the number of triples loaded before the budget was exceeded
+         */
+        public long getTriples() {
+            return triples;
+        }
+    }
+
+    /**
+     * Permission to run a task, to be closed when the task is complete.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * A permit that never waits, for use when no governor is in effect.
+     */
+    public static final Permit UNGOVERNED = () -> {
+    };
+
+    private final double threshold;
+    private final List<MemoryPoolMXBean> pools;
+    private final ReentrantLock singleLane = new ReentrantLock(true);
+
+    /**
+     * Create a governor that throttles tasks at the {@link #DEFAULT_THRESHOLD}.
+     */
+    public MemoryGovernor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Create a governor that throttles tasks once the specified fraction of the heap is in use after collection.
+     *
+     * @param threshold fraction of the maximum heap, between 0 and 1
+     */
+    public MemoryGovernor(double threshold) {
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("Threshold must be greater than 0 and at most 1.");
+        }
+        this.threshold = threshold;
+        // Only the tenured pools report usage thresholds; the young pools are always emptied by collection
+        this.pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .filter(pool -> pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return an estimate of the heap that is not currently in use
+     */
+    public long availableHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * @param fileSize size in bytes of a KB file
+     * @return a (generous) estimate of the number of triples in the file
+     */
+    public static long estimateTriples(long fileSize) {
+        return fileSize / FILE_BYTES_PER_TRIPLE + 1;
+    }
+
+    /**
+     * Choose the fastest storage in which a KB of the specified file size is expected to fit in the available heap.
+     *
+     * @param fileSize size in bytes of a KB file
+     * @return how the KB should be stored
+     */
+    public Storage chooseStorage(long fileSize) {
+        return chooseStorage(fileSize, availableHeap());
+    }
+
+    /**
+     * Choose the fastest storage in which the KB in <code>file</code> is expected to fit in the available heap.  The
+     * size of a compressed KB is estimated by {@link Compression#estimateUncompressedSize(Path)}.
+     *
+     * @param file KB file
+     * @return how the KB should be stored
+     * @throws IOException if the size of the file cannot be read
+     */
+    public Storage chooseStorage(Path file) throws IOException {
+        return chooseStorage(estimateFileSize(file));
+    }
+
+    /**
+     * @param file KB file, possibly compressed
+     * @return an estimate of the size in bytes of the KB once decompressed
+     * @throws IOException if the size of the file cannot be read
+     */
+    public static long estimateFileSize(Path file) throws IOException {
+        return Compression.estimateUncompressedSize(file);
+    }
+
+    static Storage chooseStorage(long fileSize, long availableHeap) {
+        long triples = estimateTriples(fileSize);
+        Storage storage = Storage.MEMORY;
+        while (storage != Storage.MAPPED && triples * storage.bytesPerTriple > budget(availableHeap)) {
+            storage = storage.next();
+        }
+        return storage;
+    }
+
+    private static long budget(long availableHeap) {
+        return (long) (availableHeap * KB_SHARE);
+    }
+
+    /**
+     * Load the specified KB file into <code>model</code>, abandoning the load if the KB grows beyond its share of
+     * the available heap when stored as <code>storage</code>, or if heap usage crosses the threshold.  The file is
+     * parsed in the format indicated by its extension, Turtle by default.
+     *
+     * @param model   model to load into
+     * @param file    KB file
+     * @param storage how <code>model</code> stores triples
+     * @throws IOException              if the file cannot be read
+     * @throws BudgetExceededException  if the KB does not fit; <code>model</code> is then partially loaded
+     * @throws IllegalArgumentException if <code>storage</code> is {@link Storage#MAPPED}, which is not loaded
+     */
+    public void load(Model model, Path file, Storage storage) throws IOException {
+        load(model, file, storage, budget(availableHeap()));
+    }
+
+    void load(Model model, Path file, Storage storage, long budget) throws IOException {
+        if (storage == Storage.MAPPED) {
+            throw new IllegalArgumentException("Mapped KBs are opened with MappedGraph, not loaded");
+        }
+        final StreamRDF counting = new StreamRDFWrapper(StreamRDFLib.graph(model.getGraph())) {
+            private long triples = 0;
+
+            @Override
+            public void triple(Triple triple) {
+                super.triple(triple);
+                if (++triples % CHECK_INTERVAL == 0
+                        && (triples * storage.bytesPerTriple > budget || isUnderPressure())) {
+                    throw new BudgetExceededException(triples, budget);
+                }
+            }
+        };
+        KBFiles.parse(file, counting);
+    }
+
+    /**
+     * @return whether heap usage after the most recent garbage collection exceeds the threshold
+     */
+    public boolean isUnderPressure() {
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage afterCollection = pool.getCollectionUsage();
+            long max = pool.getUsage().getMax();
+            if (afterCollection != null && max > 0 && afterCollection.getUsed() > threshold * max) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait until a task may run.  While memory is plentiful this returns immediately; under pressure, tasks are
+     * admitted one at a time, in the order they asked.
+     *
+     * @return a permit to close once the task is complete
+     */
+    public Permit admit() {
+        if (!isUnderPressure()) {
+            return UNGOVERNED;
+        }
+        singleLane.lock();
+        return singleLane::unlock;
+    }
+}
@@ -0,0 +1,76 @@
+package com.ncc.aif;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Reuses identical nodes within each model for which the cache has been enabled.  The most recently used nodes of a
+ * model are kept in a cache of bounded size; once a node has been evicted, the next identical one is created anew,
+ * which is still valid AIF but shares less.
+ */
+final class NodeCache {
+    /**
+     * Confidences and bounding boxes, keyed by their values and system.  See {@link AIFUtils#enableInterning(Model)}.
+     */
+    static final NodeCache ANNOTATIONS = new NodeCache("node", 10_000);
+    /**
+     * Justifications made without a URI, keyed by their type, source document, span, system, and confidence.  See
+     * {@link AIFUtils#enableJustificationSharing(Model)}.
+     */
+    static final NodeCache JUSTIFICATIONS = new NodeCache("justification", 100_000);
+
+    private final String name;
+    private final int defaultMaxSize;
+    private final GraphRegistry<Map<List<Object>, Node>> caches = new GraphRegistry<>();
+
+    private NodeCache(String name, int defaultMaxSize) {
+        this.name = name;
+        this.defaultMaxSize = defaultMaxSize;
+    }
+
+    int getDefaultMaxSize() {
+        return defaultMaxSize;
+    }
+
+    void enable(Model model, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Sharing requires room for at least one " + name + " but got " + maxSize);
+        }
+        caches.put(model.getGraph(), new LinkedHashMap<List<Object>, Node>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Node> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    void disable(Model model) {
+        caches.remove(model.getGraph());
+    }
+
+    /**
+     * @return the node previously cached in <code>model</code> under <code>key</code>, or else the node returned
+     * by <code>create</code>, which is cached if the cache is enabled for <code>model</code>
+     */
+    Node get(Model model, Supplier<Node> create, Object... key) {
+        final Map<List<Object>, Node> cache = caches.get(model.getGraph());
+        if (cache == null) {
+            return create.get();
+        }
+        final List<Object> cacheKey = Arrays.asList(key);
+        synchronized (cache) {
+            Node node = cache.get(cacheKey);
+            if (node == null) {
+                node = create.get();
+                cache.put(cacheKey, node);
+            }
+            return node;
+        }
+    }
+}
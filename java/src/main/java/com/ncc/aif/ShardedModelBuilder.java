@@ -0,0 +1,140 @@
+package com.ncc.aif;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * Builds one KB from many threads without a shared lock.  Each thread that calls {@link #shard()} gets a model of its
+ * own, with the standard namespaces and the system resource already made, to which it adds statements with
+ * {@link AIFUtils} as it would to any model.  Once every thread is done, {@link #merge()} combines the shards.
+ * <p>
+ * Because the shards are RDF graphs, resources with the same IRI in several shards, such as an entity or cluster that
+ * more than one thread made, become one resource when merged, and identical statements about them are kept once.
+ * Blank nodes are never shared between shards.  Objects read from a shard, such as the <code>system</code> resource,
+ * belong to that shard's model, so a thread should only use what it read from its own shard.
+ */
+public final class ShardedModelBuilder {
+    private final String systemUri;
+    private final Consumer<Model> setup;
+    private final Queue<Model> shards = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Model> shard = ThreadLocal.withInitial(this::createShard);
+    private volatile boolean merged = false;
+
+    /**
+     * Create a builder whose shards share the system <code>systemUri</code>.
+     *
+     * @param systemUri The URI of the system which creates the KB
+     */
+    public ShardedModelBuilder(@Nonnull String systemUri) {
+        this(systemUri, model -> {
+        });
+    }
+
+    /**
+     * Create a builder whose shards share the system <code>systemUri</code> and are each prepared by
+     * <code>setup</code>, for example to add more namespaces or to
+     * {@link AIFUtils#enableInterning(Model) share nodes}.
+     *
+     * @param systemUri The URI of the system which creates the KB
+     * @param setup     Called with each new shard, by the thread to which it belongs
+     */
+    public ShardedModelBuilder(@Nonnull String systemUri, @Nonnull Consumer<Model> setup) {
+        this.systemUri = systemUri;
+        this.setup = setup;
+    }
+
+    private Model createShard() {
+        final Model model = createModel();
+        setup.accept(model);
+        shards.add(model);
+        return model;
+    }
+
+    private Model createModel() {
+        final Model model = ModelFactory.createDefaultModel();
+        AIFUtils.addStandardNamespaces(model);
+        AIFUtils.makeSystemWithURI(model, systemUri);
+        return model;
+    }
+
+    /**
+     * @return The model of the calling thread, made on its first call
+     */
+    public Model shard() {
+        if (merged) {
+            throw new IllegalStateException("Shards have already been merged");
+        }
+        return shard.get();
+    }
+
+    /**
+     * @return The system resource in the model of the calling thread
+     */
+    public Resource system() {
+        return shard().createResource(systemUri);
+    }
+
+    /**
+     * Combine the shards into one model.  The largest shard becomes the merged model, and the triples of the others
+     * are added to it in one bulk addition each, so the largest is not copied.  Call once every thread has finished
+     * with its shard; shards may not be used or made afterwards.
+     *
+     * @return The merged model
+     */
+    public Model merge() {
+        final List<Model> all = finish();
+        if (all.isEmpty()) {
+            return createModel();
+        }
+        final Model merged = all.get(0);
+        final Graph graph = merged.getGraph();
+        for (Model other : all.subList(1, all.size())) {
+            GraphUtil.addInto(graph, other.getGraph());
+            other.getNsPrefixMap().forEach(merged::setNsPrefix);
+            other.close();
+        }
+        return merged;
+    }
+
+    /**
+     * Combine the shards into one read-only model, indexed once, from which the KB may be written or validated by any
+     * number of threads.  See {@link FrozenGraph}.  Call once every thread has finished with its shard; shards may not
+     * be used or made afterwards.
+     *
+     * @return The merged model
+     */
+    public Model freeze() {
+        final List<Model> all = finish();
+        final Graph[] graphs = new Graph[all.size()];
+        for (int i = 0; i < graphs.length; i++) {
+            graphs[i] = all.get(i).getGraph();
+        }
+        final Model frozen = ModelFactory.createModelForGraph(FrozenGraph.union(graphs));
+        all.forEach(Model::close);
+        return frozen;
+    }
+
+    // The shards, largest first
+    private List<Model> finish() {
+        if (merged) {
+            throw new IllegalStateException("Shards have already been merged");
+        }
+        merged = true;
+        final List<Model> all = new ArrayList<>(shards);
+        shards.clear();
+        all.sort(Comparator.comparingLong(Model::size).reversed());
+        return all;
+    }
+}
@@ -0,0 +1,134 @@
+package com.ncc.aif;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import com.ncc.aif.util.Compression;
+import com.ncc.aif.util.KBFiles;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.shared.DeleteDeniedException;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * A write-only {@link org.apache.jena.graph.Graph} that passes each added triple straight to a {@link StreamRDF}
+ * and keeps nothing, so that a KB of any size can be built with {@link AIFUtils} in constant memory.  See
+ * {@link AIFUtils#createStreamingModel(Path)}.
+ * <p>
+ * The graph is always empty when queried, so the few utilities that read a model, such as
+ * {@link AIFUtils#getTypeAssertions}, find nothing.  A triple added twice is streamed twice; readers of the stream
+ * drop the duplicate, as a model would have.  Triples cannot be deleted.  Prefixes set on the graph are passed to
+ * the stream as well.  Closing the graph finishes the stream.
+ */
+public final class SinkGraph extends GraphBase {
+    private final StreamRDF stream;
+    // Closed once the stream is finished, or null if the caller owns the output
+    private final Closeable output;
+    private long streamed = 0;
+
+    /**
+     * Create a graph that passes added triples to <code>stream</code>, which is started now and finished when the
+     * graph is closed.
+     */
+    public SinkGraph(StreamRDF stream) {
+        this(stream, null);
+    }
+
+    private SinkGraph(StreamRDF stream, Closeable output) {
+        this.stream = stream;
+        this.output = output;
+        stream.start();
+    }
+
+    /**
+     * Create a graph that writes added triples to <code>out</code> in <code>format</code>, which must be a streaming
+     * format such as {@link RDFFormat#NTRIPLES} or {@link RDFFormat#RDF_THRIFT}.  Closing the graph flushes
+     * <code>out</code> but does not close it.
+     */
+    public static SinkGraph create(OutputStream out, RDFFormat format) {
+        return new SinkGraph(StreamRDFWriter.getWriterStream(out, format));
+    }
+
+    /**
+     * Create a graph that writes added triples to the KB at <code>path</code>, in the format and compression that
+     * its name indicates (see {@link KBFiles}).  Turtle KBs are written as N-Triples, which is valid Turtle, because
+     * Jena's streaming Turtle writers remember every blank node they have labeled.  Closing the graph closes the file.
+     */
+    public static SinkGraph create(Path path) throws IOException {
+        final RDFFormat format = Lang.RDFTHRIFT.equals(KBFiles.getLang(path.toString())) ?
+                RDFFormat.RDF_THRIFT : RDFFormat.NTRIPLES;
+        final OutputStream out = Compression.newOutputStream(path);
+        try {
+            return new SinkGraph(StreamRDFWriter.getWriterStream(out, format), out);
+        } catch (RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of triples passed to the stream so far
+     */
+    public long getStreamedCount() {
+        return streamed;
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        stream.triple(t);
+        streamed++;
+    }
+
+    @Override
+    public void performDelete(Triple t) {
+        throw new DeleteDeniedException("Triples already streamed cannot be deleted", t);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+        return NullIterator.instance();
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return 0;
+    }
+
+    @Override
+    protected PrefixMapping createPrefixMapping() {
+        return new PrefixMappingImpl() {
+            @Override
+            public PrefixMapping setNsPrefix(String prefix, String uri) {
+                super.setNsPrefix(prefix, uri);
+                stream.prefix(prefix, uri);
+                return this;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (!isClosed()) {
+            super.close();
+            stream.finish();
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to close streamed KB", e);
+                }
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.topbraid.shacl.vocabulary.TOSH;
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -59,6 +60,11 @@ public class ThreadedValidationEngine extends ValidationEngine {
         return model.createResource(SH.ValidationReport);
     });
     private ThreadLocal<Integer> threadViolations = ThreadLocal.withInitial(() -> 0);
+    // Shapes and constraints resolved by any thread, so that only the first lookup needs to lock
+    private final Map<Node, Shape> resolvedShapes = new ConcurrentHashMap<>();
+    private final Map<Shape, Iterable<Constraint>> resolvedConstraints = new ConcurrentHashMap<>();
+    private MemoryGovernor memoryGovernor = null;
+    private DomainOntologyIndex domainIndex = null;
     private Predicate<RDFNode> focusNodeFilter;
     private int maxDepth = 0;
     private boolean isStopped = false;
@@ -176,6 +182,33 @@ public class ThreadedValidationEngine extends ValidationEngine {
             maxDepth = value;
     }
 
+    /**
+     * Throttle constraint tasks using the specified governor, so that fewer run at once when memory runs low.
+     *
+     * @param governor {@link MemoryGovernor} to admit tasks, or null to run tasks as fast as the executor allows
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        memoryGovernor = governor;
+    }
+
+    /**
+     * Answer <code>sh:class</code> constraints from the specified index of the class hierarchy rather than by
+     * querying the data graph.  Only use an index built from the domain ontology being validated against, and only
+     * if the KB does not extend the ontology's class hierarchy.
+     *
+     * @param index {@link DomainOntologyIndex} of the domain ontology, or null to query the data graph
+     */
+    public void setDomainIndex(DomainOntologyIndex index) {
+        domainIndex = index;
+    }
+
+    /**
+     * @return the domain ontology index in use, or null if the data graph is queried instead
+     */
+    public DomainOntologyIndex getDomainIndex() {
+        return domainIndex;
+    }
+
     @Override
     public void setFocusNodeFilter(Predicate<RDFNode> value) {
         super.setFocusNodeFilter(value);
@@ -271,21 +304,13 @@ public class ThreadedValidationEngine extends ValidationEngine {
     @Override
     public Resource validateNodesAgainstShape(List<RDFNode> focusNodes, Node shape) {
         if(!shapesGraph.isIgnored(shape)) {
-            Shape vs;
-            synchronized (shapesGraph) {
-                vs = shapesGraph.getShape(shape);
-            }
+            Shape vs = resolveShape(shape);
             if(!vs.getShapeResource().isDeactivated()) {
                 boolean nested = SHACLScriptEngineManager.begin();
                 ValidationEngine oldEngine = getCurrent();
                 setCurrent(this);
                 try {
-                    // Make getting constraints thread-safe
-                    Iterable<Constraint> constraints;
-                    synchronized (vs) {
-                        constraints = vs.getConstraints();
-                    }
-                    for(Constraint constraint : constraints) {
+                    for(Constraint constraint : resolveConstraints(vs)) {
                         validateNodesAgainstConstraint(focusNodes, constraint);
                     }
                 }
@@ -298,6 +323,30 @@ public class ThreadedValidationEngine extends ValidationEngine {
         return getReport();
     }
 
+    // Make getting shapes thread-safe. Locks only the first time a shape is requested.
+    private Shape resolveShape(Node shape) {
+        Shape vs = resolvedShapes.get(shape);
+        if (vs == null) {
+            synchronized (shapesGraph) {
+                vs = shapesGraph.getShape(shape);
+            }
+            resolvedShapes.put(shape, vs);
+        }
+        return vs;
+    }
+
+    // Make getting constraints thread-safe. Locks only the first time a shape's constraints are requested.
+    private Iterable<Constraint> resolveConstraints(Shape vs) {
+        Iterable<Constraint> constraints = resolvedConstraints.get(vs);
+        if (constraints == null) {
+            synchronized (vs) {
+                constraints = vs.getConstraints();
+            }
+            resolvedConstraints.put(vs, constraints);
+        }
+        return constraints;
+    }
+
     @Override
     public Resource getReport() {
         return threadReport.get();
@@ -330,7 +379,7 @@ public class ThreadedValidationEngine extends ValidationEngine {
                 }
 
                 if (!filtered.isEmpty()) {
-                    for (Constraint constraint : shape.getConstraints()) {
+                    for (Constraint constraint : resolveConstraints(shape)) {
                         smd.constraintFutures.add(executor.submit(getConstraintTask(filtered, constraint)));
                     }
                 }
@@ -344,7 +393,7 @@ public class ThreadedValidationEngine extends ValidationEngine {
         return () -> {
             long start = System.currentTimeMillis();
             threadViolations.set(0);
-            try {
+            try (MemoryGovernor.Permit permit = memoryGovernor == null ? MemoryGovernor.UNGOVERNED : memoryGovernor.admit()) {
                 if (!isStopped) {
                     logger.debug("Validating {} node(s) against {}, r={}", focusNodes.size(), constraint.toString(),
                             constraint.getParameterValue() != null && constraint.getParameterValue().isResource() ?
@@ -0,0 +1,51 @@
+package com.ncc.aif;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A node generation strategy whose IDs sort in the order in which they were made, so that resources written in IRI
+ * order are grouped by when they were made and indexes over them grow at one end.  Each ID is
+ * <code>TIME-THREAD-SEQUENCE</code> in fixed-width hexadecimal: the milliseconds since the epoch, a random tag
+ * chosen once by each thread, and a count of the IDs made by that thread.  A thread's clock never goes backward, even
+ * if the system's does, so the IDs of each thread strictly increase; those of different threads are ordered by
+ * millisecond.  All state is local to each thread, so threads do not contend.
+ */
+public final class TimeOrderedIriGenerator implements IriGenerator {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // The width of each part of an ID, in hexadecimal digits
+    private static final int TIME_WIDTH = 12;
+    private static final int TAG_WIDTH = 8;
+    private static final int SEQUENCE_WIDTH = 12;
+
+    private static final class State {
+        private final long tag = ThreadLocalRandom.current().nextInt() & 0xFFFFFFFFL;
+        private long lastMillis = 0;
+        private long sequence = 0;
+    }
+
+    private final String prefix;
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    TimeOrderedIriGenerator(String baseUri) {
+        this.prefix = UuidIriGenerator.checkBaseUri(baseUri) + '/';
+    }
+
+    // Inherit Javadoc from interface
+    @Override
+    public String nextIri() {
+        final State s = state.get();
+        s.lastMillis = Math.max(s.lastMillis, System.currentTimeMillis());
+        final StringBuilder iri = new StringBuilder(prefix.length() + TIME_WIDTH + TAG_WIDTH + SEQUENCE_WIDTH + 2)
+                .append(prefix);
+        appendHex(iri, s.lastMillis, TIME_WIDTH).append('-');
+        appendHex(iri, s.tag, TAG_WIDTH).append('-');
+        return appendHex(iri, s.sequence++, SEQUENCE_WIDTH).toString();
+    }
+
+    private static StringBuilder appendHex(StringBuilder builder, long value, int width) {
+        for (int shift = (width - 1) * 4; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,178 @@
+package com.ncc.aif;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * Dictionary-encoded triples sorted by subject, predicate, object, along with permutations sorting them by
+ * predicate, object, subject and by object, subject, predicate.  Subclasses decide where the columns are stored;
+ * this class answers triple pattern lookups against them with binary searches.  Implementations must be
+ * immutable so that they may be searched by any number of threads.
+ */
+abstract class TripleIndex {
+    static final int SPO = 0;
+    static final int POS = 1;
+    static final int OSP = 2;
+
+    /**
+     * Maps terms to and from the IDs used in an index.
+     */
+    interface Dictionary {
+        /**
+         * @return the ID of <code>node</code>, or -1 if it is not in the dictionary
+         */
+        int lookup(Node node);
+
+        /**
+         * @return the term with the specified ID
+         */
+        Node decode(int id);
+    }
+
+    abstract int size();
+
+    abstract int subject(int position);
+
+    abstract int predicate(int position);
+
+    abstract int object(int position);
+
+    // Position in the SPO columns of the i-th triple in POS order
+    abstract int posOrder(int i);
+
+    // Position in the SPO columns of the i-th triple in OSP order
+    abstract int ospOrder(int i);
+
+    // Position in the SPO columns of the i-th triple in the specified order
+    int position(int order, int i) {
+        switch (order) {
+            case POS:
+                return posOrder(i);
+            case OSP:
+                return ospOrder(i);
+            default:
+                return i;
+        }
+    }
+
+    // Key k (0-2) of the triple at the specified position, in the specified order
+    int key(int order, int position, int k) {
+        switch ((order + k) % 3) {
+            case SPO:
+                return subject(position);
+            case POS:
+                return predicate(position);
+            default:
+                return object(position);
+        }
+    }
+
+    int compare(int order, int a, int b) {
+        for (int k = 0; k < 3; k++) {
+            int cmp = Integer.compare(key(order, a, k), key(order, b, k));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    // Compare the i-th triple in the specified order to the leading bound keys; -1 ends the key
+    private int compareToKey(int order, int i, int[] key) {
+        int position = position(order, i);
+        for (int k = 0; k < key.length && key[k] >= 0; k++) {
+            int cmp = Integer.compare(key(order, position, k), key[k]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    // Return [from, to) of triples in the specified order matching the leading bound keys
+    int[] range(int order, int... key) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) { // first triple >= key
+            int mid = (lo + hi) >>> 1;
+            if (compareToKey(order, mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int from = lo;
+        hi = size();
+        while (lo < hi) { // first triple > key
+            int mid = (lo + hi) >>> 1;
+            if (compareToKey(order, mid, key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return new int[]{from, lo};
+    }
+
+    // Position of the specified triple, or -1 if not present
+    int find(int s, int p, int o) {
+        int[] range = range(SPO, s, p, o);
+        return range[0] < range[1] ? range[0] : -1;
+    }
+
+    /**
+     * Return all triples matching the specified pattern, choosing whichever ordering lets the bound terms be
+     * found with a single range search.
+     */
+    ExtendedIterator<Triple> find(Triple pattern, Dictionary dictionary) {
+        final Node sNode = pattern.getMatchSubject();
+        final Node pNode = pattern.getMatchPredicate();
+        final Node oNode = pattern.getMatchObject();
+        final int s = sNode == null ? -1 : dictionary.lookup(sNode);
+        final int p = pNode == null ? -1 : dictionary.lookup(pNode);
+        final int o = oNode == null ? -1 : dictionary.lookup(oNode);
+        if ((sNode != null && s < 0) || (pNode != null && p < 0) || (oNode != null && o < 0)) {
+            return NullIterator.instance();
+        }
+
+        if (sNode != null) {
+            if (oNode != null && pNode == null) {
+                return iterate(OSP, range(OSP, o, s), dictionary, sNode, null, oNode);
+            }
+            return iterate(SPO, range(SPO, s, p, o), dictionary, sNode, pNode, oNode);
+        } else if (pNode != null) {
+            return iterate(POS, range(POS, p, o), dictionary, null, pNode, oNode);
+        } else if (oNode != null) {
+            return iterate(OSP, range(OSP, o), dictionary, null, null, oNode);
+        }
+        return iterate(SPO, new int[]{0, size()}, dictionary, null, null, null);
+    }
+
+    private ExtendedIterator<Triple> iterate(int order, int[] range, Dictionary dictionary, Node s, Node p, Node o) {
+        if (range[0] >= range[1]) {
+            return NullIterator.instance();
+        }
+        return new NiceIterator<Triple>() {
+            private int next = range[0];
+
+            @Override
+            public boolean hasNext() {
+                return next < range[1];
+            }
+
+            @Override
+            public Triple next() {
+                ensureHasNext();
+                int position = position(order, next++);
+                // bound positions are already known; only decode the others
+                return Triple.create(
+                        s != null ? s : dictionary.decode(subject(position)),
+                        p != null ? p : dictionary.decode(predicate(position)),
+                        o != null ? o : dictionary.decode(object(position)));
+            }
+        };
+    }
+}
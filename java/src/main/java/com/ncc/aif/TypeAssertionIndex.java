@@ -0,0 +1,175 @@
+package com.ncc.aif;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * An index from each subject of a reified statement to the statements about it, kept up to date by listening to the
+ * graph of a model for which indexing has been enabled with {@link AIFUtils#enableTypeAssertionIndex(Model)}.  Only the
+ * <code>rdf:subject</code> triples are indexed; whether each statement is a type assertion is checked against the
+ * graph when it is looked up, so the index stays correct whatever order triples are added and removed in.
+ * <p>
+ * The index does not refer to its graph, so that an indexed graph that is no longer used can be collected.
+ */
+final class TypeAssertionIndex implements GraphListener {
+    private static final Node SUBJECT = RDF.subject.asNode();
+
+    // Indexes of the graphs of models that have enabled indexing
+    private static final GraphRegistry<TypeAssertionIndex> INDEXES = new GraphRegistry<>();
+
+    private final Map<Node, Set<Node>> statementsBySubject = new HashMap<>();
+
+    private TypeAssertionIndex() {
+    }
+
+    static void enable(Model model) {
+        INDEXES.computeIfAbsent(model.getGraph(), graph -> {
+            final TypeAssertionIndex index = new TypeAssertionIndex();
+            index.rebuild(graph);
+            graph.getEventManager().register(index);
+            return index;
+        });
+    }
+
+    static void disable(Model model) {
+        final Graph graph = model.getGraph();
+        final TypeAssertionIndex index = INDEXES.remove(graph);
+        if (index != null) {
+            graph.getEventManager().unregister(index);
+        }
+    }
+
+    /**
+     * @return the index of <code>model</code>, or null if it is not indexed
+     */
+    static TypeAssertionIndex get(Model model) {
+        return INDEXES.get(model.getGraph());
+    }
+
+    /**
+     * @return the type assertions in <code>graph</code>, which must be the indexed graph, about <code>subject</code>
+     */
+    synchronized ImmutableSet<Node> getTypeAssertions(Graph graph, Node subject) {
+        final Set<Node> statements = statementsBySubject.get(subject);
+        if (statements == null) {
+            return ImmutableSet.of();
+        }
+        final ImmutableSet.Builder<Node> typeAssertions = ImmutableSet.builderWithExpectedSize(statements.size());
+        for (Node statement : statements) {
+            if (isTypeAssertion(graph, statement)) {
+                typeAssertions.add(statement);
+            }
+        }
+        return typeAssertions.build();
+    }
+
+    private static boolean isTypeAssertion(Graph graph, Node statement) {
+        return graph.contains(statement, RDF.Nodes.predicate, RDF.Nodes.type)
+                && graph.contains(statement, RDF.Nodes.type, RDF.Nodes.Statement);
+    }
+
+    private synchronized void rebuild(Graph graph) {
+        statementsBySubject.clear();
+        final ExtendedIterator<Triple> subjects = graph.find(Node.ANY, SUBJECT, Node.ANY);
+        try {
+            while (subjects.hasNext()) {
+                add(subjects.next());
+            }
+        } finally {
+            subjects.close();
+        }
+    }
+
+    private synchronized void add(Triple triple) {
+        if (SUBJECT.equals(triple.getPredicate())) {
+            statementsBySubject.computeIfAbsent(triple.getObject(), k -> new HashSet<>(2)).add(triple.getSubject());
+        }
+    }
+
+    private synchronized void delete(Triple triple) {
+        if (SUBJECT.equals(triple.getPredicate())) {
+            final Set<Node> statements = statementsBySubject.get(triple.getObject());
+            if (statements != null && statements.remove(triple.getSubject()) && statements.isEmpty()) {
+                statementsBySubject.remove(triple.getObject());
+            }
+        }
+    }
+
+    @Override
+    public void notifyAddTriple(Graph g, Triple t) {
+        add(t);
+    }
+
+    @Override
+    public void notifyAddArray(Graph g, Triple[] triples) {
+        notifyAddList(g, Arrays.asList(triples));
+    }
+
+    @Override
+    public void notifyAddList(Graph g, List<Triple> triples) {
+        triples.forEach(this::add);
+    }
+
+    @Override
+    public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+        it.forEachRemaining(this::add);
+    }
+
+    @Override
+    public void notifyAddGraph(Graph g, Graph added) {
+        notifyAddIterator(g, added.find(Node.ANY, SUBJECT, Node.ANY));
+    }
+
+    @Override
+    public void notifyDeleteTriple(Graph g, Triple t) {
+        delete(t);
+    }
+
+    @Override
+    public void notifyDeleteList(Graph g, List<Triple> triples) {
+        triples.forEach(this::delete);
+    }
+
+    @Override
+    public void notifyDeleteArray(Graph g, Triple[] triples) {
+        notifyDeleteList(g, Arrays.asList(triples));
+    }
+
+    @Override
+    public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+        it.forEachRemaining(this::delete);
+    }
+
+    @Override
+    public void notifyDeleteGraph(Graph g, Graph removed) {
+        notifyDeleteIterator(g, removed.find(Node.ANY, SUBJECT, Node.ANY));
+    }
+
+    // Removing all triples, or those matching a pattern, does not say which were removed, so index what remains
+    @Override
+    public void notifyEvent(Graph source, Object value) {
+        if (GraphEvents.removeAll.equals(value)) {
+            synchronized (this) {
+                statementsBySubject.clear();
+            }
+        } else if (value instanceof GraphEvents && "remove".equals(((GraphEvents) value).getTitle())) {
+            rebuild(source);
+        }
+    }
+}
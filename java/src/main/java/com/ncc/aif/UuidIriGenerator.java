@@ -0,0 +1,53 @@
+package com.ncc.aif;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A node generation strategy which uses UUIDs appended to a base URI.  Unlike {@link UUID#randomUUID()}, which
+ * draws from a single synchronized secure random number generator, the UUIDs are drawn from
+ * {@link ThreadLocalRandom}, so they are cheap to make and threads do not contend.  They are unique, but not
+ * unpredictable.
+ */
+public final class UuidIriGenerator implements IriGenerator {
+    private final String prefix;
+
+    /**
+     * Create a dummy UuidIriGenerator.
+     */
+    UuidIriGenerator() {
+        prefix = "dummy:uri/";
+    }
+
+    /**
+     * Create a UuidIriGenerator from a base URI.
+     *
+     * @param baseUri A valid base URI
+     */
+    UuidIriGenerator(String baseUri) {
+        this.prefix = checkBaseUri(baseUri) + '/';
+    }
+
+    static String checkBaseUri(String baseUri) {
+        if (baseUri == null || baseUri.isEmpty()) {
+            throw new IllegalArgumentException("Base URI cannot be empty");
+        }
+        if (!baseUri.substring(1).contains(":")) {
+            throw new IllegalArgumentException("Base URI must contain a prefix followed by a colon separator");
+        }
+        if (baseUri.endsWith("/")) {
+            throw new IllegalArgumentException("Base URI cannot end in /");
+        }
+        return baseUri;
+    }
+
+    // Inherit Javadoc from interface
+    @Override
+    public String nextIri() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Set the version (4, random) and variant (IETF) bits as UUID.randomUUID does
+        final long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        final long leastSigBits = (random.nextLong() & ~(0xCL << 60)) | (0x8L << 60);
+        return prefix + new UUID(mostSigBits, leastSigBits);
+    }
+}
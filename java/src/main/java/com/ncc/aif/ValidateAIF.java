@@ -1,6 +1,7 @@
 package com.ncc.aif;
 
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -24,14 +25,18 @@ import javax.annotation.Nonnull;
 import com.google.common.base.Charsets;
 import com.google.common.io.CharSource;
 import com.google.common.io.Resources;
+import com.ncc.aif.util.KBFiles;
 
+import org.apache.jena.graph.Node;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.util.FileUtils;
+import org.apache.jena.vocabulary.RDFS;
 import org.topbraid.jenax.progress.ProgressMonitor;
 import org.topbraid.shacl.validation.ValidationEngine;
 import org.topbraid.shacl.validation.ValidationEngineConfiguration;
@@ -73,6 +78,12 @@ public final class ValidateAIF {
     private static Model nistClaimModel;
     private static boolean initialized = false;
     private static final Property CONFORMS = ResourceFactory.createProperty("http://www.w3.org/ns/shacl#conforms");
+    // Prefixes set on every model validated, built once rather than per KB
+    private static final PrefixMapping VALIDATION_PREFIXES = PrefixMapping.Factory.create()
+            .setNsPrefix("sh", "http://www.w3.org/ns/shacl#")
+            .setNsPrefix("aida", InterchangeOntology.NAMESPACE)
+            .setNsPrefix("aidaDomainCommon", AidaDomainOntologiesCommon.NAMESPACE)
+            .lock();
 
     private static void initializeSHACLModels() {
         if (!initialized) {
@@ -95,11 +106,14 @@ public final class ValidateAIF {
     }
 
     private final Model domainModel;
+    private DomainOntologyIndex domainIndex = null; // built when first needed
     private final Model restrictionModel;
     private int abortThreshold = -1; // by default, do not abort on SHACL violation
     private boolean debugging = false;
     private int depth = 0; // by default, do not perform shallow validation
     private ProgressMonitor progressMonitor = null; // by default, do not monitor progress
+    private boolean frozenSnapshot = false; // by default, validate against a live union of KB and domain
+    private MemoryGovernor memoryGovernor = null; // by default, do not throttle validation
     private ThreadPoolExecutor executor;
     private List<Future<ThreadedValidationEngine.ShapeTaskMetadata>> validationMetadata;
     private long lastDuration;
@@ -145,6 +159,15 @@ public final class ValidateAIF {
         }
     }
 
+    // As above, for KBs in any format and compression that KBFiles reads, such as binary RDF Thrift
+    static void loadModel(Model model, Path path) {
+        try {
+            KBFiles.read(model, path);
+        } catch (Exception exception) { // includes IOException & JenaException
+            throw new RuntimeException("While parsing " + path, exception);
+        }
+    }
+
     /**
      * Create an AIF validator for the specified domain ontology source.
      *
@@ -247,6 +270,29 @@ public final class ValidateAIF {
         return new ValidateAIF(getModelFromSources(all), restrictionModel);
     }
 
+    /**
+     * Returns an index of this validator's domain ontology, built the first time it is needed.  Only threaded
+     * validation uses it, so validators which never validate with threads never build it.
+     *
+     * @return the domain ontology index
+     */
+    public synchronized DomainOntologyIndex getDomainIndex() {
+        if (domainIndex == null) {
+            domainIndex = DomainOntologyIndex.build(domainModel);
+        }
+        return domainIndex;
+    }
+
+    /**
+     * Create an empty model for a KB to be validated that is backed by a {@link CompactGraph}.  Such models use
+     * considerably less memory than the default in-memory model, at some cost in validation speed.
+     *
+     * @return a new, empty compact model
+     */
+    public static Model createCompactModel() {
+        return CompactGraph.createModel();
+    }
+
     /**
      * Uses the provided <code>monitor</code> during validation. If null, no progress monitor will be used.
      */
@@ -292,6 +338,31 @@ public final class ValidateAIF {
         this.depth = depth;
     }
 
+    /**
+     * Tells the validator to validate against a frozen snapshot of the KB and domain ontology.  The snapshot is
+     * built once per KB, merging both into a single immutable, indexed {@link FrozenGraph} that validation threads
+     * can read without locking or filtering duplicates.  This speeds up multi-threaded validation at the cost of
+     * holding an additional index of the KB in memory.  Only applies when no union model is provided, and is
+     * ignored for KBs loaded into a {@link CompactGraph} or {@link MappedGraph}, which may already be read
+     * concurrently and would lose their memory savings if copied.
+     *
+     * @param frozenSnapshot whether or not to validate against a frozen snapshot
+     */
+    public void setFrozenSnapshot(boolean frozenSnapshot) {
+        this.frozenSnapshot = frozenSnapshot;
+    }
+
+    /**
+     * Tells the validator to throttle multi-threaded validation when memory runs low.  While the governor reports
+     * memory pressure, constraints are validated one at a time rather than on every thread.  Has no effect on
+     * single-threaded validation.  See {@link #setThreadCount}.
+     *
+     * @param memoryGovernor governor to consult, or null to disable throttling
+     */
+    public void setMemoryGovernor(MemoryGovernor memoryGovernor) {
+        this.memoryGovernor = memoryGovernor;
+    }
+
     /**
      * Tells the validator to use the specified number of threads during validation.
      * Currently, {@link ThreadedValidationEngine} does not support a {@link ProgressMonitor}. Setting this to
@@ -447,10 +518,17 @@ public final class ValidateAIF {
         // We unify the given KB with the background and domain KBs before validation.
         // This is required so that constraints like "the object of a type must be an
         // entity type" will know what types are in fact entity types.
-        final Model unionModel = (union == null) ? ModelFactory.createUnion(dataToBeValidated, domainModel) : union;
-        unionModel.setNsPrefix("sh", "http://www.w3.org/ns/shacl#");
-        unionModel.setNsPrefix("aida", InterchangeOntology.NAMESPACE);
-        unionModel.setNsPrefix("aidaDomainCommon", AidaDomainOntologiesCommon.CanHaveName.getNameSpace());
+        final Model unionModel;
+        if (union != null) {
+            unionModel = union;
+        } else if (frozenSnapshot && !(dataToBeValidated.getGraph() instanceof CompactGraph
+                || dataToBeValidated.getGraph() instanceof MappedGraph)) {
+            unionModel = ModelFactory.createModelForGraph(
+                    FrozenGraph.union(dataToBeValidated.getGraph(), domainModel.getGraph()));
+        } else {
+            unionModel = ModelFactory.createUnion(dataToBeValidated, domainModel);
+        }
+        unionModel.setNsPrefixes(VALIDATION_PREFIXES);
 
         // Validates against the SHACL file to ensure that resources have the required properties
         // (and in some cases, only the required properties) of the proper types.
@@ -464,6 +542,11 @@ public final class ValidateAIF {
             ThreadedValidationEngine engine = ThreadedValidationEngine.createValidationEngine(unionModel, restrictionModel, config);
             engine.setProgressMonitor(progressMonitor);
             engine.setMaxDepth(depth);
+            engine.setMemoryGovernor(memoryGovernor);
+            // The index only knows the domain ontology's class hierarchy, so can't be used if the KB extends it
+            if (union == null && !dataToBeValidated.getGraph().contains(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY)) {
+                engine.setDomainIndex(getDomainIndex());
+            }
             try {
                 engine.applyEntailments();
                 reports.addAll(engine.validateAll(executor));
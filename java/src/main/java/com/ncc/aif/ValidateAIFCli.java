@@ -3,6 +3,8 @@ package com.ncc.aif;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,8 +29,11 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharSource;
 import com.google.common.io.Resources;
+import com.ncc.aif.util.Compression;
+import com.ncc.aif.util.KBFiles;
 
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
@@ -59,7 +64,8 @@ import picocli.CommandLine.Spec;
         synopsisHeading = "%nUsage: ",
         descriptionHeading = "%nDescription:%n  ",
         optionListHeading = "%nOptions:%n",
-        description = "Validate AIDA Interchange Format (AIF) Turtle files with extension .ttl",
+        description = "Validate AIDA Interchange Format (AIF) Turtle files with extension .ttl, or RDF Thrift files with"
+                + " extension .rt or .trdf, optionally compressed (.gz or .zst)",
         versionProvider = ValidateAIFCli.PropertyVersionProvider.class)
 public class ValidateAIFCli implements Callable<Integer> {
 
@@ -79,6 +85,7 @@ public class ValidateAIFCli implements Callable<Integer> {
     static final String ERR_SMALLER_THAN_MIN = "%s must be at least %d";
     static final String ERR_BAD_ARGTYPE = "%s is not a(n) %s";
     static final String ERR_DEPTH_REQUIRES_T = "--depth requires -t with at least 2 threads";
+    static final String ERR_TOO_MANY_MODEL_FLAGS = "Can only use one of these flags: --compact | --mapped | --auto-storage";
     // Logging strings
     static final String START_MSG = "AIF Validator";
     // Version
@@ -109,6 +116,7 @@ public class ValidateAIFCli implements Callable<Integer> {
     private static final int MINIMUM_THREAD_COUNT = 1;
     // Disk-based model
     private static final String DATA_MODEL_PATH = System.getProperty("java.io.tmpdir") + "/diskbased-models/dataModels";
+    private static final String MAPPED_MODEL_PATH = System.getProperty("java.io.tmpdir") + "/diskbased-models/mappedModels";
 
     //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
     // Command Line Arguments
@@ -197,6 +205,22 @@ public class ValidateAIFCli implements Callable<Integer> {
     @Option(names = "--mem", description = "Use memory model for validating files")
     private boolean useMemModel = true;
 
+    @Option(names = "--compact", description = "Use a compact, dictionary-encoded memory model for validating files."
+            + " Uses several times less memory than --mem, at some cost in speed.")
+    private boolean useCompactModel;
+
+    @Option(names = "--mapped", description = "Use an off-heap, memory-mapped index for validating very large files."
+            + " Indexes are kept and reused when the same, unchanged file is validated again.")
+    private boolean useMappedModel;
+
+    @Option(names = "--auto-storage", description = "Choose in-memory, compact, or memory-mapped storage for each file"
+            + " from its size and the available memory, and validate fewer constraints at once when memory runs low.")
+    private boolean useAutoStorage;
+
+    @Option(names = "--frozen", description = "Validate against a frozen, immutable snapshot of each KB and the"
+            + " domain ontology. Speeds up multi-threaded validation (-t), but uses more memory.")
+    private boolean useFrozenSnapshot;
+
     @Option(names = "--debug", description = "Enable debugging", hidden = true)
     private boolean debugOutput;
 
@@ -209,15 +233,21 @@ public class ValidateAIFCli implements Callable<Integer> {
     @Option(names = "-o", description = "Save validation report model to a file. KB.ttl results will be saved to KB-report*.txt, up to 1 report per thread")
     private boolean outputToFile;
 
+    @Option(names = "--compress-reports", description = "Compress reports saved with -o using gzip or zstd,"
+            + " adding a .gz or .zst suffix", paramLabel = "FORMAT")
+    private Compression reportCompression = Compression.NONE;
+
     @Option(names = "-t", description = "Specify the number of threads to use during validation. If the --pm option" +
             " is specified, thread metrics are provided post-validation instead.", paramLabel = "num")
     private int threads = MINIMUM_THREAD_COUNT;
 
     //TODO: When picocli 4.0 is stable, make this an ArgGroup to enforce mutual exclusivity
-    @Option(names = "-d", description = "Validate all .ttl files in the specified directory", paramLabel = "DIRNAME")
+    @Option(names = "-d", description = "Validate all .ttl, .rt, and .trdf (optionally .gz or .zst) files in the specified directory",
+            paramLabel = "DIRNAME")
     private File directory;
 
-    @Option(names = "-f", description = "Validate the specified file(s) with a .ttl suffix", paramLabel = "FILE",
+    @Option(names = "-f", description = "Validate the specified file(s) with a .ttl, .rt, or .trdf (optionally .gz or .zst) suffix",
+            paramLabel = "FILE",
             arity = "1..*")
     private List<File> files;
 
@@ -237,6 +267,7 @@ public class ValidateAIFCli implements Callable<Integer> {
     public static int execute(String[] args) {
         CommandLine cmd = new CommandLine(new ValidateAIFCli());
         cmd.setUsageHelpWidth(76);
+        cmd.setCaseInsensitiveEnumValuesAllowed(true);
         CommandLine.Help.Ansi ansi = CommandLine.Help.Ansi.AUTO;
         List<Object> results = cmd.parseWithHandlers(
                 new CommandLine.RunLast().useOut(System.out).useAnsi(ansi),
@@ -253,6 +284,11 @@ public class ValidateAIFCli implements Callable<Integer> {
         // Enforce mutual exclusion for file arguments
         checkFileMutex();
 
+        // Enforce mutual exclusion for model storage
+        if ((useCompactModel ? 1 : 0) + (useMappedModel ? 1 : 0) + (useAutoStorage ? 1 : 0) > 1) {
+            throw new CommandLine.ParameterException(spec.commandLine(), ERR_TOO_MANY_MODEL_FLAGS);
+        }
+
         // Enforce minimum checks
         boolean abortSet = maxValidationErrors != Integer.MIN_VALUE;
         if (abortSet) {
@@ -289,10 +325,10 @@ public class ValidateAIFCli implements Callable<Integer> {
         int nonTTLcount = 0;
         if (hasFiles) {
             for (File file : files) {
-                if (file.getName().endsWith(".ttl")) {
+                if (KBFiles.isKB(file.getName())) {
                     filesToValidate.add(file);
                 } else {
-                    logger.warn("Skipping file without .ttl suffix: " + file);
+                    logger.warn("Skipping file without .ttl, .rt, or .trdf suffix: " + file);
                     nonTTLcount++;
                 }
             }
@@ -306,7 +342,7 @@ public class ValidateAIFCli implements Callable<Integer> {
                 try {
                     Stream<Path> walk = Files.walk(Paths.get(dir.getPath()));
                     paths = walk.filter(Files::isRegularFile)   // is a file
-                                    .filter(p -> p.getFileName().toString().endsWith(".ttl"))
+                                    .filter(p -> KBFiles.isKB(p.getFileName().toString()))
                                     .collect(Collectors.toList());                   
 
                 } catch (IOException e) {
@@ -325,7 +361,7 @@ public class ValidateAIFCli implements Callable<Integer> {
         }
 
         if (filesToValidate.isEmpty()) {
-            logger.error("No files with .ttl suffix were specified.  Use -h option for help.");
+            logger.error("No files with .ttl, .rt, or .trdf suffix were specified.  Use -h option for help.");
             return ReturnCode.FILE_ERROR.ordinal();
         }
 
@@ -365,7 +401,7 @@ public class ValidateAIFCli implements Callable<Integer> {
                     (filesToValidate.size() <= 5 ? filesToValidate : "from command-line arguments."));
         } else { // We'd have failed by now if there were no TTL files in the directory
             // This would need to be addressed if we supported validating files in N directories.
-            logger.info("-> Validating all KBs (*.ttl) in directory: " + directory.getName());
+            logger.info("-> Validating all KBs (*.ttl, *.rt, *.trdf) in directory: " + directory.getName());
         }
         logger.info("-> Validating with domain ontology(ies): " + ontologyStr);
         if (restriction == ValidateAIF.Restriction.NIST) {
@@ -392,8 +428,24 @@ public class ValidateAIFCli implements Callable<Integer> {
         if (!useMemModel) {
             logger.info("-> Using disk-based model for validation.");
         }
+        if (useCompactModel) {
+            logger.info("-> Using compact memory model for validation.");
+        }
+        if (useMappedModel) {
+            logger.info("-> Using memory-mapped model for validation; indexes are kept in " + MAPPED_MODEL_PATH + ".");
+        }
+        final MemoryGovernor governor = useAutoStorage ? new MemoryGovernor() : null;
+        if (useAutoStorage) {
+            logger.info("-> Choosing model storage for each file based on available memory.");
+            validator.setMemoryGovernor(governor);
+        }
+        if (useFrozenSnapshot) {
+            logger.info("-> Validating against a frozen snapshot of each KB.");
+            validator.setFrozenSnapshot(true);
+        }
         if (outputToFile) {
-            logger.info("-> Validation report for invalid KBs will be saved to <kbname>-report*.txt., up to 1 report per thread");
+            logger.info("-> Validation report for invalid KBs will be saved to <kbname>-report*.txt"
+                    + reportCompression.getSuffix() + ", up to 1 report per thread");
         } else {
             logger.info("-> Validation report for invalid KBs will be printed to stderr.");
         }
@@ -425,9 +477,11 @@ public class ValidateAIFCli implements Callable<Integer> {
                     " (" + ++fileNum + " of " + filesToValidate.size() + ").");
             Model dataToBeValidated;
             Dataset dataset = null;
-            if (!useMemModel) {
+            if (useMappedModel || useAutoStorage) {
+                dataToBeValidated = null; // opened or loaded from the file itself below
+            } else if (!useMemModel) {
                 try {
-                    dataModelDir = Paths.get(DATA_MODEL_PATH, fileToValidate.getName().replace(".ttl", ""));
+                    dataModelDir = Paths.get(DATA_MODEL_PATH, KBFiles.stripSuffixes(fileToValidate.getName()));
                     deleteDir(dataModelDir);  // Delete the directory if it exists
                     Files.createDirectories(dataModelDir);
                     dataset = TDBFactory.createDataset(dataModelDir.toString());
@@ -437,17 +491,27 @@ public class ValidateAIFCli implements Callable<Integer> {
                     logger.error("--> " + ioe.getLocalizedMessage());
                     return ReturnCode.FILE_ERROR.ordinal();
                 }
+            } else if (useCompactModel) {
+                dataToBeValidated = ValidateAIF.createCompactModel();
             } else {
                 dataToBeValidated = ModelFactory.createDefaultModel();
             }
-            boolean notSkipped = ((restriction != ValidateAIF.Restriction.NIST_TA3) || checkHypothesisSize(fileToValidate, hypothesisMaxSize))
-                    && loadFile(dataToBeValidated, fileToValidate);
+            boolean notSkipped = (restriction != ValidateAIF.Restriction.NIST_TA3) || checkHypothesisSize(fileToValidate, hypothesisMaxSize);
+            if (notSkipped && useMappedModel) {
+                dataToBeValidated = openMappedFile(fileToValidate);
+                notSkipped = dataToBeValidated != null;
+            } else if (notSkipped && useAutoStorage) {
+                dataToBeValidated = loadGoverned(governor, fileToValidate);
+                notSkipped = dataToBeValidated != null;
+            } else if (notSkipped) {
+                notSkipped = loadFile(dataToBeValidated, fileToValidate);
+            }
             if (notSkipped) {
                 if (profiling) {
                     stats.startCollection();
                 }
                 if (useProgressMonitor && !threadSet) {
-                    String filename = fileToValidate.getName().replace(".ttl", "") + "-progress.tab";
+                    String filename = KBFiles.stripSuffixes(fileToValidate.getName()) + "-progress.tab";
                     ProgressMonitor pm;
                     try {
                         pm = new AIFProgressMonitor(filename);
@@ -457,7 +521,13 @@ public class ValidateAIFCli implements Callable<Integer> {
                     }
                     validator.setProgressMonitor(pm);
                 }
-                final Set<Resource> reports = validator.validateKBAndReturnMultipleReports(dataToBeValidated, null);
+                Set<Resource> reports;
+                try {
+                    reports = validator.validateKBAndReturnMultipleReports(dataToBeValidated, null);
+                } catch (OutOfMemoryError oome) {
+                    logger.error("---> Ran out of memory validating " + fileToValidate + ".");
+                    reports = null;
+                }
                 if (profiling) {
                     stats.endCollection();
                     stats.dump(fileToValidate.toString());
@@ -467,7 +537,7 @@ public class ValidateAIFCli implements Callable<Integer> {
                     skipCount++;
                 } else if (!ValidateAIF.isValidSetOfReports(reports)) {
                     invalidCount++;
-                    final int numViolations = processReports(reports, fileToValidate, outputToFile);
+                    final int numViolations = processReports(reports, fileToValidate, outputToFile, reportCompression);
                     boolean hasAbort = reports.stream().anyMatch(report -> report.hasProperty(ThreadedValidationEngine.SH_ABORTED));
                     if (numViolations == maxValidationErrors || hasAbort) {
                         logger.warn("---> Validation of " + fileToValidate +
@@ -482,7 +552,7 @@ public class ValidateAIFCli implements Callable<Integer> {
 
                 // TODO: replace this when multi-threaded progress monitor exists
                 if (useProgressMonitor && threadSet) {
-                    String outputFilename = fileToValidate.toString().replace(".ttl", "-performance.txt");
+                    String outputFilename = KBFiles.stripSuffixes(fileToValidate.toString()) + "-performance.txt";
                     try (PrintStream ps = new PrintStream(Files.newOutputStream(Paths.get(outputFilename)))) {
                         validator.printMetrics(ps);
                     } catch (IOException e) {
@@ -492,7 +562,9 @@ public class ValidateAIFCli implements Callable<Integer> {
             } else
                 skipCount++;
 
-            dataToBeValidated.close();
+            if (dataToBeValidated != null) {
+                dataToBeValidated.close();
+            }
             if (!useMemModel) {
                 if (dataset != null) {
                     dataset.close();
@@ -561,16 +633,69 @@ public class ValidateAIFCli implements Callable<Integer> {
     // Load the model, or fail trying.  Returns true if it's loaded, otherwise false.
     private static boolean loadFile(Model dataToBeValidated, File fileToValidate) {
         try {
-            ValidateAIF.loadModel(dataToBeValidated, com.google.common.io.Files.asCharSource(fileToValidate, Charsets.UTF_8));
+            ValidateAIF.loadModel(dataToBeValidated, fileToValidate.toPath());
         } catch (RuntimeException rte) {
             logger.warn("---> Could not read " + fileToValidate + "; skipping.");
             return false;
+        } catch (OutOfMemoryError oome) {
+            logger.warn("---> Ran out of memory reading " + fileToValidate + "; skipping.");
+            return false;
         }
         return true;
     }
 
+    // Load the file into the fastest storage that fits in memory, falling back to smaller storage if it turns out
+    // not to fit.  Returns null if it can't be loaded.
+    private static Model loadGoverned(MemoryGovernor governor, File fileToValidate) {
+        MemoryGovernor.Storage storage;
+        try {
+            storage = governor.chooseStorage(fileToValidate.toPath());
+        } catch (IOException e) {
+            logger.warn("---> Could not read " + fileToValidate + "; skipping.");
+            return null;
+        }
+        while (storage != MemoryGovernor.Storage.MAPPED) {
+            logger.info("---> Loading " + fileToValidate + " using " + storage.name().toLowerCase() + " storage.");
+            Model model = storage == MemoryGovernor.Storage.COMPACT ?
+                    ValidateAIF.createCompactModel() : ModelFactory.createDefaultModel();
+            try {
+                governor.load(model, fileToValidate.toPath(), storage);
+                return model;
+            } catch (MemoryGovernor.BudgetExceededException | OutOfMemoryError e) {
+                model.close();
+                storage = storage.next();
+                logger.info("---> " + fileToValidate + " does not fit in memory; falling back to " +
+                        storage.name().toLowerCase() + " storage.");
+            } catch (IOException | RuntimeException e) {
+                model.close();
+                logger.warn("---> Could not read " + fileToValidate + "; skipping.");
+                return null;
+            }
+        }
+        return openMappedFile(fileToValidate);
+    }
+
+    // Open a memory-mapped model of the file, reusing its index if it is current.  Returns null if it can't be opened.
+    private static Model openMappedFile(File fileToValidate) {
+        final Path indexRoot = Paths.get(MAPPED_MODEL_PATH);
+        if (MappedGraph.hasCurrentIndex(fileToValidate.toPath(), indexRoot)) {
+            logger.info("---> Reusing existing index of " + fileToValidate + ".");
+        }
+        try {
+            return MappedGraph.openModel(fileToValidate.toPath(), indexRoot);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("---> Could not read " + fileToValidate + "; skipping.");
+            logger.warn("--> " + e.getLocalizedMessage());
+            return null;
+        } catch (OutOfMemoryError oome) {
+            logger.warn("---> Ran out of memory indexing " + fileToValidate + "; skipping.");
+            return null;
+        }
+    }
+
     // Dump the validation report model either to stderr or a file, and return the number of violations.
-    private static int processReports(Set<Resource> validationReports, File fileToValidate, boolean fileOutput) {
+    private static int processReports(Set<Resource> validationReports, File fileToValidate, boolean fileOutput,
+                                      Compression compression) {
         if (!fileOutput) {
             logger.info("---> Validation report(s):");
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -580,13 +705,12 @@ public class ValidateAIFCli implements Callable<Integer> {
             logger.info(baos.toString());
         } else {
             String suffix = validationReports.size() == 1 ? "-report.txt" : "-report-%d.txt";
-            String template = fileToValidate.toString().replace(".ttl", suffix);
+            String template = KBFiles.stripSuffixes(fileToValidate.toString()) + suffix + compression.getSuffix();
             int i = 1;
             for (Resource report : validationReports) {
                 String outputFilename = String.format(template, i++);
-                try {
-                    RDFDataMgr.write(Files.newOutputStream(Paths.get(outputFilename)),
-                            report.getModel(), RDFFormat.TURTLE_PRETTY);
+                try (OutputStream out = Compression.newOutputStream(Paths.get(outputFilename))) {
+                    RDFDataMgr.write(out, report.getModel(), RDFFormat.TURTLE_PRETTY);
                 } catch (IOException ioe) {
                     logger.warn("---> Could not write validation report for " + fileToValidate + ".");
                 }
@@ -601,13 +725,25 @@ public class ValidateAIFCli implements Callable<Integer> {
                 .reduce(0, Integer::sum);
     }
 
-    // Return false if file is > 5MB or size couldn't be determined, otherwise true
+    // Return false if file is > 5MB (uncompressed) or size couldn't be determined, otherwise true
     private static boolean checkHypothesisSize(File fileToValidate, int maxHypothesisSize) {
         try {
             final Path path = Paths.get(fileToValidate.toURI());
-            final long fileSize = Files.size(path);
-            if (fileSize > (1024 * 1024 * maxHypothesisSize)) {
-                logger.warn("---> Hypothesis KB " + fileToValidate + " is more than " + maxHypothesisSize + "MB (" + fileSize + " bytes); skipping.");
+            final long maxSize = 1024L * 1024 * maxHypothesisSize;
+            final boolean compressed = Compression.forFileName(fileToValidate.getName()) != Compression.NONE;
+            final long fileSize;
+            if (!compressed) {
+                fileSize = Files.size(path);
+            } else {
+                // Decompress only as far as needed to tell that the KB is too big
+                try (InputStream in = Compression.newInputStream(path)) {
+                    fileSize = ByteStreams.exhaust(ByteStreams.limit(in, maxSize + 1));
+                }
+            }
+            if (fileSize > maxSize) {
+                // A compressed KB is only read as far as the limit, so its full size isn't known
+                final String detail = compressed ? "uncompressed" : "(" + fileSize + " bytes)";
+                logger.warn("---> Hypothesis KB " + fileToValidate + " is more than " + maxHypothesisSize + "MB " + detail + "; skipping.");
                 return false;
             } else {
                 return true;
@@ -694,7 +830,7 @@ public class ValidateAIFCli implements Callable<Integer> {
          * @param basename a file basename to determine the profiling output filename
          */
         void dump(String basename) {
-            final String outputFilename = basename.replace(".ttl", "-stats.txt");
+            final String outputFilename = KBFiles.stripSuffixes(basename) + "-stats.txt";
             try {
                 final PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(outputFilename)));
                 dumpStats(out);
@@ -812,7 +948,7 @@ public class ValidateAIFCli implements Callable<Integer> {
          */
         @Override
         void dump(String basename) {
-            final String outputFilename = basename.replace(".ttl", "-stats.txt");
+            final String outputFilename = KBFiles.stripSuffixes(basename) + "-stats.txt";
             try {
                 final List<ExecStatistics> stats = ExecStatisticsManager.get().getStatistics();
                 final PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(outputFilename)));
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2019 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import org.apache.jena.atlas.io.AWriter;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.lib.CharSpace;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.out.NodeFormatterNT;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a model as canonical N-Triples (or a dataset as canonical N-Quads) for comparing and de-duplicating KBs
+ * line by line. Output is the same for any two isomorphic models, regardless of how they were built or read:
+ * <ul>
+ * <li>Each blank node is labeled canonically by {@link BlankNodeLabeler}, from the quads it appears in rather than
+ * from the order in which it was written. Distinct blank nodes always get distinct labels, even where their content
+ * is the same.</li>
+ * <li>Lines are escaped to ASCII, sorted, and de-duplicated, so their order is the same as that of
+ * <code>LC_ALL=C sort -u</code>. Sorting spills to disk for KBs too large to sort in memory.</li>
+ * </ul>
+ * Files written separately, for example from shards of a KB, can be combined with {@link #merge(List, OutputStream)},
+ * like <code>sort -m -u</code>, and canonical files can be compared with a streaming line diff.
+ */
+public class AIFCanonicalWriter {
+    /**
+     * Default number of lines sorted in memory before a run is spilled to disk
+     */
+    public static final int DEFAULT_RUN_SIZE = 1 << 18;
+
+    private static final ExternalSorter.Codec<String> LINES = new ExternalSorter.Codec<String>() {
+        @Override
+        public void write(DataOutput out, String line) throws IOException {
+            ExternalSorter.writeString(out, line);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return ExternalSorter.readString(in);
+        }
+    };
+
+    private final int runSize;
+    private final Path tempDirectory;
+
+    /**
+     * CTOR spilling runs of the default size to the default temporary directory
+     */
+    public AIFCanonicalWriter() {
+        this(DEFAULT_RUN_SIZE, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * CTOR
+     *
+     * @param runSize       number of lines sorted in memory before a run is spilled to disk
+     * @param tempDirectory directory in which to spill runs
+     */
+    public AIFCanonicalWriter(int runSize, Path tempDirectory) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive.");
+        }
+        this.runSize = runSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Write <code>model</code> as canonical N-Triples
+     */
+    public void write(OutputStream out, Model model) {
+        BlankNodeLabeler labeler = new BlankNodeLabeler();
+        addQuads(labeler, model.getGraph(), null);
+        LineFormatter formatter = new LineFormatter(labeler.labels());
+        try (ExternalSorter<String> lines = sorter()) {
+            addLines(lines, formatter, model.getGraph(), null);
+            writeDistinct(lines.sorted(), out);
+        }
+    }
+
+    /**
+     * Write <code>dataset</code> as canonical N-Quads, with the triples of its default graph written without a
+     * graph name
+     */
+    public void write(OutputStream out, Dataset dataset) {
+        DatasetGraph datasetGraph = dataset.asDatasetGraph();
+        BlankNodeLabeler labeler = new BlankNodeLabeler();
+        addQuads(labeler, datasetGraph.getDefaultGraph(), null);
+        datasetGraph.listGraphNodes().forEachRemaining(graphName ->
+                addQuads(labeler, datasetGraph.getGraph(graphName), graphName));
+        LineFormatter formatter = new LineFormatter(labeler.labels());
+        try (ExternalSorter<String> lines = sorter()) {
+            addLines(lines, formatter, datasetGraph.getDefaultGraph(), null);
+            datasetGraph.listGraphNodes().forEachRemaining(graphName ->
+                    addLines(lines, formatter, datasetGraph.getGraph(graphName), graphName));
+            writeDistinct(lines.sorted(), out);
+        }
+    }
+
+    /**
+     * Merge canonical files into a single canonical file, dropping lines that appear in more than one
+     *
+     * @param shards canonical files, each written by this class (or by this method)
+     * @param out    stream to which to write the merged lines
+     * @throws IOException if any of the files cannot be read
+     */
+    public static void merge(List<Path> shards, OutputStream out) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>();
+        try {
+            List<Iterator<String>> sources = new ArrayList<>();
+            for (Path shard : shards) {
+                BufferedReader reader = Files.newBufferedReader(shard, StandardCharsets.UTF_8);
+                readers.add(reader);
+                sources.add(reader.lines().iterator());
+            }
+            writeDistinct(ExternalSorter.merge(sources, Comparator.naturalOrder()), out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private ExternalSorter<String> sorter() {
+        return new ExternalSorter<>(LINES, Comparator.naturalOrder(), runSize, tempDirectory);
+    }
+
+    private static void addQuads(BlankNodeLabeler labeler, Graph graph, Node graphName) {
+        ExtendedIterator<Triple> triples = graph.find();
+        try {
+            while (triples.hasNext()) {
+                Triple triple = triples.next();
+                labeler.add(triple.getSubject(), triple.getPredicate(), triple.getObject(), graphName);
+            }
+        } finally {
+            triples.close();
+        }
+    }
+
+    private void addLines(ExternalSorter<String> lines, LineFormatter formatter, Graph graph, Node graphName) {
+        String graphLabel = graphName == null ? null : formatter.format(graphName);
+        ExtendedIterator<Triple> triples = graph.find();
+        try {
+            while (triples.hasNext()) {
+                lines.add(formatter.format(triples.next(), graphLabel));
+            }
+        } finally {
+            triples.close();
+        }
+    }
+
+    // Write sorted lines, skipping repeats
+    private static void writeDistinct(Iterator<String> sorted, OutputStream out) {
+        try {
+            Writer writer = new Utf8ByteSink(out);
+            String previous = null;
+            while (sorted.hasNext()) {
+                String line = sorted.next();
+                if (!line.equals(previous)) {
+                    writer.write(line);
+                    writer.write('\n');
+                    previous = line;
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write canonical lines", e);
+        }
+    }
+
+    /**
+     * Formats triples as lines, labeling blank nodes canonically
+     */
+    private static final class LineFormatter extends NodeFormatterNT {
+        private final Map<Node, String> labels;
+        private final StringWriter line = new StringWriter();
+        private final AWriter lineWriter = IO.wrap(line);
+
+        private LineFormatter(Map<Node, String> labels) {
+            super(CharSpace.ASCII);
+            this.labels = labels;
+        }
+
+        @Override
+        public void formatBNode(AWriter w, Node n) {
+            w.print("_:c");
+            w.print(labels.get(n));
+        }
+
+        private String format(Node node) {
+            line.getBuffer().setLength(0);
+            format(lineWriter, node);
+            lineWriter.flush();
+            return line.toString();
+        }
+
+        private String format(Triple triple, String graphLabel) {
+            line.getBuffer().setLength(0);
+            format(lineWriter, triple.getSubject());
+            lineWriter.print(' ');
+            format(lineWriter, triple.getPredicate());
+            lineWriter.print(' ');
+            format(lineWriter, triple.getObject());
+            if (graphLabel != null) {
+                lineWriter.print(' ');
+                lineWriter.print(graphLabel);
+            }
+            lineWriter.print(" .");
+            lineWriter.flush();
+            return line.toString();
+        }
+    }
+}
@@ -21,9 +21,12 @@
 
  import javax.annotation.Nonnull;
  import java.util.ArrayList;
+ import java.util.Collections;
+ import java.util.LinkedHashMap;
  import java.util.List;
  import java.util.Map;
  import java.util.TreeMap;
+ import java.util.concurrent.ConcurrentHashMap;
 
  /**
   * Comparable representation of Jena Node
@@ -36,8 +39,15 @@
       * CTOR
       */
      public AIFComparableNode(@Nonnull Graph graph, @Nonnull Node node) {
+         this(new Cache(graph), node);
+     }
+
+     /**
+      * CTOR using (and adding to) the specified cache of comparable strings
+      */
+     public AIFComparableNode(@Nonnull Cache cache, @Nonnull Node node) {
          this.node = node;
-         rep = getComparableString(graph, node);
+         rep = cache.getComparableString(node);
      }
 
      @Override
@@ -49,15 +59,14 @@
       * Return string representation for specified node within specified graph
       */
      public static String getComparableString(@Nonnull Graph graph, @Nonnull Node node) {
-         return shouldUseComparable(graph, node) ? getComparableStringForBlankOrReified(graph, node) :
-                 node.isLiteral() ? node.getLiteral().toString(false) : node.getURI();
+         return new Cache(graph).getComparableString(node);
      }
 
-     private static String getComparableStringForBlankOrReified(Graph graph, Node node) {
+     private static String getComparableStringForBlankOrReified(Cache cache, Node node) {
          Map<String, List<Node>> predicatesToObjects = new TreeMap<>();
 
-         graph.find(node, Node.ANY, Node.ANY).forEachRemaining(triple -> {
-             String predicateString = getComparableString(graph, triple.getPredicate());
+         cache.graph.find(node, Node.ANY, Node.ANY).forEachRemaining(triple -> {
+             String predicateString = cache.getComparableString(triple.getPredicate());
              predicatesToObjects.computeIfAbsent(predicateString, key -> new ArrayList<>()).add(triple.getObject());
          });
 
@@ -67,13 +76,65 @@
              predicateBuilder.append(property);
 
              objects.stream()
-                     .map(object -> getComparableString(graph, object))
+                     .map(cache::getComparableString)
                      .sorted()
                      .forEachOrdered(objectBuilder::append);
          });
          return predicateBuilder.toString() + objectBuilder.toString();
      }
 
+     /**
+      * Comparable strings of the blank and reified nodes of a single graph, each computed at most once.  Without a cache,
+      * the string of such a node is rebuilt along with those of all nodes nested in it every time it is compared.  Use one
+      * cache per write, while the graph is not being modified.  Caches may be shared by threads writing the same graph.
+      */
+     public static class Cache {
+         private final Graph graph;
+         private final Map<Node, String> strings;
+
+         /**
+          * CTOR
+          */
+         public Cache(@Nonnull Graph graph) {
+             this.graph = graph;
+             this.strings = new ConcurrentHashMap<>();
+         }
+
+         /**
+          * CTOR for a cache that keeps only the <code>maxSize</code> most recently used strings, for graphs too large
+          * for the strings of all their nodes to be kept
+          */
+         public Cache(@Nonnull Graph graph, int maxSize) {
+             if (maxSize < 1) {
+                 throw new IllegalArgumentException("Cache size must be positive.");
+             }
+             this.graph = graph;
+             this.strings = Collections.synchronizedMap(new LinkedHashMap<Node, String>(16, 0.75f, true) {
+                 @Override
+                 protected boolean removeEldestEntry(Map.Entry<Node, String> eldest) {
+                     return size() > maxSize;
+                 }
+             });
+         }
+
+         /**
+          * Return string representation for specified node within this cache's graph
+          */
+         public String getComparableString(@Nonnull Node node) {
+             // not computeIfAbsent, since computing a string recursively caches those of nested nodes
+             String rep = strings.get(node);
+             if (rep == null) {
+                 if (!shouldUseComparable(graph, node)) {
+                     // the string of a URI or literal is cheap to rebuild, so only blank and reified nodes are kept
+                     return node.isLiteral() ? node.getLiteral().toString(false) : node.getURI();
+                 }
+                 rep = getComparableStringForBlankOrReified(this, node);
+                 strings.put(node, rep);
+             }
+             return rep;
+         }
+     }
+
      private static boolean shouldUseComparable(Graph graph, Node node) {
          return node.isBlank() || graph.contains(node, RDF.type.asNode(), RDF.Statement.asNode());
      }
@@ -23,6 +23,7 @@ import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.out.NodeFormatter;
 import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.util.Context;
@@ -32,6 +33,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * RIOT (https://jena.apache.org/documentation/io/) writer for Jena to produce
@@ -68,6 +73,10 @@ public class AIFOrderedTurtleWriter extends AbstractTurtleWriter {
             super(out, pmap, baseURI, context);
         }
 
+        private OrderedWriter(OrderedWriter parent, IndentedWriter out, NodeFormatter nodeFmt) {
+            super(parent, out, nodeFmt);
+        }
+
         @Override
         protected void writeGraphTTL(Graph graph) {
             new OrderedGraph(graph, null, null).writeGraph();
@@ -76,62 +85,139 @@ public class AIFOrderedTurtleWriter extends AbstractTurtleWriter {
         /**
          * Inner-Inner class to write single graph. Houses state variables for graph while it's written
          */
-        private class OrderedGraph extends BaseGraphWriter {
-
-            // sort order by predicate and object
-            private Comparator<Node> predicateSort = Comparator.comparing(node ->
-                    graph.find(node, RDF.predicate.asNode(), Node.ANY).next().getObject() +
-                            AIFComparableNode.getComparableString(graph,
-                                    graph.find(node, RDF.object.asNode(), Node.ANY).next().getObject())
-            );
-            private Comparator<Node> subjectSort = Comparator.comparing(node ->
-                    graph.find(node, RDF.subject.asNode(), Node.ANY).next().getObject().getURI() +
-                            graph.find(node, RDF.predicate.asNode(), Node.ANY).next().getObject().getURI()
-            );
+        protected class OrderedGraph extends BaseGraphWriter {
+
+            // comparable strings of this graph's nodes, computed once each for the whole write
+            protected final AIFComparableNode.Cache comparableStrings;
+
+            // sort order by predicate and object, or subject and predicate; ties are broken by comparable string,
+            // which differs between the distinct statements written
+            protected Comparator<AIFComparableNode> predicateSort = Comparator.<AIFComparableNode, String>comparing(
+                    assertion -> getPredicateSortKey(assertion.getNode())).thenComparing(Comparator.naturalOrder());
+            protected Comparator<AIFComparableNode> subjectSort = Comparator.<AIFComparableNode, String>comparing(
+                    assertion -> getSubjectSortKey(assertion.getNode())).thenComparing(Comparator.naturalOrder());
 
             private OrderedGraph(Graph graph, Node graphName, DatasetGraph dsg) {
+                this(graph, graphName, dsg, new AIFComparableNode.Cache(graph));
+            }
+
+            protected OrderedGraph(Graph graph, Node graphName, DatasetGraph dsg,
+                                   AIFComparableNode.Cache comparableStrings) {
                 super(graph, graphName, dsg);
+                this.comparableStrings = comparableStrings;
             }
 
-            private void writeGraph() {
-                SortedSet<AIFComparableNode> normalSubjects = new TreeSet<>();
-                SortedSet<AIFComparableNode> blankSubjects = new TreeSet<>();
+            // fork sharing the comparable strings of the parent
+            private OrderedGraph(OrderedGraph parent) {
+                super(parent);
+                this.comparableStrings = parent.comparableStrings;
+            }
 
-                Set<AIFComparableNode> reified = new HashSet<>();
-                List<AIFComparableNode> duplicates = new ArrayList<>();
+            @Override
+            protected boolean supportsParallel() {
+                return true;
+            }
+
+            @Override
+            protected BaseGraphWriter fork(IndentedWriter out, NodeFormatter nodeFmt) {
+                return new OrderedWriter(OrderedWriter.this, out, nodeFmt).new OrderedGraph(this);
+            }
+
+            // key of the predicate sort for a reified statement
+            protected String getPredicateSortKey(Node node) {
+                return graph.find(node, RDF.predicate.asNode(), Node.ANY).next().getObject() +
+                        comparableStrings.getComparableString(
+                                graph.find(node, RDF.object.asNode(), Node.ANY).next().getObject());
+            }
+
+            // key of the subject sort for a reified statement
+            protected String getSubjectSortKey(Node node) {
+                return graph.find(node, RDF.subject.asNode(), Node.ANY).next().getObject().getURI() +
+                        graph.find(node, RDF.predicate.asNode(), Node.ANY).next().getObject().getURI();
+            }
+
+            // number shared blank nodes in the order of their comparable strings, then of the predicates and subjects
+            // referencing them, then as found
+            protected void allocateLabels() {
+                Map<Node, List<String>> references = new HashMap<>();
+                Comparator<List<String>> lexicographic = (a, b) -> {
+                    for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+                        int compared = a.get(i).compareTo(b.get(i));
+                        if (compared != 0) {
+                            return compared;
+                        }
+                    }
+                    return Integer.compare(a.size(), b.size());
+                };
+                allocateLabels(Comparator.comparing(comparableStrings::getComparableString)
+                        .thenComparing(node -> references.computeIfAbsent(node, this::getReferences), lexicographic));
+            }
+
+            // predicate and comparable subject of each triple referencing a node, in order
+            private List<String> getReferences(Node node) {
+                List<String> references = graph.find(Node.ANY, Node.ANY, node)
+                        .mapWith(triple -> triple.getPredicate().getURI() + ' ' +
+                                comparableStrings.getComparableString(triple.getSubject()))
+                        .toList();
+                references.sort(null);
+                return references;
+            }
+
+            protected void writeGraph() {
+                allocateLabels();
+
+                List<ListedSubject> normalSubjects = new ArrayList<>();
+                List<ListedSubject> blankSubjects = new ArrayList<>();
+                List<ListedSubject> reifiedSubjects = new ArrayList<>();
 
                 Set<Node> blankMultiNested = new HashSet<>();
 
-                // mark each distinct subject as normal, blank, reified, duplicate, or multi-nested
+                // reified statements, found with one lookup rather than one per subject
+                Set<Node> statements = new HashSet<>();
+                graph.find(Node.ANY, RDF.type.asNode(), RDF.Statement.asNode())
+                        .mapWith(Triple::getSubject)
+                        .forEachRemaining(statements::add);
+
+                // assign each distinct subject to its section (normal, blank, reified, or multi-nested) in one pass
                 listSubjects().forEachRemaining(subject -> {
 
-                    Set<AIFComparableNode> toAdd = null;
-                    if (graph.contains(subject, RDF.type.asNode(), RDF.Statement.asNode())) {
+                    List<ListedSubject> section = null;
+                    if (statements.contains(subject)) {
                         // reified can either be blank or named
-                        toAdd = reified;
+                        section = reifiedSubjects;
 
                     } else if (freeBnodes.contains(subject)) {
                         // only add blank node if it's top level (not nested)
-                        toAdd = blankSubjects;
+                        section = blankSubjects;
 
                     } else if (subject.isURI()) {
-                        toAdd = normalSubjects;
+                        section = normalSubjects;
 
                     } else if (subject.isBlank() && !nestedObjects.contains(subject)) {
                         // capture nested nodes that are referenced multiple times
                         blankMultiNested.add(subject);
                     }
 
-                    if (toAdd != null) {
-                        AIFComparableNode beingAdded = new AIFComparableNode(graph, subject);
-                        if (toAdd.contains(beingAdded)) {
-                            duplicates.add(beingAdded);
-                        } else {
-                            toAdd.add(beingAdded);
-                        }
+                    if (section != null) {
+                        section.add(new ListedSubject(subject,
+                                normalSubjects.size() + blankSubjects.size() + reifiedSubjects.size()));
                     }
                 });
 
+                // compute comparable strings and sort each section, on the pool if there is one
+                sortSections(Arrays.asList(normalSubjects, blankSubjects), reifiedSubjects);
+
+                // the first of each equivalent subject stays in its section; the rest are duplicates
+                List<ListedSubject> duplicates = new ArrayList<>();
+                List<AIFComparableNode> normal = withoutDuplicates(normalSubjects, duplicates);
+                List<AIFComparableNode> blank = withoutDuplicates(blankSubjects, duplicates);
+                Set<AIFComparableNode> reified = new HashSet<>();
+                for (ListedSubject listed : reifiedSubjects) {
+                    if (!reified.add(listed.comparable)) {
+                        duplicates.add(listed);
+                    }
+                }
+
                 Map<Node, Set<AIFComparableNode>> assertions = new HashMap<>();
                 for (AIFComparableNode assertion : reified) {
                     graph.find(assertion.getNode(), RDF.subject.asNode(), Node.ANY)
@@ -143,19 +229,17 @@ public class AIFOrderedTurtleWriter extends AbstractTurtleWriter {
 
                 boolean somethingWritten = false;
 
-                // write ordered subjects followed by reified statements
-                for (AIFComparableNode normal : normalSubjects) {
-                    Node subject = normal.getNode();
-                    somethingWritten = writeSingleSubject(subject, somethingWritten);
-                    if (assertions.containsKey(subject)) {
-                        somethingWritten = writeBySubject(getAssertionIterator(assertions.get(subject), predicateSort),
-                                somethingWritten);
-                        assertions.remove(subject);
-                    }
-                }
+                // write ordered subjects followed by reified statements, as one run of subjects
+                Iterator<Node> normalAndAsserted = normal.stream().flatMap(normalSubject -> {
+                    Node subject = normalSubject.getNode();
+                    Set<AIFComparableNode> subjectAssertions = assertions.remove(subject);
+                    return subjectAssertions == null ? Stream.of(subject) : Stream.concat(Stream.of(subject),
+                            subjectAssertions.stream().sorted(predicateSort).map(AIFComparableNode::getNode));
+                }).iterator();
+                somethingWritten = writeBySubject(normalAndAsserted, somethingWritten);
 
                 // write ordered blank nodes
-                somethingWritten = writeBySubject(getNodeIterator(blankSubjects), somethingWritten);
+                somethingWritten = writeBySubject(getNodeIterator(blank), somethingWritten);
 
                 // write dangling reified statements
                 if (!assertions.isEmpty()) {
@@ -170,9 +254,12 @@ public class AIFOrderedTurtleWriter extends AbstractTurtleWriter {
                 if (!duplicates.isEmpty()) {
                     writeHeader("Duplicates: The equivalent of these nodes is already represented above",
                             somethingWritten);
-                    // natural sort
-                    duplicates.sort(null);
-                    somethingWritten = writeBySubject(getNodeIterator(duplicates), somethingWritten);
+                    // natural sort, equivalent nodes in the order they were listed
+                    duplicates.sort(Comparator.comparingInt(listed -> listed.index));
+                    List<AIFComparableNode> sorted = new ArrayList<>(duplicates.size());
+                    duplicates.forEach(listed -> sorted.add(listed.comparable));
+                    sorted.sort(null);
+                    somethingWritten = writeBySubject(getNodeIterator(sorted), somethingWritten);
                 }
 
                 // write multi-nested blank nodes ordered by label. Label assigned when node first referenced/written
@@ -195,13 +282,71 @@ public class AIFOrderedTurtleWriter extends AbstractTurtleWriter {
             protected Map<Node, List<Node>> groupByPredicates(Collection<Triple> cluster) {
                 Map<Node, List<Node>> ret = super.groupByPredicates(cluster);
                 for (List<Node> list : ret.values()) {
-                    list.sort(Comparator.comparing(node -> new AIFComparableNode(graph, node)));
+                    list.sort(Comparator.comparing(comparableStrings::getComparableString));
                 }
                 return ret;
             }
 
-            private Iterator<Node> getAssertionIterator(Set<AIFComparableNode> collection, Comparator<Node> comp) {
-                return collection.stream().map(AIFComparableNode::getNode).sorted(comp).iterator();
+            // Compute the comparable strings of every listed subject and sort each of the sorted sections by them.
+            // Sections are sorted concurrently when a pool is set; sorting is stable, so the result is the same.
+            private void sortSections(List<List<ListedSubject>> sorted, List<ListedSubject> unsorted) {
+                if (pool == null) {
+                    sorted.forEach(this::sortSection);
+                    compare(unsorted);
+                    return;
+                }
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (List<ListedSubject> section : sorted) {
+                    tasks.add(() -> {
+                        sortSection(section);
+                        return null;
+                    });
+                }
+                tasks.add(() -> {
+                    compare(unsorted);
+                    return null;
+                });
+                for (Future<Void> task : pool.invokeAll(tasks)) {
+                    try {
+                        task.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while sorting subjects", e);
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Unable to sort subjects", e.getCause());
+                    }
+                }
+            }
+
+            private void sortSection(List<ListedSubject> section) {
+                compare(section);
+                section.sort(Comparator.comparing(listed -> listed.comparable));
+            }
+
+            private void compare(List<ListedSubject> section) {
+                (pool == null ? section.stream() : section.parallelStream())
+                        .forEach(listed -> listed.comparable = new AIFComparableNode(comparableStrings, listed.node));
+            }
+
+            // Keep the first of each run of equivalent subjects in a sorted section, adding the others to duplicates
+            private List<AIFComparableNode> withoutDuplicates(List<ListedSubject> section,
+                                                              List<ListedSubject> duplicates) {
+                List<AIFComparableNode> distinct = new ArrayList<>(section.size());
+                AIFComparableNode previous = null;
+                for (ListedSubject listed : section) {
+                    if (previous != null && previous.compareTo(listed.comparable) == 0) {
+                        duplicates.add(listed);
+                    } else {
+                        distinct.add(listed.comparable);
+                        previous = listed.comparable;
+                    }
+                }
+                return distinct;
+            }
+
+            private Iterator<Node> getAssertionIterator(Set<AIFComparableNode> collection,
+                                                        Comparator<AIFComparableNode> comp) {
+                return collection.stream().sorted(comp).map(AIFComparableNode::getNode).iterator();
             }
 
             private Iterator<Node> getNodeIterator(Collection<AIFComparableNode> collection) {
@@ -209,5 +354,16 @@ public class AIFOrderedTurtleWriter extends AbstractTurtleWriter {
             }
         }
 
+        // A subject in the order it was listed, with its comparable node once computed
+        private static final class ListedSubject {
+            private final Node node;
+            private final int index;
+            private AIFComparableNode comparable;
+
+            private ListedSubject(Node node, int index) {
+                this.node = node;
+                this.index = index;
+            }
+        }
     }
 }
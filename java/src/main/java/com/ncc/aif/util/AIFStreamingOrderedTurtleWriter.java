@@ -0,0 +1,427 @@
+/*
+ * Copyright 2018 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.iterator.PeekIterator;
+import org.apache.jena.atlas.lib.SetUtils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * RIOT writer for Jena that produces exactly the same ordered TURTLE as {@link AIFOrderedTurtleWriter}, but for graphs
+ * whose subjects are too many to be sorted in memory. Subjects are classified in a single pass over the graph, and each
+ * section is sorted externally: runs of at most <code>runSize</code> subjects are sorted and spilled to disk, then
+ * merged as the section is written. Only the runs being merged, the assertions of one subject, and a bounded cache of
+ * comparable strings are held in memory at once.
+ * <p>
+ * The underlying Turtle writer still keeps its analysis of blank nodes (which are free, nested, or list elements) and
+ * the labels of blank nodes written so far in memory.
+ */
+public class AIFStreamingOrderedTurtleWriter extends AbstractTurtleWriter {
+    /**
+     * Default number of subjects sorted in memory before a run is spilled to disk
+     */
+    public static final int DEFAULT_RUN_SIZE = 1 << 17;
+
+    /**
+     * Default number of comparable strings kept in memory
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    private static final Node TYPE = RDF.type.asNode();
+    private static final Node STATEMENT = RDF.Statement.asNode();
+    private static final Node SUBJECT = RDF.subject.asNode();
+
+    private final int runSize;
+    private final Path tempDirectory;
+
+    /**
+     * CTOR spilling runs of the default size to the default temporary directory
+     */
+    public AIFStreamingOrderedTurtleWriter() {
+        this(DEFAULT_RUN_SIZE, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * CTOR
+     *
+     * @param runSize       number of subjects sorted in memory before a run is spilled to disk
+     * @param tempDirectory directory in which to spill runs
+     */
+    public AIFStreamingOrderedTurtleWriter(int runSize, Path tempDirectory) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive.");
+        }
+        this.runSize = runSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    @Override
+    protected void output(IndentedWriter iOut, Graph graph, PrefixMap prefixMap, String baseURI, Context context) {
+        new StreamingWriter(iOut, prefixMap, baseURI, context).write(graph);
+    }
+
+    // Key of a node; keys are equal exactly when nodes are
+    private static String nodeKey(Node node) {
+        return node.isURI() ? "U" + node.getURI() :
+                node.isBlank() ? "B" + node.getBlankNodeLabel() : "L" + node.toString();
+    }
+
+    private static Node keyNode(String key) {
+        switch (key.charAt(0)) {
+            case 'U':
+                return NodeFactory.createURI(key.substring(1));
+            case 'B':
+                return NodeFactory.createBlankNode(key.substring(1));
+            default:
+                throw new IllegalStateException("Only URI and blank subjects can be spilled: " + key);
+        }
+    }
+
+    /**
+     * A spilled subject or assertion
+     */
+    private static final class Entry {
+        private final String key;
+        private final String subKey;
+        private final String tieKey;
+        private final Node node;
+        private final long[] ranks;
+
+        private Entry(String key, String subKey, String tieKey, Node node, long... ranks) {
+            this.key = key;
+            this.subKey = subKey;
+            this.tieKey = tieKey;
+            this.node = node;
+            this.ranks = ranks;
+        }
+    }
+
+    private static final ExternalSorter.Codec<Entry> CODEC = new ExternalSorter.Codec<Entry>() {
+        @Override
+        public void write(DataOutput out, Entry entry) throws IOException {
+            ExternalSorter.writeString(out, entry.key);
+            ExternalSorter.writeString(out, entry.subKey);
+            ExternalSorter.writeString(out, entry.tieKey);
+            ExternalSorter.writeString(out, nodeKey(entry.node));
+            out.writeInt(entry.ranks.length);
+            for (long rank : entry.ranks) {
+                out.writeLong(rank);
+            }
+        }
+
+        @Override
+        public Entry read(DataInput in) throws IOException {
+            String key = ExternalSorter.readString(in);
+            String subKey = ExternalSorter.readString(in);
+            String tieKey = ExternalSorter.readString(in);
+            Node node = keyNode(ExternalSorter.readString(in));
+            long[] ranks = new long[in.readInt()];
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] = in.readLong();
+            }
+            return new Entry(key, subKey, tieKey, node, ranks);
+        }
+    };
+
+    // sort by key, then sub-key, then tie-breaking key, then ranks
+    private static final Comparator<Entry> BY_KEY = Comparator.<Entry, String>comparing(entry -> entry.key)
+            .thenComparing(entry -> entry.subKey == null ? "" : entry.subKey)
+            .thenComparing(entry -> entry.tieKey == null ? "" : entry.tieKey)
+            .thenComparing((a, b) -> Arrays.compare(a.ranks, b.ranks));
+
+    // keep the order entries are added
+    private static final Comparator<Entry> IN_ORDER = (a, b) -> 0;
+
+    /**
+     * Inner class to write ordered AIF TURTLE using external sorts
+     */
+    protected class StreamingWriter extends AIFOrderedTurtleWriter.OrderedWriter {
+        StreamingWriter(IndentedWriter out, PrefixMap pmap, String baseURI, Context context) {
+            super(out, pmap, baseURI, context);
+        }
+
+        @Override
+        protected void writeGraphTTL(Graph graph) {
+            new StreamingGraph(graph).writeGraph();
+        }
+
+        /**
+         * Inner-Inner class to write single graph. Sections are written in the same order as {@link OrderedGraph}.
+         */
+        protected class StreamingGraph extends OrderedGraph {
+            private StreamingGraph(Graph graph) {
+                super(graph, null, null, new AIFComparableNode.Cache(graph, DEFAULT_CACHE_SIZE));
+            }
+
+            private ExternalSorter<Entry> sorter(Comparator<Entry> order) {
+                return new ExternalSorter<>(CODEC, order, runSize, tempDirectory);
+            }
+
+            @Override
+            protected void writeGraph() {
+                allocateLabels();
+
+                try (ExternalSorter<Entry> normalSubjects = sorter(BY_KEY);
+                     ExternalSorter<Entry> blankSubjects = sorter(BY_KEY);
+                     ExternalSorter<Entry> reified = sorter(BY_KEY);
+                     ExternalSorter<Entry> blankMultiNested = sorter(IN_ORDER);
+                     ExternalSorter<Entry> assertions = sorter(BY_KEY);
+                     ExternalSorter<Entry> duplicates = sorter(BY_KEY);
+                     ExternalSorter<Entry> dangling = sorter(BY_KEY)) {
+
+                    // mark each distinct subject as normal, blank, reified, or multi-nested, ranked in listed order
+                    long rank = 0;
+                    for (Iterator<Node> subjects = subjectRuns(); subjects.hasNext(); rank++) {
+                        Node subject = subjects.next();
+                        if (graph.contains(subject, TYPE, STATEMENT)) {
+                            reified.add(comparableEntry(subject, rank));
+                        } else if (freeBnodes.contains(subject)) {
+                            blankSubjects.add(comparableEntry(subject, rank));
+                        } else if (subject.isURI()) {
+                            normalSubjects.add(new Entry(nodeKey(subject), null, null, subject, rank));
+                        } else if (subject.isBlank() && !nestedObjects.contains(subject)) {
+                            blankMultiNested.add(new Entry(nodeKey(subject), null, null, subject, rank));
+                        }
+                    }
+
+                    // index each reified statement by its subjects in predicate sort, setting aside duplicates
+                    for (Iterator<Entry> it = withoutDuplicates(reified.sorted(), duplicates); it.hasNext(); ) {
+                        Entry assertion = it.next();
+                        String predicateKey = getPredicateSortKey(assertion.node);
+                        graph.find(assertion.node, SUBJECT, Node.ANY)
+                                .mapWith(Triple::getObject)
+                                .forEachRemaining(subject -> assertions.add(new Entry(nodeKey(subject), predicateKey,
+                                        assertion.key, assertion.node, assertion.ranks[0])));
+                    }
+
+                    boolean somethingWritten = false;
+
+                    // write ordered subjects followed by reified statements, merging the two into one run of subjects
+                    PeekIterator<Entry> asserted = PeekIterator.create(assertions.sorted());
+                    somethingWritten = writeBySubject(normalAndAsserted(normalSubjects.sorted(), asserted, dangling),
+                            somethingWritten);
+                    while (asserted.hasNext()) {
+                        spillDangling(nextSubject(asserted), dangling);
+                    }
+
+                    // write ordered blank nodes
+                    somethingWritten = writeBySubject(nodes(withoutDuplicates(blankSubjects.sorted(), duplicates)),
+                            somethingWritten);
+
+                    // write dangling reified statements
+                    if (dangling.size() > 0) {
+                        writeHeader("Assertions without subjects. Probably incomplete graph", somethingWritten);
+                        // an assertion with more than one missing subject is written once
+                        somethingWritten = writeBySubject(nodes(distinct(dangling.sorted())), somethingWritten);
+                    }
+
+                    // write any duplicate blank or reified nodes
+                    if (duplicates.size() > 0) {
+                        writeHeader("Duplicates: The equivalent of these nodes is already represented above",
+                                somethingWritten);
+                        somethingWritten = writeBySubject(nodes(duplicates.sorted()), somethingWritten);
+                    }
+
+                    // write multi-nested blank nodes ordered by label. Label assigned when node first referenced/written
+                    if (blankMultiNested.size() > 0) {
+                        writeHeader("Blanks: These blank nodes are nested in more than one statement above",
+                                somethingWritten);
+                        try (ExternalSorter<Entry> byLabel = sorter(BY_KEY)) {
+                            blankMultiNested.sorted().forEachRemaining(entry -> byLabel.add(
+                                    new Entry(nodeToLabel.get(null, entry.node), null, null, entry.node)));
+                            somethingWritten = writeBySubject(nodes(distinct(byLabel.sorted())), somethingWritten);
+                        }
+                    }
+
+                    // write anything else we missed. Hopefully, happens infrequently
+                    if (!nLinkedLists.isEmpty() || !freeLists.isEmpty() ||
+                            !SetUtils.difference(nestedObjects, nestedObjectsWritten).isEmpty()) {
+                        writeHeader("Error: the following was unexpected", somethingWritten);
+                        writeRemainder(somethingWritten);
+                    }
+                }
+            }
+
+            // Distinct subjects in the order first listed, without remembering them all; a repeated subject is
+            // dropped when its entries are merged
+            private Iterator<Node> subjectRuns() {
+                ExtendedIterator<Triple> triples = graph.find();
+                return new Iterator<Node>() {
+                    private Node next = advance(null);
+
+                    private Node advance(Node previous) {
+                        while (triples.hasNext()) {
+                            Node subject = triples.next().getSubject();
+                            if (!subject.equals(previous)) {
+                                return subject;
+                            }
+                        }
+                        triples.close();
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Node next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Node current = next;
+                        next = advance(current);
+                        return current;
+                    }
+                };
+            }
+
+            private Entry comparableEntry(Node subject, long rank) {
+                String rep = comparableStrings.getComparableString(subject);
+                return new Entry(rep, null, null, subject, rank);
+            }
+
+            // The first node listed for each comparable string, adding the other nodes to the duplicates
+            private Iterator<Entry> withoutDuplicates(Iterator<Entry> sorted, ExternalSorter<Entry> duplicates) {
+                return new Iterator<Entry>() {
+                    private final Set<Node> seen = new HashSet<>();
+                    private final PeekIterator<Entry> entries = PeekIterator.create(sorted);
+
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry next() {
+                        Entry first = entries.next();
+                        seen.clear();
+                        seen.add(first.node);
+                        while (entries.hasNext() && entries.peek().key.equals(first.key)) {
+                            Entry other = entries.next();
+                            if (seen.add(other.node)) {
+                                duplicates.add(other);
+                            }
+                        }
+                        return first;
+                    }
+                };
+            }
+
+            // All entries of a single node, which are adjacent when sorted
+            private Iterator<Entry> distinct(Iterator<Entry> sorted) {
+                PeekIterator<Entry> entries = PeekIterator.create(sorted);
+                return new Iterator<Entry>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry next() {
+                        Entry first = entries.next();
+                        while (entries.hasNext() && entries.peek().node.equals(first.node)) {
+                            entries.next();
+                        }
+                        return first;
+                    }
+                };
+            }
+
+            private List<Entry> nextSubject(PeekIterator<Entry> asserted) {
+                List<Entry> subjectAssertions = new ArrayList<>();
+                String key = asserted.peek().key;
+                while (asserted.hasNext() && asserted.peek().key.equals(key)) {
+                    subjectAssertions.add(asserted.next());
+                }
+                return subjectAssertions;
+            }
+
+            // Each distinct normal subject followed by its assertions, spilling those of missing subjects passed over
+            private Iterator<Node> normalAndAsserted(Iterator<Entry> normal, PeekIterator<Entry> asserted,
+                                                     ExternalSorter<Entry> dangling) {
+                return new Iterator<Node>() {
+                    private final Deque<Node> pending = new ArrayDeque<>();
+                    private String previous = null;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (pending.isEmpty() && normal.hasNext()) {
+                            Entry subject = normal.next();
+                            if (subject.key.equals(previous)) {
+                                continue;
+                            }
+                            previous = subject.key;
+                            while (asserted.hasNext() && asserted.peek().key.compareTo(subject.key) < 0) {
+                                spillDangling(nextSubject(asserted), dangling);
+                            }
+                            pending.add(subject.node);
+                            if (asserted.hasNext() && asserted.peek().key.equals(subject.key)) {
+                                nextSubject(asserted).forEach(assertion -> pending.add(assertion.node));
+                            }
+                        }
+                        return !pending.isEmpty();
+                    }
+
+                    @Override
+                    public Node next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return pending.remove();
+                    }
+                };
+            }
+
+            // Subject sort of the assertions of a missing subject, which the distinct assertions share
+            private void spillDangling(List<Entry> subjectAssertions, ExternalSorter<Entry> dangling) {
+                for (Entry entry : subjectAssertions) {
+                    dangling.add(new Entry(getSubjectSortKey(entry.node), entry.tieKey, null, entry.node));
+                }
+            }
+
+            private Iterator<Node> nodes(Iterator<Entry> entries) {
+                return new Iterator<Node>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Node next() {
+                        return entries.next().node;
+                    }
+                };
+            }
+        }
+    }
+}
@@ -15,6 +15,8 @@
 */
 package com.ncc.aif.util;
 
+import org.apache.jena.atlas.io.AWriter;
+import org.apache.jena.atlas.io.IndentedLineBuffer;
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.InternalErrorException;
@@ -29,22 +31,35 @@ import org.apache.jena.rdf.model.Property;
 import org.apache.jena.riot.RIOT;
 import org.apache.jena.riot.other.GLib;
 import org.apache.jena.riot.out.NodeFormatter;
+import org.apache.jena.riot.out.NodeFormatterBase;
 import org.apache.jena.riot.out.NodeFormatterTTL;
 import org.apache.jena.riot.out.NodeFormatterTTL_MultiLine;
 import org.apache.jena.riot.out.NodeToLabel;
 import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.riot.system.IRIResolver;
 import org.apache.jena.riot.system.PrefixMapFactory;
 import org.apache.jena.riot.system.RiotLib;
 import org.apache.jena.riot.writer.TurtleWriterBase;
+import org.apache.jena.riot.writer.WriterConst;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static org.apache.jena.riot.writer.WriterConst.*;
 
@@ -56,6 +71,44 @@ import static org.apache.jena.riot.writer.WriterConst.*;
  * {@link org.apache.jena.riot.writer.TurtleShell.ShellGraph}, but it's final
  */
 public abstract class AbstractTurtleWriter extends TurtleWriterBase {
+    /**
+     * Context symbol for the {@link ForkJoinPool} on which to format subjects in parallel.  Output is identical to
+     * that written without one.
+     */
+    public static final Symbol PARALLEL_POOL = Symbol.create("http://www.nextcentury.com/aif#parallelPool");
+
+    /**
+     * Context symbol for the number of subjects formatted by each parallel task
+     */
+    public static final Symbol PARALLEL_CHUNK_SIZE = Symbol.create("http://www.nextcentury.com/aif#parallelChunkSize");
+
+    /**
+     * Default number of subjects formatted by each parallel task
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    // Most distinct predicates whose tokens are kept per write
+    private static final int MAX_PREDICATE_TOKENS = 1 << 12;
+
+    private ForkJoinPool pool;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Format subjects in parallel on the specified pool
+     *
+     * @param pool      pool on which to format subjects, or null to write them sequentially
+     * @param chunkSize number of subjects formatted by each task
+     * @return this writer
+     */
+    public AbstractTurtleWriter setParallel(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
     /**
      * Convenience method to write similar to RDFDataMgr
      */
@@ -64,6 +117,51 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
         write(outputStream, graph, RiotLib.prefixMap(graph), null, RIOT.getContext().copy());
     }
 
+    /**
+     * Write <code>model</code> to <code>path</code>, compressed as its suffix (<code>.gz</code> or <code>.zst</code>)
+     * indicates.  Compression runs on the pool set with {@link #setParallel(ForkJoinPool, int)}, or else on the common
+     * pool.
+     */
+    public void write(Path path, Model model) throws IOException {
+        Compression compression = Compression.forFileName(path.toString());
+        OutputStream file = Files.newOutputStream(path);
+        try (OutputStream out = compression.compress(file, pool == null ? ForkJoinPool.commonPool() : pool)) {
+            write(out, model);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write through a {@link Utf8ByteSink} rather than the synchronized, buffered writer RIOT would use
+     */
+    @Override
+    public void write(OutputStream out, Graph graph, PrefixMap prefixMap, String baseURI, Context context) {
+        IndentedWriter iOut = new IndentedWriter(new Utf8ByteSink(out)) {
+        };
+        if (baseURI != null) {
+            baseURI = IRIResolver.resolveString(baseURI);
+        }
+        output(iOut, graph, prefixMap, baseURI, withParallel(context));
+        iOut.flush();
+    }
+
+    @Override
+    public void write(Writer out, Graph graph, PrefixMap prefixMap, String baseURI, Context context) {
+        super.write(out, graph, prefixMap, baseURI, withParallel(context));
+    }
+
+    private Context withParallel(Context context) {
+        if (pool == null) {
+            return context;
+        }
+        Context parallel = context == null ? new Context() : context.copy();
+        parallel.set(PARALLEL_POOL, pool);
+        parallel.set(PARALLEL_CHUNK_SIZE, chunkSize);
+        return parallel;
+    }
+
     /**
      * Internal class to write TURTLE
      */
@@ -73,12 +171,27 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
         protected final IndentedWriter out;
         protected final NodeToLabel nodeToLabel;
         protected final NodeFormatter nodeFmt;
+        // Labels allocated before subjects are formatted in parallel, set by allocateLabels
+        private Map<Node, String> allocatedLabels = null;
+        // The only labels a fork may use, which are those its parent allocated; null unless this is a fork
+        private final Map<Node, String> forkLabels;
         protected final PrefixMap prefixMap;
         protected final String baseURI;
 
         protected final Comparator<Node> labelSort;
         protected final Comparator<Node> prefixSort;
 
+        // Pool on which to format subjects in parallel, or null to format them sequentially
+        protected final ForkJoinPool pool;
+        protected final int chunkSize;
+
+        // Predicates as formatted and as measured for alignment. There are few, and each is written for most subjects
+        private final Map<Node, String> predicateTokens;
+        private final Map<Node, Integer> predicateWidths;
+        private final boolean writeTypeAsA;
+        // Reusable buffer in which to format predicates
+        private final IndentedLineBuffer scratch = new IndentedLineBuffer();
+
         public OrderedTurtleWriter$(IndentedWriter out, PrefixMap pmap, String baseURI, Context context) {
             this.out = out;
             if (pmap == null) {
@@ -92,14 +205,121 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
             } else {
                 this.nodeFmt = new NodeFormatterTTL(baseURI, pmap, nodeToLabel);
             }
+            this.forkLabels = null;
+            this.pool = context == null ? null : context.get(PARALLEL_POOL);
+            this.chunkSize = context == null ? DEFAULT_CHUNK_SIZE : context.getInt(PARALLEL_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+            this.predicateTokens = new ConcurrentHashMap<>();
+            this.predicateWidths = new ConcurrentHashMap<>();
+            this.writeTypeAsA = !pmap.contains(rdfNS);
+
+            labelSort = createLabelSort();
+            prefixSort = createPrefixSort();
+        }
+
+        /**
+         * Fork a writer sharing the prefixes and blank node labels of <code>parent</code>, but writing to
+         * <code>out</code> with <code>nodeFmt</code>.  Used to format subjects in parallel.
+         */
+        protected OrderedTurtleWriter$(OrderedTurtleWriter$ parent, IndentedWriter out, NodeFormatter nodeFmt) {
+            this.out = out;
+            this.prefixMap = parent.prefixMap;
+            this.baseURI = parent.baseURI;
+            this.nodeToLabel = parent.nodeToLabel;
+            this.forkLabels = parent.allocatedLabels == null ? Collections.emptyMap() : parent.allocatedLabels;
+            this.nodeFmt = new ForkNodeFormatter(nodeFmt);
+            this.pool = null;
+            this.chunkSize = parent.chunkSize;
+            // tokens are shared, but only when formatted like the parent's
+            boolean sameFormat = nodeFmt == parent.nodeFmt;
+            this.predicateTokens = sameFormat ? parent.predicateTokens : new ConcurrentHashMap<>();
+            this.predicateWidths = parent.predicateWidths;
+            this.writeTypeAsA = parent.writeTypeAsA;
+
+            labelSort = createLabelSort();
+            prefixSort = createPrefixSort();
+        }
 
+        private Comparator<Node> createLabelSort() {
             // Compare object representations
-            labelSort = Comparator.comparing(node ->
+            return Comparator.comparing(node ->
                     node.isLiteral() ? node.getLiteral().toString(false) :
-                            node.isBlank() ? nodeToLabel.get(null, node) : node.getURI());
+                            node.isBlank() ? label(node) : node.getURI());
+        }
+
+        /**
+         * The label of a blank node.  A fork only looks up the labels its parent allocated before forking, since
+         * forks share the parent's {@link NodeToLabel}, which is not safe to allocate from concurrently.
+         *
+         * @throws IllegalStateException if this is a fork and <code>node</code> has no label yet
+         */
+        protected String label(Node node) {
+            if (forkLabels == null) {
+                return nodeToLabel.get(null, node);
+            }
+            String label = forkLabels.get(node);
+            if (label == null) {
+                throw new IllegalStateException("Blank node " + node + " was not labeled before writing in parallel");
+            }
+            return label;
+        }
+
+        // Formats like the parent's formatter, except that blank nodes are labeled by the fork
+        private final class ForkNodeFormatter extends NodeFormatterBase {
+            private final NodeFormatter parent;
+
+            private ForkNodeFormatter(NodeFormatter parent) {
+                this.parent = parent;
+            }
+
+            @Override
+            public void formatURI(AWriter w, String uriStr) {
+                parent.formatURI(w, uriStr);
+            }
+
+            @Override
+            public void formatURI(AWriter w, Node n) {
+                parent.formatURI(w, n);
+            }
+
+            @Override
+            public void formatVar(AWriter w, String name) {
+                parent.formatVar(w, name);
+            }
+
+            @Override
+            public void formatBNode(AWriter w, Node n) {
+                w.print(label(n));
+            }
+
+            @Override
+            public void formatBNode(AWriter w, String label) {
+                parent.formatBNode(w, label);
+            }
 
+            @Override
+            public void formatLiteral(AWriter w, Node n) {
+                parent.formatLiteral(w, n);
+            }
+
+            @Override
+            public void formatLitString(AWriter w, String lex) {
+                parent.formatLitString(w, lex);
+            }
+
+            @Override
+            public void formatLitLang(AWriter w, String lex, String langTag) {
+                parent.formatLitLang(w, lex, langTag);
+            }
+
+            @Override
+            public void formatLitDT(AWriter w, String lex, String datatypeURI) {
+                parent.formatLitDT(w, lex, datatypeURI);
+            }
+        }
+
+        private Comparator<Node> createPrefixSort() {
             // Compare prefixes or uris. Used for comparing subjects
-            prefixSort = Comparator.comparing(node ->
+            return Comparator.comparing(node ->
                     prefixMap.abbrev(node.getURI()) == null ? node.getURI() :
                             prefixMap.abbrev(node.getURI()).getRight());
         }
@@ -154,6 +374,43 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
             nodeFmt.format(out, node);
         }
 
+        /**
+         * Write a predicate (not written as "a"), formatting it only the first time it is written
+         */
+        protected final void writePredicateNode(Node predicate) {
+            String token = predicateTokens.get(predicate);
+            if (token == null) {
+                scratch.clear();
+                nodeFmt.format(scratch, predicate);
+                token = scratch.asString();
+                if (predicateTokens.size() < MAX_PREDICATE_TOKENS) {
+                    predicateTokens.put(predicate, token);
+                }
+            }
+            out.print(token);
+        }
+
+        /**
+         * Width of the widest of the specified predicates no wider than {@link WriterConst#LONG_PREDICATE}, as
+         * {@link RiotLib#calcWidth(PrefixMap, String, Collection, int, int)} measures them
+         */
+        protected final int calcPredicateWidth(Collection<Node> predicates) {
+            int width = MIN_PREDICATE;
+            for (Node predicate : predicates) {
+                Integer predicateWidth = predicateWidths.get(predicate);
+                if (predicateWidth == null) {
+                    predicateWidth = RiotLib.calcWidth(prefixMap, baseURI, predicate);
+                    if (predicateWidths.size() < MAX_PREDICATE_TOKENS) {
+                        predicateWidths.put(predicate, predicateWidth);
+                    }
+                }
+                if (predicateWidth <= LONG_PREDICATE && predicateWidth > width) {
+                    width = predicateWidth;
+                }
+            }
+            return width;
+        }
+
         private void print(String x) {
             out.print(x);
         }
@@ -209,6 +466,73 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
             }
         }
 
+        /**
+         * Links to and from the resources of a single graph, and the list cells among them, counted in one pass so
+         * that finding nested blank nodes and lists does not need several finds per node.  Counts stop at the
+         * largest value the analysis distinguishes, so each is "0, 1, or more" (out-links: "0, 1, 2, or more").
+         * Literals are not counted, as they are never asked about.
+         */
+        private static final class LinkTable {
+            private final Map<Node, Links> links = new HashMap<>();
+
+            private LinkTable(Graph graph) {
+                ExtendedIterator<Triple> iter = graph.find(Node.ANY, Node.ANY, Node.ANY);
+                try {
+                    while (iter.hasNext()) {
+                        Triple t = iter.next();
+                        Node subj = t.getSubject();
+                        Node pred = t.getPredicate();
+                        Node obj = t.getObject();
+
+                        Links from = links.computeIfAbsent(subj, n -> new Links());
+                        from.out = increment(from.out, 3);
+                        if (pred.equals(RDF_First)) {
+                            from.firstOut = increment(from.firstOut, 2);
+                            from.first = obj;
+                        } else if (pred.equals(RDF_Rest)) {
+                            from.restOut = increment(from.restOut, 2);
+                            from.rest = obj;
+                        }
+
+                        if (!obj.isLiteral()) {
+                            Links to = links.computeIfAbsent(obj, n -> new Links());
+                            to.in = increment(to.in, 2);
+                            if (pred.equals(RDF_Rest)) {
+                                to.restIn = increment(to.restIn, 2);
+                                to.restSubject = subj;
+                            }
+                        }
+                    }
+                } finally {
+                    iter.close();
+                }
+            }
+
+            private static byte increment(byte count, int max) {
+                return count < max ? (byte) (count + 1) : count;
+            }
+
+            private Links get(Node node) {
+                Links l = links.get(node);
+                return l == null ? Links.NONE : l;
+            }
+        }
+
+        private static final class Links {
+            private static final Links NONE = new Links();
+
+            private byte in;
+            private byte restIn;
+            private byte out;
+            private byte firstOut;
+            private byte restOut;
+            // Subject of the (last seen) rdf:rest link to this node
+            private Node restSubject;
+            // Objects of the (last seen) rdf:first and rdf:rest links from this node
+            private Node first;
+            private Node rest;
+        }
+
         /**
          * Write one graph - using an inner object class to isolate
          * the state variables for writing a single graph.
@@ -240,11 +564,18 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
             // Blank nodes that have one incoming triple
             protected /*final*/ Set<Node> nestedObjects;
 
+            // Blank node objects with more than one incoming triple, or used in other graphs, in the order found.
+            // These are written by label.
+            protected final Set<Node> sharedBnodes;
+
             // Allow lists and nest bnode objects.
             // This is true for the main pretty printing then
             // false when we are clearing up unwritten triples.
             private boolean allowDeepPretty = true;
 
+            // Links within a single graph, only while finding lists and nested objects
+            private LinkTable linkTable;
+
             protected BaseGraphWriter(Graph graph, Node graphName, DatasetGraph dsg) {
                 this.dsg = dsg;
                 this.graphName = graphName;
@@ -255,6 +586,7 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 this.nestedObjects = new HashSet<>();
                 this.nestedObjectsWritten = new HashSet<>();
                 this.freeBnodes = new HashSet<>();
+                this.sharedBnodes = new LinkedHashSet<>();
 
                 this.lists = new HashMap<>();
                 this.freeLists = new HashMap<>();
@@ -262,9 +594,12 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 this.listElts = new HashSet<>();
                 this.allowDeepPretty = true;
 
+                // Datasets are still searched, as links from other graphs count.
+                this.linkTable = (dsg == null) ? new LinkTable(graph) : null;
                 // Must be in this order.
                 findLists();
                 findBNodesSyntax1();
+                this.linkTable = null;
                 // Stop head of lists printed as triples going all the way to the
                 // good part.
                 nestedObjects.removeAll(listElts);
@@ -276,6 +611,42 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 this(graph, null, null);
             }
 
+            /**
+             * Fork a writer sharing the analysis of <code>parent</code>'s graph, to write some of its subjects with
+             * the enclosing {@link OrderedTurtleWriter$}.  The fork tracks the nested objects it writes separately.
+             */
+            protected BaseGraphWriter(BaseGraphWriter parent) {
+                this.dsg = parent.dsg;
+                this.graphName = parent.graphName;
+                this.graphNames = parent.graphNames;
+                this.graph = parent.graph;
+                this.nestedObjects = parent.nestedObjects;
+                this.nestedObjectsWritten = new HashSet<>();
+                this.freeBnodes = parent.freeBnodes;
+                this.sharedBnodes = parent.sharedBnodes;
+                this.lists = parent.lists;
+                this.freeLists = parent.freeLists;
+                this.nLinkedLists = parent.nLinkedLists;
+                this.listElts = parent.listElts;
+                this.allowDeepPretty = parent.allowDeepPretty;
+            }
+
+            /**
+             * @return whether this writer can be forked, so that its subjects may be formatted in parallel
+             */
+            protected boolean supportsParallel() {
+                return false;
+            }
+
+            /**
+             * Fork this writer to write to <code>out</code> with <code>nodeFmt</code>, typically by constructing the
+             * subclasses of {@link OrderedTurtleWriter$} and this class with their fork constructors.  Only called
+             * if {@link #supportsParallel()}.
+             */
+            protected BaseGraphWriter fork(IndentedWriter out, NodeFormatter nodeFmt) {
+                throw new UnsupportedOperationException(getClass().getName() + " cannot be forked");
+            }
+
             // Debug
             private void printDetails() {
                 printDetails("nestedObjects", nestedObjects);
@@ -318,6 +689,15 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
              * Get exactly one triple or null for none or more than one.
              */
             private Triple triple1(Node s, Node p, Node o) {
+                if (linkTable != null && s != null && o == null) {
+                    Links l = linkTable.get(s);
+                    if (RDF_First.equals(p)) {
+                        return l.firstOut == 1 ? Triple.create(s, p, l.first) : null;
+                    }
+                    if (RDF_Rest.equals(p)) {
+                        return l.restOut == 1 ? Triple.create(s, p, l.rest) : null;
+                    }
+                }
                 if (dsg != null) {
                     return RiotLib.triple1(dsg, s, p, o);
                 } else {
@@ -340,7 +720,21 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 return q.asTriple();
             }
 
+            /**
+             * While the graph is analysed, only distinguishes counts as far as {@link LinkTable} does
+             */
             private long countTriples(Node s, Node p, Node o) {
+                if (linkTable != null) {
+                    if (s == null && p == null && o != null) {
+                        return linkTable.get(o).in;
+                    }
+                    if (s == null && RDF_Rest.equals(p) && o != null) {
+                        return linkTable.get(o).restIn;
+                    }
+                    if (s != null && p == null && o == null) {
+                        return linkTable.get(s).out;
+                    }
+                }
                 if (dsg != null) {
                     return RiotLib.countTriples(dsg, s, p, o);
                 } else {
@@ -356,6 +750,9 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
              * returns 0,1,2 (where 2 really means "more than 1")
              */
             private int inLinks(Node obj) {
+                if (linkTable != null) {
+                    return linkTable.get(obj).in;
+                }
                 if (dsg != null) {
                     Iterator<Quad> iter = dsg.find(Node.ANY, Node.ANY, Node.ANY, obj);
                     return count012(iter);
@@ -483,7 +880,7 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
              * Object position (any level) - only used as object once anywhere in the dataset
              */
             private void findBNodesSyntax1() {
-                Set<Node> rejects = new HashSet<>(); // Nodes known not to meet the requirement.
+                Set<Node> rejects = sharedBnodes; // Nodes known not to meet the requirement.
 
                 ExtendedIterator<Triple> iter = find(Node.ANY, Node.ANY, Node.ANY);
                 try {
@@ -577,7 +974,6 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                     listCells.add(x);
 
                     // Try to move up the list.
-                    List<Triple> acc2 = triples(null, null, x);
                     long numRest = countTriples(null, RDF_Rest, x);
                     if (numRest != 1) {
                         // Head of well-formed list.
@@ -586,14 +982,13 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                         break;
                     }
                     // numRest == 1
-                    int numLinks = acc2.size();
-                    if (numLinks > 1) {
+                    Node linkingSubject = singleLinkingSubject(x);
+                    if (linkingSubject == null) {
                         // Non-list links to x
                         break;
                     }
                     // Valid.
-                    Triple tLink = acc2.get(0);
-                    x = tLink.getSubject();
+                    x = linkingSubject;
                 }
                 // Success.
                 listElts.addAll(listCells);
@@ -601,6 +996,22 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 return Pair.create(x, eltsReversed);
             }
 
+            /**
+             * Return the subject of the only triple linking to <code>x</code>, or null if there is more than one
+             */
+            private Node singleLinkingSubject(Node x) {
+                if (linkTable != null) {
+                    Links l = linkTable.get(x);
+                    // The only link is the rdf:rest link
+                    return l.in > 1 ? null : l.restSubject;
+                }
+                List<Triple> acc = triples(null, null, x);
+                if (acc.size() > 1) {
+                    return null;
+                }
+                return acc.get(0).getSubject();
+            }
+
             /**
              * Return the triples of the list element, or null if invalid list
              */
@@ -762,12 +1173,78 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
             }
 
             protected boolean writeBySubject(Iterator<Node> subjects, boolean somethingWritten) {
+                // subjects can only be formatted separately while each starts a line at the top level
+                if (pool == null || out.getCol() != 0 || out.getAbsoluteIndent() != 0 || out.hasLineNumbers()) {
+                    return writeSequentially(subjects, somethingWritten);
+                }
+                int batchSize = chunkSize * pool.getParallelism() * 4;
+                while (subjects.hasNext()) {
+                    List<Node> batch = new ArrayList<>(batchSize);
+                    while (subjects.hasNext() && batch.size() < batchSize) {
+                        batch.add(subjects.next());
+                    }
+                    somethingWritten = writeInParallel(batch, somethingWritten);
+                }
+                return somethingWritten;
+            }
+
+            private boolean writeSequentially(Iterator<Node> subjects, boolean somethingWritten) {
                 for (; subjects.hasNext(); ) {
                     somethingWritten = writeSingleSubject(subjects.next(), somethingWritten);
                 }
                 return somethingWritten;
             }
 
+            /**
+             * Allocate the labels of the shared blank nodes before any subject is written, so that subjects can be
+             * formatted in parallel looking labels up rather than allocating them.  Labels are numbered in the order
+             * found, or in the specified order if there is one.
+             */
+            protected void allocateLabels(Comparator<Node> order) {
+                List<Node> shared = new ArrayList<>(sharedBnodes);
+                if (order != null) {
+                    shared.sort(order);
+                }
+                Map<Node, String> labels = new HashMap<>();
+                shared.forEach(node -> labels.put(node, nodeToLabel.get(null, node)));
+                allocatedLabels = Collections.unmodifiableMap(labels);
+            }
+
+            // Format chunks of subjects into separate buffers on the pool, then write the buffers in order. Only the
+            // shared blank nodes are written by label here, and their labels are allocated before writing starts.
+            private boolean writeInParallel(List<Node> subjects, boolean somethingWritten) {
+                if (subjects.size() <= chunkSize || !supportsParallel()) {
+                    return writeSequentially(subjects.iterator(), somethingWritten);
+                }
+
+                List<Callable<Pair<String, Set<Node>>>> chunks = new ArrayList<>();
+                for (int from = 0; from < subjects.size(); from += chunkSize) {
+                    List<Node> chunk = subjects.subList(from, Math.min(from + chunkSize, subjects.size()));
+                    boolean separate = somethingWritten;
+                    chunks.add(() -> {
+                        IndentedLineBuffer buffer = new IndentedLineBuffer();
+                        BaseGraphWriter writer = fork(buffer, nodeFmt);
+                        writer.writeSequentially(chunk.iterator(), separate);
+                        return Pair.create(buffer.asString(), writer.nestedObjectsWritten);
+                    });
+                    for (Node subject : chunk) {
+                        somethingWritten |= !nestedObjects.contains(subject) && !listElts.contains(subject);
+                    }
+                }
+                for (Future<Pair<String, Set<Node>>> chunk : pool.invokeAll(chunks)) {
+                    try {
+                        out.print(chunk.get().getLeft());
+                        nestedObjectsWritten.addAll(chunk.get().getRight());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while formatting subjects", e);
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Unable to format subjects", e.getCause());
+                    }
+                }
+                return somethingWritten;
+            }
+
             // A Cluster is a collection of triples with the same subject.
             private void writeCluster(Node subject, Collection<Triple> cluster) {
                 if (cluster.isEmpty()) {
@@ -800,7 +1277,7 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 Collection<Node> predicates = pGroups.keySet();
 
                 // Find longest predicate URI
-                int predicateMaxWidth = RiotLib.calcWidth(prefixMap, baseURI, predicates, MIN_PREDICATE, LONG_PREDICATE);
+                int predicateMaxWidth = calcPredicateWidth(predicates);
 
                 boolean first = true;
 
@@ -897,10 +1374,10 @@ public abstract class AbstractTurtleWriter extends TurtleWriterBase {
                 }
                 int colPredicateStart = out.getAbsoluteIndent();
 
-                if (!prefixMap.contains(rdfNS) && RDF_type.equals(p)) {
+                if (writeTypeAsA && RDF_type.equals(p)) {
                     print("a");
                 } else {
-                    writeNode(p);
+                    writePredicateNode(p);
                 }
                 int colPredicateFinish = out.getCol();
                 int wPredicate = (colPredicateFinish - colPredicateStart);
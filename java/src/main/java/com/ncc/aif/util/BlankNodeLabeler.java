@@ -0,0 +1,374 @@
+/*
+ * Copyright 2019 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import org.apache.jena.graph.Node;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Canonical labels for the blank nodes of a graph or dataset.  Corresponding blank nodes of isomorphic inputs get the
+ * same label, however the inputs were built, and no two blank nodes get the same label.
+ * <p>
+ * Blank nodes linked by quads form components, each labeled on its own.  Each blank node of a component is colored by
+ * hash refinement: starting from a single color, a node's next color hashes its color with the sorted hashes of the
+ * quads it appears in, in which blank nodes are represented by their colors and other terms by their length-prefixed
+ * parts.  Refinement stops when it no longer splits any color.  While blank nodes still share a color, they are
+ * individualized by changing their colors, and refinement continues.  In a component without cycles, nodes that share
+ * a stable color are interchangeable by an automorphism, and those that also share a neighbor of a color of its own
+ * can be swapped independently, so all of them are individualized at once.  In a component with cycles, each node of
+ * a color is tried in turn, keeping the choice whose labeled quads hash least.  A blank node's label hashes the
+ * labeled quads of its component, the number of identical components labeled before it, and its color.
+ * <p>
+ * All quads involving blank nodes are held in memory while labels are computed.
+ */
+final class BlankNodeLabeler {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // 128 bits is plenty to keep distinct colors apart
+    private static final int COLOR_BYTES = 16;
+    private static final int SUBJECT = 0;
+    private static final int OBJECT = 2;
+    private static final int GRAPH = 3;
+    private static final int[] BLANK_ROLES = {SUBJECT, OBJECT, GRAPH};
+    // role of a quad hashed as a whole
+    private static final int WHOLE = -1;
+
+    private final MessageDigest digest;
+
+    private final List<Node> blanks = new ArrayList<>();
+    private final Map<Node, Integer> indexes = new HashMap<>();
+    private final List<Node[]> quads = new ArrayList<>();
+    // {quad, role} of each appearance of each blank node
+    private final List<List<int[]>> appearances = new ArrayList<>();
+    // union-find of the components of blank nodes linked by quads, and whether each root's component has a cycle
+    private final List<Integer> parents = new ArrayList<>();
+    private final List<Boolean> cyclic = new ArrayList<>();
+
+    BlankNodeLabeler() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform", e);
+        }
+    }
+
+    /**
+     * Add a quad, which is ignored unless it involves a blank node
+     *
+     * @param graph name of the quad's graph, or null for a triple or a quad of the default graph
+     */
+    void add(Node subject, Node predicate, Node object, Node graph) {
+        Node[] quad = {subject, predicate, object, graph};
+        List<Integer> linked = new ArrayList<>(BLANK_ROLES.length);
+        for (int role : BLANK_ROLES) {
+            Node node = quad[role];
+            if (node == null || !node.isBlank()) {
+                continue;
+            }
+            if (linked.isEmpty()) {
+                quads.add(quad);
+            }
+            int index = index(node);
+            appearances.get(index).add(new int[]{quads.size() - 1, role});
+            // link every pair, so that a quad of three blank nodes, or of one twice, counts as a cycle
+            for (int other : linked) {
+                link(other, index);
+            }
+            linked.add(index);
+        }
+    }
+
+    /**
+     * Compute the label of every blank node added, without the <code>_:</code> prefix
+     */
+    Map<Node, String> labels() {
+        String[] colors = new String[blanks.size()];
+        Arrays.fill(colors, "");
+        Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int i = 0; i < blanks.size(); i++) {
+            components.computeIfAbsent(root(i), key -> new ArrayList<>()).add(i);
+        }
+
+        // identical components are told apart by the number labeled before them, which may be counted in any order
+        Map<String, Integer> copies = new HashMap<>();
+        Map<Node, String> labels = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> component : components.entrySet()) {
+            List<Integer> members = component.getValue();
+            refine(colors, members);
+            String hash = distinguish(colors, members, quadsOf(members), cyclic.get(component.getKey()));
+            String copy = Integer.toString(copies.merge(hash, 1, Integer::sum));
+            for (int index : members) {
+                digest.reset();
+                update(hash);
+                update(copy);
+                update(colors[index]);
+                labels.put(blanks.get(index), hex(digest.digest()));
+            }
+        }
+        return labels;
+    }
+
+    private int index(Node node) {
+        Integer index = indexes.get(node);
+        if (index == null) {
+            index = blanks.size();
+            indexes.put(node, index);
+            blanks.add(node);
+            appearances.add(new ArrayList<>());
+            parents.add(index);
+            cyclic.add(false);
+        }
+        return index;
+    }
+
+    private int root(int index) {
+        int root = index;
+        while (parents.get(root) != root) {
+            root = parents.get(root);
+        }
+        // compress the path
+        while (parents.get(index) != root) {
+            int next = parents.get(index);
+            parents.set(index, root);
+            index = next;
+        }
+        return root;
+    }
+
+    // link two blank nodes of one quad; linking nodes already in one component closes a cycle
+    private void link(int a, int b) {
+        int rootA = root(a);
+        int rootB = root(b);
+        if (rootA == rootB) {
+            cyclic.set(rootA, true);
+        } else {
+            parents.set(rootB, rootA);
+            cyclic.set(rootA, cyclic.get(rootA) || cyclic.get(rootB));
+        }
+    }
+
+    private List<Node[]> quadsOf(List<Integer> component) {
+        Set<Integer> quadIndexes = new HashSet<>();
+        for (int index : component) {
+            for (int[] appearance : appearances.get(index)) {
+                quadIndexes.add(appearance[0]);
+            }
+        }
+        List<Node[]> componentQuads = new ArrayList<>(quadIndexes.size());
+        for (int quadIndex : quadIndexes) {
+            componentQuads.add(quads.get(quadIndex));
+        }
+        return componentQuads;
+    }
+
+    // Refine the colors of a component until refinement no longer splits any of them
+    private void refine(String[] colors, List<Integer> component) {
+        int count = distinct(colors, component);
+        while (true) {
+            String[] next = new String[component.size()];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = nextColor(colors, component.get(i));
+            }
+            for (int i = 0; i < next.length; i++) {
+                colors[component.get(i)] = next[i];
+            }
+            int nextCount = distinct(colors, component);
+            if (nextCount == count) {
+                return;
+            }
+            count = nextCount;
+        }
+    }
+
+    private static int distinct(String[] colors, List<Integer> component) {
+        Set<String> distinct = new HashSet<>();
+        for (int index : component) {
+            distinct.add(colors[index]);
+        }
+        return distinct.size();
+    }
+
+    private String nextColor(String[] colors, int index) {
+        List<int[]> nodeAppearances = appearances.get(index);
+        String[] hashes = new String[nodeAppearances.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            int[] appearance = nodeAppearances.get(i);
+            hashes[i] = hashQuad(colors, quads.get(appearance[0]), appearance[1]);
+        }
+        Arrays.sort(hashes);
+        digest.reset();
+        update(colors[index]);
+        for (String hash : hashes) {
+            update(hash);
+        }
+        return hex(digest.digest());
+    }
+
+    // hash of a quad as seen from the blank node in the specified role, or as a whole
+    private String hashQuad(String[] colors, Node[] quad, int role) {
+        digest.reset();
+        update(Integer.toString(role));
+        for (int i = 0; i < quad.length; i++) {
+            Node node = quad[i];
+            if (node == null) {
+                update("N");
+            } else if (node.isBlank()) {
+                update("B");
+                update(colors[indexes.get(node)]);
+            } else if (node.isURI()) {
+                update("U");
+                update(node.getURI());
+            } else if (node.isLiteral()) {
+                update("L");
+                update(node.getLiteralLexicalForm());
+                update(node.getLiteralLanguage());
+                update(node.getLiteralDatatypeURI());
+            } else {
+                update("O");
+                update(node.toString());
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Individualize the refined blank nodes of a component until no two share a color
+     *
+     * @return the hash of the component's labeled quads
+     */
+    private String distinguish(String[] colors, List<Integer> component, List<Node[]> componentQuads,
+                               boolean isCyclic) {
+        while (true) {
+            Map<String, List<Integer>> classes = new HashMap<>();
+            for (int index : component) {
+                classes.computeIfAbsent(colors[index], key -> new ArrayList<>()).add(index);
+            }
+            List<Integer> least = null;
+            String leastColor = null;
+            List<List<Integer>> swappable = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> entry : classes.entrySet()) {
+                List<Integer> tied = entry.getValue();
+                if (tied.size() < 2) {
+                    continue;
+                }
+                if (leastColor == null || entry.getKey().compareTo(leastColor) < 0) {
+                    least = tied;
+                    leastColor = entry.getKey();
+                }
+                if (!isCyclic && hasSingleNeighbor(colors, classes, tied.get(0))) {
+                    swappable.add(tied);
+                }
+            }
+            if (least == null) {
+                return hashQuads(colors, componentQuads);
+            }
+
+            if (!isCyclic) {
+                if (swappable.isEmpty()) {
+                    individualize(colors, least.get(0), "individualized");
+                } else {
+                    for (List<Integer> tied : swappable) {
+                        for (int i = 0; i < tied.size(); i++) {
+                            individualize(colors, tied.get(i), Integer.toString(i));
+                        }
+                    }
+                }
+                refine(colors, component);
+                continue;
+            }
+
+            // the choice may matter, so keep the one whose labeled quads hash least
+            String[] best = null;
+            String bestHash = null;
+            for (int index : least) {
+                String[] candidate = colors.clone();
+                individualize(candidate, index, "individualized");
+                refine(candidate, component);
+                String hash = distinguish(candidate, component, componentQuads, true);
+                if (bestHash == null || hash.compareTo(bestHash) < 0) {
+                    best = candidate;
+                    bestHash = hash;
+                }
+            }
+            for (int index : component) {
+                colors[index] = best[index];
+            }
+            return bestHash;
+        }
+    }
+
+    // whether a blank node shares a quad with a blank node whose color no other node of its component has
+    private boolean hasSingleNeighbor(String[] colors, Map<String, List<Integer>> classes, int index) {
+        for (int[] appearance : appearances.get(index)) {
+            Node[] quad = quads.get(appearance[0]);
+            for (int role : BLANK_ROLES) {
+                Node node = quad[role];
+                if (role != appearance[1] && node != null && node.isBlank()
+                        && classes.get(colors[indexes.get(node)]).size() == 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void individualize(String[] colors, int index, String mark) {
+        digest.reset();
+        update(colors[index]);
+        update(mark);
+        colors[index] = hex(digest.digest());
+    }
+
+    private String hashQuads(String[] colors, List<Node[]> componentQuads) {
+        String[] hashes = new String[componentQuads.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hashQuad(colors, componentQuads.get(i), WHOLE);
+        }
+        Arrays.sort(hashes);
+        digest.reset();
+        for (String hash : hashes) {
+            update(hash);
+        }
+        return hex(digest.digest());
+    }
+
+    // Prefix each string with its length so that the boundaries between strings are part of the hash
+    private void update(String part) {
+        byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        digest.update(bytes);
+    }
+
+    private static String hex(byte[] hash) {
+        char[] hex = new char[COLOR_BYTES * 2];
+        for (int i = 0; i < COLOR_BYTES; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.common.io.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of KBs and reports, chosen by file name suffix (<code>.gz</code> or <code>.zst</code>).  Output is
+ * compressed in parallel: gzip as independently compressed blocks, and Zstandard with its own worker threads.  Either
+ * is read back by the usual command-line tools.
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int GZIP_LEVEL = 6;
+    private static final int ZSTD_LEVEL = 3;
+    // Compressed bytes read to estimate the decompressed size of a file
+    private static final long SAMPLE_SIZE = 4 << 20;
+
+    private final String suffix;
+
+    Compression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return the file name suffix of this compression, such as <code>.gz</code>, or an empty string for none
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * @return the compression indicated by the suffix of <code>fileName</code>, or {@link #NONE}
+     */
+    public static Compression forFileName(String fileName) {
+        for (Compression compression : values()) {
+            if (compression != NONE && fileName.endsWith(compression.suffix)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return <code>fileName</code> without its compression suffix, such as <code>KB.ttl</code> for
+     * <code>KB.ttl.gz</code>
+     */
+    public static String stripSuffix(String fileName) {
+        Compression compression = forFileName(fileName);
+        return fileName.substring(0, fileName.length() - compression.suffix.length());
+    }
+
+    /**
+     * Compress everything written to the returned stream to <code>out</code>, in parallel on the common pool.
+     * Closing the returned stream finishes compression and closes <code>out</code>.
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+        return compress(out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compress everything written to the returned stream to <code>out</code>.  Closing the returned stream finishes
+     * compression and closes <code>out</code>.
+     *
+     * @param pool pool on which to compress gzip blocks; its parallelism is also the number of Zstandard workers
+     */
+    public OutputStream compress(OutputStream out, ForkJoinPool pool) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new ParallelGzipOutputStream(out, pool, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, GZIP_LEVEL);
+            case ZSTD:
+                ZstdOutputStream zstd = new ZstdOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), ZSTD_LEVEL);
+                if (pool.getParallelism() > 1) {
+                    zstd.setWorkers(pool.getParallelism());
+                }
+                return zstd;
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * @return a stream of the data decompressed from <code>in</code>; closing it closes <code>in</code>
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD:
+                return new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Open <code>path</code> for writing, compressed as its suffix indicates
+     */
+    public static OutputStream newOutputStream(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        try {
+            return forFileName(path.toString()).compress(out);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Estimate the size of <code>path</code> once decompressed as its suffix indicates.  Files that are not
+     * compressed, or whose first few megabytes decompress completely, are measured exactly; for larger ones, the
+     * compression ratio of the first few megabytes is applied to the whole file.
+     *
+     * @return the (estimated) decompressed size in bytes
+     */
+    public static long estimateUncompressedSize(Path path) throws IOException {
+        long size = Files.size(path);
+        Compression compression = forFileName(path.toString());
+        if (compression == NONE) {
+            return size;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (CountingInputStream compressed = new CountingInputStream(Files.newInputStream(path));
+             InputStream in = compression.decompress(compressed)) {
+            long decompressed = 0;
+            for (int read; compressed.getCount() < SAMPLE_SIZE; decompressed += read) {
+                read = in.read(buffer);
+                if (read < 0) {
+                    return decompressed;
+                }
+            }
+            double ratio = (double) decompressed / compressed.getCount();
+            return (long) Math.min(Long.MAX_VALUE, ratio * size);
+        }
+    }
+
+    /**
+     * Open <code>path</code> for reading, decompressed as its suffix indicates
+     */
+    public static InputStream newInputStream(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try {
+            return forFileName(path.toString()).decompress(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+}
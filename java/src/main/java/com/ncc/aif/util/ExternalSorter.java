@@ -0,0 +1,351 @@
+/*
+ * Copyright 2018 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts more records than fit in memory.  Records are buffered until <code>runSize</code> have been added, then sorted
+ * and spilled to a run file; {@link #sorted()} merges the runs with whatever is still buffered.  The sort is stable:
+ * records that compare equal are returned in the order they were added, so a sorter whose order ranks all records
+ * equally simply spills them and plays them back.  At most <code>fanIn</code> runs are read at once, so that the
+ * number of open files stays bounded however many records are sorted; when there are more, groups of runs are first
+ * merged into longer runs.  Run files are deleted when the sorter is closed.
+ */
+public final class ExternalSorter<T> implements Closeable {
+    /**
+     * Writes records to, and reads them back from, run files.
+     */
+    public interface Codec<T> {
+        void write(DataOutput out, T record) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    /**
+     * The number of runs merged at once by default
+     */
+    public static final int DEFAULT_FAN_IN = 64;
+
+    private final Codec<T> codec;
+    private final Comparator<? super T> order;
+    private final int runSize;
+    private final int fanIn;
+    private final Path directory;
+    private final List<T> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Closeable> readers = new ArrayList<>();
+    private long size = 0;
+
+    public ExternalSorter(Codec<T> codec, Comparator<? super T> order, int runSize, Path directory) {
+        this(codec, order, runSize, DEFAULT_FAN_IN, directory);
+    }
+
+    public ExternalSorter(Codec<T> codec, Comparator<? super T> order, int runSize, int fanIn, Path directory) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive.");
+        }
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("Fan-in must be at least two.");
+        }
+        this.codec = codec;
+        this.order = order;
+        this.runSize = runSize;
+        this.fanIn = fanIn;
+        this.directory = directory;
+    }
+
+    public void add(T record) {
+        buffer.add(record);
+        size++;
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the number of records added
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Return all records added, in order.  No more records may be added afterwards.
+     */
+    public Iterator<T> sorted() {
+        buffer.sort(order);
+        if (runs.isEmpty()) {
+            return buffer.iterator();
+        }
+        // leave room for the buffer in the final merge
+        while (runs.size() >= fanIn) {
+            mergePass();
+        }
+        List<Iterator<T>> sources = new ArrayList<>();
+        for (Path run : runs) {
+            RunIterator source = new RunIterator(run);
+            readers.add(source);
+            sources.add(source);
+        }
+        sources.add(buffer.iterator());
+        return merge(sources, order);
+    }
+
+    // Merge each group of fanIn consecutive runs into one, which keeps equal records in the order they were added
+    private void mergePass() {
+        List<Path> merged = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i += fanIn) {
+                List<Path> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+            }
+        } catch (RuntimeException e) {
+            // so that close() removes the runs merged so far
+            runs.addAll(merged);
+            throw e;
+        }
+        runs.clear();
+        runs.addAll(merged);
+    }
+
+    private Path mergeRuns(List<Path> group) {
+        List<RunIterator> sources = new ArrayList<>(group.size());
+        Path run = null;
+        try {
+            long count = 0;
+            for (Path source : group) {
+                RunIterator iterator = new RunIterator(source);
+                sources.add(iterator);
+                count += iterator.remaining;
+            }
+            run = Files.createTempFile(directory, "aif-sort-", ".run");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                out.writeLong(count);
+                Iterator<T> records = merge(sources, order);
+                while (records.hasNext()) {
+                    codec.write(out, records.next());
+                }
+            }
+            for (RunIterator source : sources) {
+                source.close();
+            }
+            for (Path source : group) {
+                Files.delete(source);
+            }
+            return run;
+        } catch (IOException e) {
+            for (RunIterator source : sources) {
+                source.closeQuietly();
+            }
+            if (run != null) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException("Unable to merge sorted runs in " + directory, e);
+        }
+    }
+
+    /**
+     * Merge sorted sources, taking records that compare equal from earlier sources first
+     */
+    static <T> Iterator<T> merge(List<? extends Iterator<T>> sources, Comparator<? super T> order) {
+        return new MergeIterator<>(sources, order);
+    }
+
+    private void spill() {
+        buffer.sort(order);
+        try {
+            Path run = Files.createTempFile(directory, "aif-sort-", ".run");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                out.writeLong(buffer.size());
+                for (T record : buffer) {
+                    codec.write(out, record);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to spill sorted run to " + directory, e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        buffer.clear();
+        try {
+            for (Closeable reader : readers) {
+                reader.close();
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to remove sorted runs from " + directory, e);
+        } finally {
+            readers.clear();
+            runs.clear();
+        }
+    }
+
+    // Strings are written with their length, since DataOutput.writeUTF is limited to 64K
+    static void writeString(DataOutput out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the records of one run back in order
+     */
+    private class RunIterator implements Iterator<T>, Closeable {
+        private final DataInputStream in;
+        private long remaining;
+
+        private RunIterator(Path run) {
+            DataInputStream opened = null;
+            try {
+                opened = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+                remaining = opened.readLong();
+            } catch (IOException e) {
+                if (opened != null) {
+                    try {
+                        opened.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw new UncheckedIOException("Unable to read sorted run " + run, e);
+            }
+            in = opened;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void closeQuietly() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // already failing
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            try {
+                return codec.read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read sorted run", e);
+            }
+        }
+    }
+
+    /**
+     * Merges sorted sources, taking equal records from earlier sources first
+     */
+    private static final class MergeIterator<T> implements Iterator<T> {
+        private final PriorityQueue<Head<T>> heads;
+
+        private MergeIterator(List<? extends Iterator<T>> sources, Comparator<? super T> order) {
+            heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int cmp = order.compare(a.record, b.record);
+                return cmp != 0 ? cmp : Integer.compare(a.index, b.index);
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                advance(sources.get(i), i);
+            }
+        }
+
+        private void advance(Iterator<T> source, int index) {
+            if (source.hasNext()) {
+                heads.add(new Head<>(source.next(), source, index));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            Head<T> head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            advance(head.source, head.index);
+            return head.record;
+        }
+    }
+
+    private static final class Head<T> {
+        private final T record;
+        private final Iterator<T> source;
+        private final int index;
+
+        private Head(T record, Iterator<T> source, int index) {
+            this.record = record;
+            this.source = source;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Reads and writes KBs in the format indicated by their file names: Turtle (<code>.ttl</code>), or binary RDF Thrift
+ * (<code>.rt</code> or <code>.trdf</code>), which is several times faster to load than Turtle.  Any of these may be
+ * compressed, as {@link Compression} describes (for example, <code>KB.rt.zst</code>).
+ */
+public final class KBFiles {
+    private static final String BASE_URI = "urn:x-base";
+
+    private KBFiles() {
+    }
+
+    /**
+     * @return the RDF language of the KB named <code>fileName</code>, or null if it is not named as a KB
+     */
+    public static Lang getLang(String fileName) {
+        Lang lang = RDFLanguages.filenameToLang(Compression.stripSuffix(fileName));
+        return Lang.TURTLE.equals(lang) || Lang.RDFTHRIFT.equals(lang) ? lang : null;
+    }
+
+    /**
+     * @return whether <code>fileName</code> is named as a (possibly compressed) Turtle or RDF Thrift KB
+     */
+    public static boolean isKB(String fileName) {
+        return getLang(fileName) != null;
+    }
+
+    /**
+     * @return <code>path</code> without its format and compression suffixes, such as <code>KB</code> for
+     * <code>KB.ttl.gz</code>, from which to name files derived from the KB
+     */
+    public static String stripSuffixes(String path) {
+        String uncompressed = Compression.stripSuffix(path);
+        Lang lang = getLang(uncompressed);
+        if (lang != null) {
+            for (String extension : lang.getFileExtensions()) {
+                if (uncompressed.endsWith("." + extension)) {
+                    return uncompressed.substring(0, uncompressed.length() - extension.length() - 1);
+                }
+            }
+        }
+        return uncompressed;
+    }
+
+    /**
+     * Read the KB at <code>path</code> into <code>model</code>, as Turtle unless its name indicates otherwise
+     */
+    public static void read(Model model, Path path) throws IOException {
+        Lang lang = getLang(path.toString());
+        try (InputStream in = Compression.newInputStream(path)) {
+            RDFDataMgr.read(model, in, BASE_URI, lang == null ? Lang.TURTLE : lang);
+        }
+    }
+
+    /**
+     * Parse the KB at <code>path</code> into <code>sink</code>, as Turtle unless its name indicates otherwise, without
+     * holding its triples in memory
+     */
+    public static void parse(Path path, StreamRDF sink) throws IOException {
+        Lang lang = getLang(path.toString());
+        try (InputStream in = Compression.newInputStream(path)) {
+            RDFParser.source(in).base(BASE_URI).lang(lang == null ? Lang.TURTLE : lang).parse(sink);
+        }
+    }
+
+    /**
+     * Write <code>model</code> to <code>path</code>, as Turtle unless its name indicates otherwise.  Turtle is written
+     * with {@link AIFOrderedTurtleWriter}.
+     */
+    public static void write(Model model, Path path) throws IOException {
+        Lang lang = getLang(path.toString());
+        if (lang == null || Lang.TURTLE.equals(lang)) {
+            new AIFOrderedTurtleWriter().write(path, model);
+        } else {
+            try (OutputStream out = Compression.newOutputStream(path)) {
+                RDFDataMgr.write(out, model, lang);
+            }
+        }
+    }
+}
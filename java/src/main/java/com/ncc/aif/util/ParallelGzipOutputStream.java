@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Next Century Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ncc.aif.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip stream that compresses fixed-size blocks in parallel, each as a separate gzip member, and writes them in order.
+ * Concatenated members are a single valid gzip file (RFC 1952), read by <code>gunzip</code> and
+ * {@link java.util.zip.GZIPInputStream} as if compressed in one piece, at a slight cost in size.
+ * <p>
+ * Like {@link GZIPOutputStream}, {@link #flush()} does not compress a partly filled block, so data is only complete
+ * once the stream is closed.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private final int level;
+    // Blocks being compressed, in order, bounded so that memory use does not grow with the output
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private byte[] block;
+    private int position = 0;
+    private boolean written = false;
+    private boolean closed = false;
+
+    ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, int blockSize, int level) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive.");
+        }
+        this.out = out;
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxPending = 2 * pool.getParallelism();
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[position++] = (byte) b;
+        if (position == blockSize) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, blockSize - position);
+            System.arraycopy(bytes, offset, block, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+            if (position == blockSize) {
+                submit();
+            }
+        }
+    }
+
+    private void submit() throws IOException {
+        final byte[] data = block;
+        final int length = position;
+        pending.add(pool.submit(() -> compress(data, length)));
+        written = true;
+        block = new byte[blockSize];
+        position = 0;
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+    private byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 1 << 16) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data, 0, length);
+        }
+        return member.toByteArray();
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.remove().get());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("Unable to compress block", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // An empty file is not valid gzip, so always write at least one member
+            if (position > 0 || !written) {
+                submit();
+            }
+            flush();
+        } finally {
+            pending.forEach(future -> future.cancel(false));
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.ncc.aif;
+
+import static com.ncc.aif.AIFUtils.makeClusterWithPrototype;
+import static com.ncc.aif.AIFUtils.makeEntity;
+import static com.ncc.aif.AIFUtils.makeEvent;
+import static com.ncc.aif.AIFUtils.makeSystemWithURI;
+import static com.ncc.aif.AIFUtils.markAsArgument;
+import static com.ncc.aif.AIFUtils.markAsPossibleClusterMember;
+import static com.ncc.aif.AIFUtils.markImageJustification;
+import static com.ncc.aif.AIFUtils.markName;
+import static com.ncc.aif.AIFUtils.markTextJustification;
+import static com.ncc.aif.AIFUtils.markType;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.ncc.aif.AIFReader.ClaimView;
+import com.ncc.aif.AIFReader.ClusterView;
+import com.ncc.aif.AIFReader.EntityView;
+import com.ncc.aif.AIFReader.EventView;
+import com.ncc.aif.AIFReader.JustificationView;
+import com.ncc.aif.AIFUtils.BoundingBox;
+import com.ncc.aif.AIFUtils.Point;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+/**
+ * Checks that {@link AIFReader} views read back what {@link AIFUtils} and {@link Claim} wrote.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AIFReaderTest {
+    private static final String NS = "https://github.com/NextCenturyCorporation/AIDA-Interchange-Format/LdcAnnotations#";
+
+    private Model model;
+    private Resource system;
+    private Resource entity;
+    private Resource event;
+    private Resource cluster;
+    private Resource claim;
+    private AIFReader reader;
+
+    @BeforeAll
+    void setup() {
+        model = ModelFactory.createDefaultModel();
+        system = makeSystemWithURI(model, NS + "system");
+        entity = makeEntity(model, NS + "entity", system);
+        markName(entity, "Vladimir Putin");
+        Resource typeAssertion = markType(model, NS + "type", entity, LDCOntologyM36.PER, system, 1.0);
+        markTextJustification(model, typeAssertion, "doc", 10, 24, system, 0.9);
+        markImageJustification(model, entity, "image", new BoundingBox(new Point(1, 2), new Point(3, 4)), system, 0.8);
+        makeEntity(model, NS + "other", system);
+
+        event = makeEvent(model, NS + "event", system);
+        markType(model, NS + "eventType", event, LDCOntologyM36.Conflict_Attack, system, 1.0);
+        markAsArgument(model, event, LDCOntologyM36.Conflict_Attack_Attacker, entity, system, 0.7);
+
+        cluster = makeClusterWithPrototype(model, NS + "cluster", entity, "Putin", system);
+        markAsPossibleClusterMember(model, model.createResource(NS + "other"), cluster, 0.6, system);
+
+        Resource claimer = new ClaimComponent().setName("Some Agency").setIdentity("Q37230")
+                .addType("Q47913").addToModel(model, NS + "claimer", system);
+        claim = new Claim().setClaimId("claim-1").setSourceDocument("doc").setTopic("topic").setSubtopic("subtopic")
+                .setClaimTemplate("X attacked").setNaturalLanguageDescription("Claimer says X attacked")
+                .setClaimer(claimer).addClaimSementics(event).addAssociatedKE(cluster).setImportance(0.5)
+                .addIdenticalClaim("claim-2").addToModel(model, NS + "claim", system);
+
+        reader = new AIFReader(model);
+    }
+
+    @Test
+    void streamsEachType() {
+        try (Stream<EntityView> entities = reader.entities()) {
+            assertEquals(ImmutableSet.of(entity.getURI(), NS + "other"),
+                    entities.map(EntityView::getUri).collect(Collectors.toSet()));
+        }
+        assertEquals(ImmutableList.of(reader.event(event)), reader.events().collect(Collectors.toList()));
+        assertEquals(ImmutableList.of(reader.cluster(cluster)), reader.clusters().collect(Collectors.toList()));
+        assertEquals(ImmutableList.of(reader.claim(claim)), reader.claims().collect(Collectors.toList()));
+    }
+
+    @Test
+    void readsEntity() {
+        EntityView view = reader.entity(entity);
+        assertEquals(system, view.getSystem());
+        assertEquals(ImmutableList.of("Vladimir Putin"), view.getNames());
+        assertEquals(ImmutableList.of(model.createResource(NS + "type")), view.getTypeAssertions());
+        assertEquals(ImmutableList.of(LDCOntologyM36.PER), view.getTypes());
+        assertEquals(ImmutableList.of(reader.cluster(cluster)), view.getClusters());
+
+        List<JustificationView> typeJustifications = view.getTypeJustifications();
+        assertEquals(1, typeJustifications.size());
+        JustificationView text = typeJustifications.get(0);
+        assertEquals(InterchangeOntology.TextJustification, text.getJustificationType());
+        assertEquals("doc", text.getSource());
+        assertEquals(10, text.getStartOffset());
+        assertEquals(24, text.getEndOffsetInclusive());
+        assertEquals(ImmutableList.of(0.9), text.getConfidences());
+        assertNull(text.getBoundingBox());
+
+        List<JustificationView> justifications = view.getJustifications();
+        assertEquals(1, justifications.size());
+        BoundingBox box = justifications.get(0).getBoundingBox();
+        assertEquals(1, box.getUpperLeft().getX());
+        assertEquals(4, box.getLowerRight().getY());
+        assertNull(justifications.get(0).getStartOffset());
+    }
+
+    @Test
+    void readsEventArgumentsAndCluster() {
+        EventView view = reader.event(event);
+        assertEquals(ImmutableList.of(LDCOntologyM36.Conflict_Attack), view.getTypes());
+        assertEquals(ImmutableList.of(entity), view.getArguments().get(LDCOntologyM36.Conflict_Attack_Attacker));
+        assertEquals(1, view.getArguments().size());
+
+        ClusterView clusterView = reader.cluster(cluster);
+        assertEquals(entity, clusterView.getPrototype());
+        assertEquals("Putin", clusterView.getHandle());
+        assertEquals(ImmutableSet.of(entity, model.createResource(NS + "other")),
+                ImmutableSet.copyOf(clusterView.getMembers()));
+    }
+
+    @Test
+    void readsClaim() {
+        ClaimView view = reader.claim(claim);
+        assertEquals("claim-1", view.getClaimId());
+        assertEquals("topic", view.getTopic());
+        assertEquals(0.5, view.getImportance());
+        assertEquals(model.createResource(NS + "claimer"), view.getClaimer());
+        assertEquals(InterchangeOntology.EpistemicUnknown, view.getEpistemic());
+        assertEquals(ImmutableList.of(event), view.getClaimSemantics());
+        assertEquals(ImmutableList.of(cluster), view.getAssociatedKEs());
+        assertEquals(ImmutableList.of("claim-2"), view.getIdenticalClaims());
+        assertTrue(view.getRefutingClaims().isEmpty());
+        assertNull(view.getQueryId());
+    }
+}
@@ -39,16 +39,24 @@ import static com.ncc.aif.AIFUtils.markShotVideoJustification;
 import static com.ncc.aif.AIFUtils.markTextJustification;
 import static com.ncc.aif.AIFUtils.markTextValue;
 import static com.ncc.aif.AIFUtils.markType;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.collect.ImmutableList;
@@ -64,6 +72,7 @@ import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
@@ -199,6 +208,154 @@ public class ExamplesAndValidationTest {
                         utils.testValid("Create Entity and add a valid semantic attribute: aida:Generic");
                 }
 
+                @Test
+                void createEntitiesInBatch() {
+                        final List<AIFBatch.KE> kes = new ArrayList<>();
+                        for (int i = 0; i < 3; i++) {
+                                kes.add(AIFBatch.KE.entity(utils.getUri("E781167.0040" + i))
+                                                .setType(SeedlingOntology.Person, 0.9)
+                                                .setTypeAssertionUri(utils.getAssertionUri())
+                                                .addJustification(new AIFBatch.TextSpan(utils.getDocumentName(),
+                                                                10 * i, 10 * i + 5, 0.8)));
+                        }
+                        AIFBatch.makeKEs(model, kes, system);
+
+                        // the batch makes what AIFUtils would, one call at a time
+                        final Model expected = ModelFactory.createDefaultModel();
+                        makeSystemWithURI(expected, system.getURI());
+                        for (AIFBatch.KE ke : kes) {
+                                final Resource entity = makeEntity(expected, ke.getUri(), system);
+                                final Resource typeAssertion = markType(expected, ke.getTypeAssertion().getURI(),
+                                                entity, ke.getType(), system, 0.9);
+                                final AIFBatch.TextSpan span = ke.getJustifications().get(0);
+                                markTextJustification(expected, typeAssertion, span.getDocId(), span.getStartOffset(),
+                                                span.getEndOffsetInclusive(), system, span.getConfidence());
+                        }
+                        assertTrue(model.isIsomorphicWith(expected));
+
+                        utils.testValid("Create entities with type assertions and justifications in a batch");
+                }
+
+                @Test
+                void createJustificationsWithSharedNodes() {
+                        AIFUtils.enableInterning(model);
+                        final BoundingBox boundingBox = new BoundingBox(new Point(123, 45), new Point(167, 98));
+                        for (int i = 0; i < 3; i++) {
+                                final Resource entity = makeEntity(model, utils.getUri("E781167.0041" + i), system);
+                                final Resource typeAssertion = markType(model, utils.getAssertionUri(), entity,
+                                                SeedlingOntology.Person, system, 1.0);
+                                markImageJustification(model, typeAssertion, utils.getDocumentName(), boundingBox,
+                                                system, 1.0);
+                        }
+
+                        // one confidence of 1.0 and one bounding box, shared by every assertion and justification
+                        assertEquals(1, model.listSubjectsWithProperty(RDF.type, InterchangeOntology.Confidence)
+                                        .toList().size());
+                        assertEquals(1, model.listSubjectsWithProperty(RDF.type, InterchangeOntology.BoundingBox)
+                                        .toList().size());
+                        AIFUtils.disableInterning(model);
+
+                        utils.testValid("Create justifications sharing confidence and bounding box nodes");
+                }
+
+                @Test
+                void createSharedJustifications() {
+                        AIFUtils.enableJustificationSharing(model);
+                        final String docId = utils.getDocumentName();
+                        final List<Resource> typeAssertions = new ArrayList<>();
+                        for (int i = 0; i < 3; i++) {
+                                final Resource entity = makeEntity(model, utils.getUri("E781167.0042" + i), system);
+                                typeAssertions.add(markType(model, utils.getAssertionUri(), entity,
+                                                SeedlingOntology.Person, system, 1.0));
+                        }
+                        final Resource justification = makeTextJustification(model, docId, 42, 143, system,
+                                        0.973);
+                        markJustification(typeAssertions, justification);
+                        for (Resource typeAssertion : typeAssertions) {
+                                assertEquals(justification, markTextJustification(model, typeAssertion, docId, 42,
+                                                143, system, 0.973));
+                        }
+                        // a different confidence makes a different justification
+                        final Resource lessConfident = markTextJustification(model, typeAssertions, docId,
+                                        42, 143, system, 0.5);
+                        AIFUtils.disableJustificationSharing(model);
+
+                        assertNotEquals(justification, lessConfident);
+                        assertEquals(2, model.listSubjectsWithProperty(RDF.type, InterchangeOntology.TextJustification)
+                                        .toList().size());
+
+                        utils.testValid("Create type assertions sharing one text justification");
+                }
+
+                @Test
+                void createSharedJustificationsInBatch() {
+                        AIFUtils.enableJustificationSharing(model);
+                        final String docId = utils.getDocumentName();
+                        final Resource justification = makeTextJustification(model, docId, 42, 143, system,
+                                        0.973);
+                        final List<AIFBatch.KE> kes = new ArrayList<>();
+                        for (int i = 0; i < 3; i++) {
+                                kes.add(AIFBatch.KE.entity(utils.getUri("E781167.0043" + i))
+                                                .setType(SeedlingOntology.Person, 1.0)
+                                                .setTypeAssertionUri(utils.getAssertionUri())
+                                                .addJustification(new AIFBatch.TextSpan(docId, 42, 143, 0.973)));
+                        }
+                        AIFBatch.makeKEs(model, kes, system);
+                        final List<Resource> typeAssertions = new ArrayList<>();
+                        for (AIFBatch.KE ke : kes) {
+                                typeAssertions.add(ke.getTypeAssertion());
+                        }
+                        final List<Resource> marked = AIFBatch.markTextJustifications(model, typeAssertions,
+                                        Collections.nCopies(3, new AIFBatch.TextSpan(docId, 42, 143, 0.973)), system);
+                        AIFUtils.disableJustificationSharing(model);
+
+                        // the batch shares the justification made one call at a time
+                        assertEquals(Collections.nCopies(3, justification), marked);
+                        for (Resource typeAssertion : typeAssertions) {
+                                assertEquals(Collections.singletonList(justification),
+                                                typeAssertion.listProperties(InterchangeOntology.justifiedBy)
+                                                                .mapWith(Statement::getObject).toList());
+                        }
+                        assertEquals(1, model.listSubjectsWithProperty(RDF.type, InterchangeOntology.TextJustification)
+                                        .toList().size());
+
+                        utils.testValid("Create type assertions in a batch sharing one text justification");
+                }
+
+                @Test
+                void createResourcesWithGeneratedIris() {
+                        // hashed IRIs are the same in every run, so resources made without a URI can be compared
+                        // between runs
+                        AIFUtils.setIriGenerator(model, IriGenerator.contentHash(utils.getUri("generated"), "seed"));
+                        final Resource entity = makeEntity(model, null, system);
+                        final Resource typeAssertion = markType(model, null, entity, SeedlingOntology.Person,
+                                        system, 1.0);
+                        final Resource justification = markTextJustification(model, typeAssertion,
+                                        utils.getDocumentName(), 42, 143, system, 0.973);
+                        AIFUtils.setIriGenerator(model, null);
+
+                        assertTrue(entity.isURIResource());
+                        assertTrue(typeAssertion.isURIResource());
+                        assertTrue(justification.isURIResource());
+                        assertTrue(justification.getPropertyResourceValue(InterchangeOntology.confidence).isAnon());
+                        final HashIriGenerator rerun = IriGenerator.contentHash(utils.getUri("generated"), "seed");
+                        assertEquals(entity.getURI(), rerun.nextIri(InterchangeOntology.Entity));
+                        assertEquals(typeAssertion.getURI(), rerun.nextIri(RDF.Statement));
+                        // naming a resource by content never reuses an IRI named by type and sequence
+                        assertNotEquals(entity.getURI(), rerun.iriFor(InterchangeOntology.Entity.getURI(), "0"));
+
+                        // time-ordered IRIs sort in the order in which they were made
+                        final IriGenerator timeOrdered = IriGenerator.timeOrdered(utils.getUri("generated"));
+                        String previous = timeOrdered.nextIri();
+                        for (int i = 0; i < 1000; i++) {
+                                final String next = timeOrdered.nextIri();
+                                assertTrue(previous.compareTo(next) < 0, previous + " sorts after " + next);
+                                previous = next;
+                        }
+
+                        utils.testValid("Create resources with generated IRIs");
+                }
+
                 /**
                  * END - Test Valid Attributes
                  */
@@ -472,6 +629,32 @@ public class ExamplesAndValidationTest {
                                         + "justification and vector");
                 }
 
+                @Test
+                void createSeedlingEntityWithCompactVectors() throws JsonProcessingException {
+                        final Resource putin = makeEntity(model, putinDocumentEntityUri, system);
+                        markType(model, utils.getAssertionUri(), putin, SeedlingOntology.Person, system, 1.0);
+
+                        // large vectors, such as embeddings, are much smaller and faster to read when stored as
+                        // floats or doubles rather than as a JSON list
+                        final float[] embedding = {2.0f, 7.5f, 0.2f, 8.1f};
+                        markPrivateData(model, putin, utils.getUri("testSystem-personEmbedding"), embedding, system);
+                        final double[] precise = {Math.PI, -Math.E};
+                        markPrivateData(model, putin, utils.getUri("testSystem-personVector"), precise, system);
+                        markPrivateData(model, putin, utils.getUri("testSystem-personList"),
+                                        Arrays.asList(2.0, 7.5), system);
+
+                        final Map<String, AIFUtils.PrivateDataVector> vectors = new HashMap<>();
+                        AIFUtils.getPrivateDataVectors(putin).forEach(v -> vectors.put(v.getVectorType(), v));
+                        assertEquals(3, vectors.size());
+                        assertArrayEquals(embedding,
+                                        vectors.get(utils.getUri("testSystem-personEmbedding")).toFloatArray());
+                        assertArrayEquals(precise, vectors.get(utils.getUri("testSystem-personVector")).toDoubleArray());
+                        assertArrayEquals(new double[]{2.0, 7.5},
+                                        vectors.get(utils.getUri("testSystem-personList")).toDoubleArray());
+
+                        utils.testValid("create a seedling entity of type person with compact vectors");
+                }
+
                 @Test
                 void createSeedlingEntityWithAlternateNames() {
                         // assign alternate names to the putin entity
@@ -0,0 +1,476 @@
+package com.ncc.aif;
+
+import static com.ncc.aif.AIFUtils.addStandardNamespaces;
+import static com.ncc.aif.AIFUtils.makeEntity;
+import static com.ncc.aif.AIFUtils.makeEvent;
+import static com.ncc.aif.AIFUtils.makeSystemWithURI;
+import static com.ncc.aif.AIFUtils.markAsArgument;
+import static com.ncc.aif.AIFUtils.markTextJustification;
+import static com.ncc.aif.AIFUtils.markType;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import com.ncc.aif.util.AIFOrderedTurtleWriter;
+import com.ncc.aif.util.KBFiles;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.shared.ClosedException;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the alternative graph implementations used for validation answer queries exactly as Jena's
+ * in-memory graph does, and that validating against them produces the same results.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ModelStorageTest {
+    private static final String NS = "https://github.com/NextCenturyCorporation/AIDA-Interchange-Format/LdcAnnotations#";
+
+    private ValidateAIF validator;
+    private Model valid;
+    private Model invalid;
+
+    @BeforeAll
+    void setup() {
+        validator = ValidateAIF.createForLDCOntology(ValidateAIF.Restriction.NONE);
+        valid = createModel(true);
+        invalid = createModel(false);
+    }
+
+    // Create a small KB with an event, its arguments, and justifications. If not valid, the event's type is not in
+    // the domain ontology.
+    private static Model createModel(boolean valid) {
+        return populate(ModelFactory.createDefaultModel(), valid);
+    }
+
+    private static Model populate(Model model, boolean valid) {
+        addStandardNamespaces(model);
+        model.setNsPrefix("ldcOnt", LDCOntologyM36.NAMESPACE);
+        Resource system = makeSystemWithURI(model, NS + "system");
+        Resource event = makeEvent(model, NS + "event-1", system);
+        markType(model, NS + "assertion-1", event, valid ? LDCOntologyM36.Conflict_Attack :
+                model.createResource(LDCOntologyM36.NAMESPACE + "Unknown"), system, 1.0);
+        for (int i = 0; i < 5; i++) {
+            Resource entity = makeEntity(model, NS + "entity-" + i, system);
+            Resource type = markType(model, NS + "type-" + i, entity, LDCOntologyM36.PER, system, 0.5 + i / 10.0);
+            markTextJustification(model, type, "doc" + i, i, i + 10, system, 1.0);
+            markAsArgument(model, event, LDCOntologyM36.Conflict_Attack_Attacker, entity, system, 0.8, NS + "arg-" + i);
+        }
+        return model;
+    }
+
+    // Every combination of bound and unbound positions, using nodes that are present in the model
+    private static void assertSameFinds(Graph expected, Graph actual) {
+        assertEquals(expected.size(), actual.size(), "Sizes differ");
+        List<Triple> triples = expected.find().toList();
+        triples.add(Triple.create(NodeFactory.createURI(NS + "missing"), RDF.type.asNode(), Node.ANY));
+        for (Triple triple : triples) {
+            for (int mask = 0; mask < 8; mask++) {
+                Node s = (mask & 1) == 0 ? Node.ANY : triple.getSubject();
+                Node p = (mask & 2) == 0 ? Node.ANY : triple.getPredicate();
+                Node o = (mask & 4) == 0 ? Node.ANY : triple.getObject();
+                Set<Triple> want = new HashSet<>(expected.find(s, p, o).toList());
+                List<Triple> got = actual.find(s, p, o).toList();
+                assertEquals(want.size(), got.size(), "Duplicate or missing results for " + Triple.create(s, p, o));
+                assertEquals(want, new HashSet<>(got), "Different results for " + Triple.create(s, p, o));
+            }
+        }
+    }
+
+    private static Model copy(Model source, Model target) {
+        target.setNsPrefixes(source.getNsPrefixMap());
+        return target.add(source);
+    }
+
+    private static boolean isValid(ValidateAIF validator, Model model) {
+        return ValidateAIF.isValidSetOfReports(validator.validateKBAndReturnMultipleReports(model, null));
+    }
+
+    @Nested
+    class Frozen {
+        @Test
+        void findMatchesUnion() {
+            Model domain = ModelFactory.createDefaultModel().add(valid.listStatements(null, RDF.type, (Resource) null));
+            Graph union = ModelFactory.createUnion(valid, domain).getGraph();
+            FrozenGraph frozen = FrozenGraph.union(valid.getGraph(), domain.getGraph());
+            assertSameFinds(union, frozen);
+            assertEquals(valid.getNsPrefixMap(), frozen.getPrefixMapping().getNsPrefixMap());
+        }
+
+        @Test
+        void rejectsChanges() {
+            FrozenGraph frozen = FrozenGraph.union(valid.getGraph());
+            assertThrows(AddDeniedException.class, () -> frozen.add(valid.getGraph().find().next()));
+        }
+
+        @Test
+        void validatesLikeUnion() {
+            validator.setThreadCount(4);
+            try {
+                assertTrue(isValid(validator, valid));
+                assertFalse(isValid(validator, invalid));
+                validator.setFrozenSnapshot(true);
+                assertTrue(isValid(validator, valid));
+                assertFalse(isValid(validator, invalid));
+            } finally {
+                validator.setFrozenSnapshot(false);
+                validator.setThreadCount(1);
+            }
+        }
+    }
+
+    @Nested
+    class Compact {
+        @Test
+        void findMatchesDefault() {
+            Model compact = copy(valid, ValidateAIF.createCompactModel());
+            assertSameFinds(valid.getGraph(), compact.getGraph());
+        }
+
+        @Test
+        void interleavedChanges() {
+            Model expected = ModelFactory.createDefaultModel();
+            Model compact = ValidateAIF.createCompactModel();
+            List<Triple> triples = valid.getGraph().find().toList();
+            for (int i = 0; i < triples.size(); i++) {
+                for (Graph graph : List.of(expected.getGraph(), compact.getGraph())) {
+                    graph.add(triples.get(i));
+                    graph.add(triples.get(i / 2)); // usually a duplicate
+                }
+                if (i % 3 == 0) {
+                    expected.getGraph().delete(triples.get(i / 3));
+                    compact.getGraph().delete(triples.get(i / 3));
+                }
+                if (i % 10 == 0) {
+                    assertSameFinds(expected.getGraph(), compact.getGraph());
+                }
+            }
+            assertSameFinds(expected.getGraph(), compact.getGraph());
+            compact.removeAll();
+            assertEquals(0, compact.size());
+        }
+
+        @Test
+        void validatesLikeDefault() {
+            assertTrue(isValid(validator, copy(valid, ValidateAIF.createCompactModel())));
+            assertFalse(isValid(validator, copy(invalid, ValidateAIF.createCompactModel())));
+        }
+    }
+
+    @Nested
+    class Mapped {
+        @TempDir
+        Path directory;
+
+        private Path write(Model model, String name) throws IOException {
+            Path kb = directory.resolve(name);
+            try (OutputStream out = Files.newOutputStream(kb)) {
+                RDFDataMgr.write(out, model, RDFFormat.TURTLE_PRETTY);
+            }
+            return kb;
+        }
+
+        @Test
+        void findMatchesDefault() throws IOException {
+            Model model = copy(valid, ModelFactory.createDefaultModel());
+            model.add(model.createResource(NS + "labelled"), RDF.value, model.createLiteral("caf\u00e9", "fr"));
+            Path kb = write(model, "kb.ttl");
+            MappedGraph mapped = MappedGraph.open(kb, directory.resolve("index"));
+            // blank nodes are relabelled on parsing, so compare against a copy of what was parsed
+            assertTrue(model.getGraph().isIsomorphicWith(mapped));
+            Graph expected = ModelFactory.createDefaultModel().getGraph();
+            mapped.find().forEachRemaining(expected::add);
+            assertSameFinds(expected, mapped);
+            assertEquals(model.getNsPrefixMap(), mapped.getPrefixMapping().getNsPrefixMap());
+        }
+
+        @Test
+        void buildsFromSortedRuns() throws IOException {
+            Path kb = write(valid, "kb.ttl");
+            // runs of a few records spill every step of the build to disk
+            MappedGraph mapped = MappedGraph.open(kb, directory.resolve("index"), 7);
+            assertTrue(valid.getGraph().isIsomorphicWith(mapped));
+            Graph expected = ModelFactory.createDefaultModel().getGraph();
+            mapped.find().forEachRemaining(expected::add);
+            assertSameFinds(expected, mapped);
+            try (Stream<Path> files = Files.list(mapped.getDirectory())) {
+                assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".run")));
+            }
+        }
+
+        @Test
+        void reusesIndex() throws IOException {
+            Path kb = write(valid, "kb.ttl");
+            Path index = directory.resolve("index");
+            assertFalse(MappedGraph.hasCurrentIndex(kb, index));
+            long size = MappedGraph.open(kb, index).size();
+            assertTrue(MappedGraph.hasCurrentIndex(kb, index));
+            assertEquals(size, MappedGraph.open(kb, index).size());
+
+            write(invalid, "kb.ttl");
+            Files.setLastModifiedTime(kb, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            assertFalse(MappedGraph.hasCurrentIndex(kb, index));
+            assertFalse(isValid(validator, MappedGraph.openModel(kb, index)));
+        }
+
+        @Test
+        void closeUnmapsIndex() throws IOException {
+            Path kb = write(valid, "kb.ttl");
+            Path index = directory.resolve("index");
+            MappedGraph mapped = MappedGraph.open(kb, index);
+            long size = mapped.size();
+            mapped.close();
+            mapped.close();
+            assertThrows(ClosedException.class, mapped::find);
+
+            // the index can be removed and rebuilt once it is unmapped, here by closing its model
+            MappedGraph.openModel(kb, index).close();
+            try (Stream<Path> files = Files.walk(mapped.getDirectory())) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+            assertFalse(MappedGraph.hasCurrentIndex(kb, index));
+            assertEquals(size, MappedGraph.open(kb, index).size());
+        }
+
+        @Test
+        void validatesLikeDefault() throws IOException {
+            Path index = directory.resolve("index");
+            assertTrue(isValid(validator, MappedGraph.openModel(write(valid, "valid.ttl"), index)));
+            assertFalse(isValid(validator, MappedGraph.openModel(write(invalid, "invalid.ttl"), index)));
+        }
+
+        @Test
+        void readsCompressedKBs() throws IOException {
+            for (String name : List.of("kb.ttl.gz", "kb.ttl.zst")) {
+                Path kb = directory.resolve(name);
+                new AIFOrderedTurtleWriter().write(kb, valid);
+                assertTrue(valid.getGraph().isIsomorphicWith(MappedGraph.open(kb, directory.resolve(name + "-index"))));
+                Model loaded = ModelFactory.createDefaultModel();
+                new MemoryGovernor().load(loaded, kb, MemoryGovernor.Storage.MEMORY);
+                assertTrue(valid.isIsomorphicWith(loaded));
+            }
+        }
+    }
+
+    @Nested
+    class Binary {
+        @TempDir
+        Path directory;
+
+        @Test
+        void convertsBetweenFormats() throws IOException {
+            Path thrift = directory.resolve("kb.rt.zst");
+            KBFiles.write(valid, thrift);
+            Path turtle = directory.resolve("kb.ttl.gz");
+            assertEquals(ValidateAIFCli.ReturnCode.SUCCESS.ordinal(),
+                    ConvertAIFCli.execute(new String[]{thrift.toString(), turtle.toString()}));
+            Model converted = ModelFactory.createDefaultModel();
+            KBFiles.read(converted, turtle);
+            assertTrue(valid.isIsomorphicWith(converted));
+            assertEquals("kb", KBFiles.stripSuffixes(thrift.getFileName().toString()));
+        }
+
+        @Test
+        void validatesLikeTurtle() throws IOException {
+            Path index = directory.resolve("index");
+            Path validKB = directory.resolve("valid.trdf");
+            Path invalidKB = directory.resolve("invalid.rt");
+            KBFiles.write(valid, validKB);
+            KBFiles.write(invalid, invalidKB);
+            assertTrue(isValid(validator, MappedGraph.openModel(validKB, index)));
+            assertFalse(isValid(validator, MappedGraph.openModel(invalidKB, index)));
+        }
+    }
+
+    @Nested
+    class Streaming {
+        @TempDir
+        Path directory;
+
+        @Test
+        void streamsWhatWouldBeBuilt() throws IOException {
+            for (String name : new String[]{"kb.ttl", "kb.rt.gz"}) {
+                Path kb = directory.resolve(name);
+                Model streaming = AIFUtils.createStreamingModel(kb);
+                populate(streaming, true);
+                assertTrue(streaming.isEmpty());
+                streaming.close();
+
+                Model read = ModelFactory.createDefaultModel();
+                KBFiles.read(read, kb);
+                assertTrue(valid.isIsomorphicWith(read));
+                assertTrue(isValid(validator, read));
+            }
+        }
+    }
+
+    @Nested
+    class Indexed {
+        // The type assertions of every subject of the model, as the SPARQL query finds them
+        private void assertSameTypeAssertions(Model model, Model indexed) {
+            List<Resource> subjects = model.listSubjects().toList();
+            for (Resource subject : subjects) {
+                Set<Resource> expected = AIFUtils.getTypeAssertions(model, subject);
+                assertEquals(expected, AIFUtils.getTypeAssertions(indexed, subject));
+                assertEquals(expected, AIFUtils.getTypeAssertions(model, subjects).get(subject));
+                assertEquals(expected, AIFUtils.getTypeAssertions(indexed, subjects).get(subject));
+                assertEquals(expected, AIFUtils.getAllTypeAssertions(model).get(subject));
+            }
+        }
+
+        @Test
+        void indexMatchesQuery() {
+            Model model = createModel(true);
+            Model indexed = createModel(true);
+            AIFUtils.enableTypeAssertionIndex(indexed);
+            assertSameTypeAssertions(model, indexed);
+
+            for (Model m : new Model[]{model, indexed}) {
+                m.removeAll(m.createResource(NS + "type-1"), null, null);
+                m.remove(m.listStatements(m.createResource(NS + "type-2"), RDF.subject, (Resource) null).toList());
+                markType(m, NS + "type-5", m.createResource(NS + "entity-0"), LDCOntologyM36.ORG,
+                        m.createResource(NS + "system"), 0.5);
+            }
+            assertEquals(model.size(), indexed.size());
+            assertSameTypeAssertions(model, indexed);
+
+            indexed.removeAll();
+            AIFUtils.disableTypeAssertionIndex(indexed);
+            assertTrue(AIFUtils.getAllTypeAssertions(indexed).isEmpty());
+        }
+    }
+
+    @Nested
+    class Sharded {
+        // Threads make overlapping entities, so that the merge must combine them
+        private void populateShard(Model model, Resource system, int shard) {
+            Resource entity = makeEntity(model, NS + "entity-" + shard % 2, system);
+            Resource type = markType(model, NS + "type-" + shard, entity, LDCOntologyM36.PER, system, 0.5);
+            markTextJustification(model, type, "doc" + shard, shard, shard + 10, system, 1.0);
+            AIFUtils.makeClusterWithPrototype(model, NS + "cluster-" + shard % 2, entity, system);
+        }
+
+        @Test
+        void mergesLikeOneModel() throws Exception {
+            int threads = 4;
+            Model expected = ModelFactory.createDefaultModel();
+            Resource system = makeSystemWithURI(expected, NS + "system");
+            for (int shard = 0; shard < threads; shard++) {
+                populateShard(expected, system, shard);
+            }
+
+            for (boolean freeze : new boolean[]{false, true}) {
+                ShardedModelBuilder builder = new ShardedModelBuilder(NS + "system");
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    List<Future<?>> done = new ArrayList<>();
+                    for (int shard = 0; shard < threads; shard++) {
+                        int id = shard;
+                        done.add(executor.submit(() -> populateShard(builder.shard(), builder.system(), id)));
+                    }
+                    for (Future<?> future : done) {
+                        future.get();
+                    }
+                } finally {
+                    executor.shutdown();
+                }
+                Model merged = freeze ? builder.freeze() : builder.merge();
+                assertTrue(expected.isIsomorphicWith(merged));
+                assertEquals(RDF.uri, merged.getNsPrefixURI("rdf"));
+                assertTrue(isValid(validator, merged));
+                assertThrows(IllegalStateException.class, builder::shard);
+            }
+        }
+    }
+
+    @Nested
+    class Governed {
+        @TempDir
+        Path directory;
+
+        @Test
+        void choosesStorageBySize() {
+            long heap = 1L << 30;
+            assertEquals(MemoryGovernor.Storage.MEMORY, MemoryGovernor.chooseStorage(1 << 20, heap));
+            assertEquals(MemoryGovernor.Storage.COMPACT, MemoryGovernor.chooseStorage(1L << 27, heap));
+            assertEquals(MemoryGovernor.Storage.MAPPED, MemoryGovernor.chooseStorage(1L << 32, heap));
+        }
+
+        @Test
+        void estimatesCompressedSize() throws IOException {
+            Path plain = directory.resolve("kb.ttl");
+            new AIFOrderedTurtleWriter().write(plain, valid);
+            assertEquals(Files.size(plain), MemoryGovernor.estimateFileSize(plain));
+            for (String name : List.of("kb.ttl.gz", "kb.ttl.zst")) {
+                Path compressed = directory.resolve(name);
+                new AIFOrderedTurtleWriter().write(compressed, valid);
+                assertTrue(Files.size(compressed) < Files.size(plain));
+                // small enough to be measured exactly
+                assertEquals(Files.size(plain), MemoryGovernor.estimateFileSize(compressed), name);
+            }
+        }
+
+        @Test
+        void abandonsLoadOverBudget() throws IOException {
+            Model model = ModelFactory.createDefaultModel();
+            for (int i = 0; i < 20_000; i++) {
+                model.add(model.createResource(NS + "entity-" + i), RDF.value, model.createTypedLiteral(i));
+            }
+            Path kb = directory.resolve("kb.ttl");
+            try (OutputStream out = Files.newOutputStream(kb)) {
+                RDFDataMgr.write(out, model, RDFFormat.TURTLE_BLOCKS);
+            }
+
+            MemoryGovernor governor = new MemoryGovernor();
+            assertThrows(MemoryGovernor.BudgetExceededException.class, () ->
+                    governor.load(ValidateAIF.createCompactModel(), kb, MemoryGovernor.Storage.COMPACT, 1 << 10));
+            assertThrows(IllegalArgumentException.class, () ->
+                    governor.load(ModelFactory.createDefaultModel(), kb, MemoryGovernor.Storage.MAPPED));
+            Model loaded = ValidateAIF.createCompactModel();
+            governor.load(loaded, kb, MemoryGovernor.Storage.COMPACT, Long.MAX_VALUE);
+            assertTrue(model.isIsomorphicWith(loaded));
+        }
+
+        @Test
+        void validatesWithGovernor() {
+            validator.setThreadCount(4);
+            validator.setMemoryGovernor(new MemoryGovernor(0.01));
+            try {
+                assertTrue(isValid(validator, valid));
+                assertFalse(isValid(validator, invalid));
+            } finally {
+                validator.setMemoryGovernor(null);
+                validator.setThreadCount(1);
+            }
+        }
+    }
+}
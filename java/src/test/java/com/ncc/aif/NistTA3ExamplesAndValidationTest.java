@@ -26,6 +26,9 @@ import static com.ncc.aif.AIFUtils.markSystem;
 import static com.ncc.aif.AIFUtils.markTextJustification;
 import static com.ncc.aif.AIFUtils.markTextValue;
 import static com.ncc.aif.AIFUtils.markType;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Collections;
 import java.util.Set;
@@ -37,6 +40,7 @@ import com.ncc.aif.AIFUtils.Point;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.vocabulary.RDF;
 import org.junit.jupiter.api.BeforeAll;
@@ -361,6 +365,57 @@ public class NistTA3ExamplesAndValidationTest {
                                         utils.testValid("Create full valid claim frame"); 
                                 }
 
+                                @Test
+                                void validBatch() {
+                                        // the writer makes the same claim as addToModel
+                                        validClaim.setImportance(1d).addIdenticalClaim("someOtherClaimID1");
+                                        final Model direct = ModelFactory.createDefaultModel();
+                                        validClaim.addToModel(direct, utils.getUri("a_claimframe"), system);
+                                        final Model batched = ModelFactory.createDefaultModel();
+                                        try (AIFBatch.ClaimWriter writer = new AIFBatch.ClaimWriter(batched, system)) {
+                                                writer.addClaim(validClaim, utils.getUri("a_claimframe"));
+                                        }
+                                        assertTrue(direct.isIsomorphicWith(batched));
+
+                                        // components with the same content, here the claim's location and medium, are
+                                        // written once
+                                        try (AIFBatch.ClaimWriter writer = new AIFBatch.ClaimWriter(model, system)) {
+                                                final Resource location = writer.addComponent(new ClaimComponent()
+                                                                .setName("Some Shared Country")
+                                                                .setIdentity("Q718")
+                                                                .addType("Q3624078"), null);
+                                                final Resource medium = writer.addComponent(new ClaimComponent()
+                                                                .setName("Some Shared Country")
+                                                                .setIdentity("Q718")
+                                                                .addType("Q3624078"), null);
+                                                writer.addClaim(validClaim.setClaimLocation(location)
+                                                                .setClaimMedium(medium),
+                                                                utils.getUri("a_batched_claimframe"));
+                                        }
+                                        assertEquals(1, model.listSubjectsWithProperty(
+                                                        InterchangeOntology.componentIdentity, "Q718").toList().size());
+                                        utils.testValid("Create valid claim frame in a batch");
+
+                                        // a component given a URI is written with it, even if identical to another
+                                        final Model named = ModelFactory.createDefaultModel();
+                                        try (AIFBatch.ClaimWriter writer = new AIFBatch.ClaimWriter(named, system)) {
+                                                final ClaimComponent country = new ClaimComponent()
+                                                                .setName("Some Shared Country")
+                                                                .setIdentity("Q718")
+                                                                .addType("Q3624078");
+                                                final Resource unnamed = writer.addComponent(country, null);
+                                                final Resource first = writer.addComponent(country,
+                                                                utils.getUri("a_named_country"));
+                                                final Resource second = writer.addComponent(country,
+                                                                utils.getUri("another_named_country"));
+                                                assertEquals(utils.getUri("a_named_country"), first.getURI());
+                                                assertEquals(utils.getUri("another_named_country"), second.getURI());
+                                                assertNotEquals(unnamed, first);
+                                        }
+                                        assertEquals(3, named.listSubjectsWithProperty(
+                                                        InterchangeOntology.componentIdentity, "Q718").toList().size());
+                                }
+
                                 // Test Claim requires exactly 1 claimId
                                 @Test
                                 void invalidMissingClaimID() {
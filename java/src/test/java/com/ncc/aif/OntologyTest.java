@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 //TODO: consider removing this now that InterchangeOntology.java can be generated.
 @TestInstance(Lifecycle.PER_CLASS)
@@ -53,4 +54,15 @@ public class OntologyTest {
         }
         assertFalse(invalid, "Members from InterchangeOntology.java are undefined in InterchangeOntology");
     }
+
+    @Test
+    void domainOntologyIndex() {
+        DomainOntologyIndex index = ValidateAIF.createForLDCOntology(ValidateAIF.Restriction.NONE).getDomainIndex();
+        assertTrue(index.isSubClassOf(LDCOntologyM36.Conflict_Attack_Bombing.asNode(),
+                AidaDomainOntologiesCommon.EventType.asNode()));
+        assertTrue(index.isSubClassOf(InterchangeOntology.Entity.asNode(), InterchangeOntology.Entity.asNode()));
+        assertFalse(index.isSubClassOf(LDCOntologyM36.PER.asNode(), AidaDomainOntologiesCommon.EventType.asNode()));
+        assertTrue(index.isSubClassOf(LDCOntologyM36.PER.asNode(), AidaDomainOntologiesCommon.EntityType.asNode()));
+        assertFalse(index.isSubClassOf(AidaDomainOntologiesCommon.EntityType.asNode(), LDCOntologyM36.PER.asNode()));
+    }
 }
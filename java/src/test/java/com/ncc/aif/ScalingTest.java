@@ -3,6 +3,7 @@ package com.ncc.aif;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import com.google.common.collect.ImmutableSet;
+import com.ncc.aif.util.Compression;
 import org.apache.jena.ext.com.google.common.collect.ImmutableList;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
@@ -14,6 +15,7 @@ import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.tdb.TDBFactory;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -86,7 +88,7 @@ public class ScalingTest {
     private static final String NAMESPACE = "https://raw.githubusercontent.com/NextCenturyCorporation/AIDA-Interchange-Format/master/java/src/main/resources/com/ncc/aif/ontologies/LDCOntology#";
     private static final boolean ALLOW_NUMERIC_TYPES = false;
 
-    private final Random r = new Random();
+    private final Random r;
     private List<Resource> entityResourceList = null;
 
     private String filename = "scalingdata-" + entityCount + "x" + eventCount + ".ttl";
@@ -169,6 +171,19 @@ public class ScalingTest {
     // Set this to false to introduce some invalid elements into the generated model
     private boolean generateValidModel = true;
 
+    public ScalingTest() {
+        this(new Random());
+    }
+
+    // Generates the same KBs for the same seed, as SerializationBenchmarkTest requires
+    ScalingTest(long seed) {
+        this(new Random(seed));
+    }
+
+    private ScalingTest(Random r) {
+        this.r = r;
+    }
+
     /**
      * Main function.  See class description for arguments.
      */
@@ -253,6 +268,31 @@ public class ScalingTest {
     }
 
     private void runOneTest() {
+        populateModel();
+
+        int numStatements = 0;
+        StmtIterator statementIterator = model.listStatements();
+        while (statementIterator.hasNext()) {
+            statementIterator.nextStatement();
+            numStatements++;
+        }
+        System.out.print(" NumberStatements: " + numStatements);
+    }
+
+    /**
+     * Generate a valid in-memory KB of <code>entities</code> entities, with three events or relations for every ten
+     * entities.  Each entity contributes about 70 triples.
+     */
+    Model generateModel(int entities) {
+        entityCount = entities;
+        eventCount = entities * 3 / 10;
+        modelTypeToUse = MODEL_TYPE.MEMORY;
+        generateValidModel = true;
+        populateModel();
+        return model;
+    }
+
+    private void populateModel() {
         createModel();
         system = makeSystemWithURI(model, getTestSystemUri());
 
@@ -263,14 +303,6 @@ public class ScalingTest {
         for (int ii = 0; ii < eventCount; ii++) {
             addEventOrRelation();
         }
-
-        int numStatements = 0;
-        StmtIterator statementIterator = model.listStatements();
-        while (statementIterator.hasNext()) {
-            statementIterator.nextStatement();
-            numStatements++;
-        }
-        System.out.print(" NumberStatements: " + numStatements);
     }
 
     private void addEntity() {
@@ -472,11 +504,15 @@ public class ScalingTest {
         for (RDFFormat trialFormat : outputFormats) {
             String outputFilename = filename + "." + trialFormat.toString();
             outputFilename = outputFilename.replace(" ", "").replace("/", "_");
-            try {
-                RDFDataMgr.write(Files.newOutputStream(Paths.get(outputFilename)), model, trialFormat);
-            } catch (Exception e) {
-                System.err.println("Unable to write to file " + outputFilename + " " + e.getMessage());
-                e.printStackTrace();
+            // Also write each format compressed, to compare compressed sizes
+            for (Compression compression : Arrays.asList(Compression.NONE, Compression.GZIP, Compression.ZSTD)) {
+                String compressedFilename = outputFilename + compression.getSuffix();
+                try (OutputStream out = Compression.newOutputStream(Paths.get(compressedFilename))) {
+                    RDFDataMgr.write(out, model, trialFormat);
+                } catch (Exception e) {
+                    System.err.println("Unable to write to file " + compressedFilename + " " + e.getMessage());
+                    e.printStackTrace();
+                }
             }
         }
     }
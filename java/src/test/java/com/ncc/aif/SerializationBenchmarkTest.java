@@ -0,0 +1,229 @@
+package com.ncc.aif;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.ncc.aif.util.AIFOrderedTurtleWriter;
+import com.ncc.aif.util.AbstractTurtleWriter;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Measures the throughput, allocation, and output size of each way AIF KBs are serialized, on KBs generated by
+ * {@link ScalingTest}, and fails if any writer exceeds its budget.  Only runs when the <code>aif.benchmark</code>
+ * system property is true, as it is in the <code>benchmark</code> profile:
+ * <pre>
+ *     mvn test -Pbenchmark [-Daif.benchmark.triples=10000,50000000] [-Daif.benchmark.budget=FILE]
+ * </pre>
+ * Budgets are read from <code>serialization-budget.properties</code> beside this class, unless another file is given.
+ * Each budget is a maximum per writer:
+ * <ul>
+ *     <li><code>WRITER.timeRatio</code> - time to write, relative to N-Triples on the same KB</li>
+ *     <li><code>WRITER.allocatedBytesPerTriple</code> - bytes allocated by the writing thread, which excludes those
+ *     allocated on the pool by <code>AIF_ORDERED_PARALLEL</code></li>
+ *     <li><code>WRITER.outputBytesPerTriple</code> - bytes written</li>
+ * </ul>
+ * Time is compared relative to N-Triples so that the same budget holds on faster and slower machines.  A budget that is
+ * not set is not checked.  Measurements are also written to <code>target/serialization-benchmark.properties</code>,
+ * in the same form, from which to update the budgets when a change is expected.
+ */
+@EnabledIfSystemProperty(named = "aif.benchmark", matches = "true")
+public class SerializationBenchmarkTest {
+    private static final String BUDGET_RESOURCE = "serialization-budget.properties";
+    private static final Path REPORT = Paths.get("target", "serialization-benchmark.properties");
+    // ScalingTest generates about this many triples for each entity
+    private static final int TRIPLES_PER_ENTITY = 70;
+    // Larger KBs are written fewer times, and without warming up, so that each writer writes about this many triples
+    private static final long TRIPLES_PER_WRITER = 10_000_000L;
+    private static final long SEED = 2019L;
+
+    private interface ModelWriter {
+        void write(OutputStream out, Model model) throws IOException;
+    }
+
+    private enum Writer {
+        // N-Triples is first, as the baseline of the others' time
+        N_TRIPLES((out, model) -> RDFDataMgr.write(out, model, RDFFormat.NTRIPLES)),
+        AIF_ORDERED((out, model) -> new AIFOrderedTurtleWriter().write(out, model)),
+        // the same output, formatting subjects on the common pool
+        AIF_ORDERED_PARALLEL((out, model) -> new AIFOrderedTurtleWriter()
+                .setParallel(ForkJoinPool.commonPool(), AbstractTurtleWriter.DEFAULT_CHUNK_SIZE).write(out, model)),
+        TURTLE_PRETTY((out, model) -> RDFDataMgr.write(out, model, RDFFormat.TURTLE_PRETTY)),
+        TURTLE_BLOCKS((out, model) -> RDFDataMgr.write(out, model, RDFFormat.TURTLE_BLOCKS)),
+        RDF_THRIFT((out, model) -> RDFDataMgr.write(out, model, RDFFormat.RDF_THRIFT));
+
+        private final ModelWriter writer;
+
+        Writer(ModelWriter writer) {
+            this.writer = writer;
+        }
+    }
+
+    // The measurements of one writer on one KB
+    private static class Result {
+        private final Writer writer;
+        private final long triples;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final long outputBytes;
+        private double timeRatio;
+
+        private Result(Writer writer, long triples, long nanos, long allocatedBytes, long outputBytes) {
+            this.writer = writer;
+            this.triples = triples;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.outputBytes = outputBytes;
+        }
+
+        private double triplesPerSecond() {
+            return triples * 1e9 / nanos;
+        }
+
+        private double allocatedBytesPerTriple() {
+            return (double) allocatedBytes / triples;
+        }
+
+        private double outputBytesPerTriple() {
+            return (double) outputBytes / triples;
+        }
+
+        private double allocationRate() {
+            return allocatedBytes * 1e9 / nanos;
+        }
+    }
+
+    @Test
+    void writersStayWithinBudget() throws IOException {
+        final Properties budget = loadBudget();
+        final int warmups = Integer.getInteger("aif.benchmark.warmups", 2);
+        final int iterations = Integer.getInteger("aif.benchmark.iterations", 5);
+
+        final List<Result> results = new ArrayList<>();
+        for (String size : System.getProperty("aif.benchmark.triples", "10000,1000000").split(",")) {
+            final int entities = Math.max(1, Integer.parseInt(size.trim()) / TRIPLES_PER_ENTITY);
+            final Model model = new ScalingTest(SEED).generateModel(entities);
+            final long triples = model.size();
+            final long runs = Math.max(1, Math.min(iterations, TRIPLES_PER_WRITER / triples));
+
+            final Map<Writer, Result> byWriter = new EnumMap<>(Writer.class);
+            for (Writer writer : Writer.values()) {
+                byWriter.put(writer, measure(writer, model, runs < iterations ? 0 : warmups, runs));
+            }
+            final Result baseline = byWriter.get(Writer.N_TRIPLES);
+            for (Result result : byWriter.values()) {
+                result.timeRatio = (double) result.nanos / baseline.nanos;
+                results.add(result);
+            }
+            model.close();
+        }
+
+        report(results, System.out);
+        writeReport(results);
+
+        final List<String> overBudget = new ArrayList<>();
+        for (Result result : results) {
+            checkBudget(budget, result, "timeRatio", result.timeRatio, overBudget);
+            checkBudget(budget, result, "allocatedBytesPerTriple", result.allocatedBytesPerTriple(), overBudget);
+            checkBudget(budget, result, "outputBytesPerTriple", result.outputBytesPerTriple(), overBudget);
+        }
+        assertTrue(overBudget.isEmpty(), "Writers over budget:\n" + String.join("\n", overBudget));
+    }
+
+    // Write the model repeatedly, to no file, and keep the median time.  Allocation is that of the last write.
+    private static Result measure(Writer writer, Model model, int warmups, long runs) throws IOException {
+        for (int i = 0; i < warmups; i++) {
+            writer.writer.write(ByteStreams.nullOutputStream(), model);
+        }
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long[] nanos = new long[(int) runs];
+        long allocated = 0;
+        long written = 0;
+        for (int i = 0; i < runs; i++) {
+            final CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+            final long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            final long start = System.nanoTime();
+            writer.writer.write(out, model);
+            nanos[i] = System.nanoTime() - start;
+            allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+            written = out.getCount();
+        }
+        Arrays.sort(nanos);
+        return new Result(writer, model.size(), nanos[nanos.length / 2], allocated, written);
+    }
+
+    private static Properties loadBudget() throws IOException {
+        final Properties budget = new Properties();
+        final String file = System.getProperty("aif.benchmark.budget");
+        try (InputStream in = file == null ? SerializationBenchmarkTest.class.getResourceAsStream(BUDGET_RESOURCE)
+                : Files.newInputStream(Paths.get(file))) {
+            if (in != null) {
+                budget.load(in);
+            }
+        }
+        return budget;
+    }
+
+    private static void checkBudget(Properties budget, Result result, String measure, double value,
+                                    List<String> overBudget) {
+        final String key = result.writer + "." + measure;
+        final String maximum = budget.getProperty(key);
+        if (maximum != null && value > Double.parseDouble(maximum)) {
+            overBudget.add(String.format("%s on %d triples: %.2f > %s", key, result.triples, value, maximum));
+        }
+    }
+
+    private static void report(List<Result> results, PrintStream out) {
+        out.printf("%-20s %10s %14s %12s %14s %12s %10s%n", "Writer", "Triples", "Triples/sec", "Time ratio",
+                "Alloc MB/sec", "Alloc B/tr", "Out B/tr");
+        for (Result result : results) {
+            out.printf("%-20s %10d %14.0f %12.2f %14.1f %12.1f %10.1f%n", result.writer, result.triples,
+                    result.triplesPerSecond(), result.timeRatio, result.allocationRate() / 1e6,
+                    result.allocatedBytesPerTriple(), result.outputBytesPerTriple());
+        }
+    }
+
+    // Record the largest measurement of each writer as a budget, for updating serialization-budget.properties
+    private static void writeReport(List<Result> results) throws IOException {
+        final Properties measured = new Properties();
+        for (Result result : results) {
+            putMax(measured, result.writer + ".timeRatio", result.timeRatio);
+            putMax(measured, result.writer + ".allocatedBytesPerTriple", result.allocatedBytesPerTriple());
+            putMax(measured, result.writer + ".outputBytesPerTriple", result.outputBytesPerTriple());
+        }
+        Files.createDirectories(REPORT.getParent());
+        try (OutputStream out = Files.newOutputStream(REPORT)) {
+            measured.store(out, "Serialization benchmark measurements");
+        }
+    }
+
+    private static void putMax(Properties properties, String key, double value) {
+        final String previous = properties.getProperty(key);
+        if (previous == null || value > Double.parseDouble(previous)) {
+            properties.setProperty(key, String.format(Locale.ROOT, "%.2f", value));
+        }
+    }
+}
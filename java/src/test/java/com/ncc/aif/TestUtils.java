@@ -14,19 +14,25 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nullable;
 
+import com.ncc.aif.util.AIFCanonicalWriter;
 import com.ncc.aif.util.AIFOrderedTurtleWriter;
+import com.ncc.aif.util.AIFStreamingOrderedTurtleWriter;
 
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Triple;
@@ -35,6 +41,7 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.RDFDataMgr;
 import org.topbraid.shacl.vocabulary.SH;
 
 import ch.qos.logback.classic.Logger;
@@ -59,6 +66,9 @@ class TestUtils {
     private final boolean dumpAlways;
     private final boolean dumpToFile;
     private final AIFOrderedTurtleWriter writer;
+    private final AIFStreamingOrderedTurtleWriter streamingWriter;
+    private final AIFOrderedTurtleWriter parallelWriter;
+    private final AIFCanonicalWriter canonicalWriter;
 
     private static final String DUMP_DIRECTORY = "test-dump-output";
 
@@ -92,6 +102,12 @@ class TestUtils {
         this.logger = (Logger) org.slf4j.LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
         this.expectedCounts = new HashMap<>();
         writer = new AIFOrderedTurtleWriter();
+        // runs of two subjects, so that every section of every dump is merged from spilled runs
+        streamingWriter = new AIFStreamingOrderedTurtleWriter(2, Paths.get("target"));
+        // one subject per task, so that every subject is formatted separately
+        parallelWriter = new AIFOrderedTurtleWriter();
+        parallelWriter.setParallel(ForkJoinPool.commonPool(), 1);
+        canonicalWriter = new AIFCanonicalWriter(2, Paths.get("target"));
     }
 
     /**
@@ -430,7 +446,21 @@ class TestUtils {
             try {
                 Path path = createDirectoryForPath(outputFilename);
                 logger.info("Dump to " + path);
-                writer.write(Files.newOutputStream(path), model);
+                ByteArrayOutputStream ordered = new ByteArrayOutputStream();
+                writer.write(ordered, model);
+                Files.write(path, ordered.toByteArray());
+
+                ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+                streamingWriter.write(streamed, model);
+                assertEquals(ordered.toString(StandardCharsets.UTF_8), streamed.toString(StandardCharsets.UTF_8),
+                        "Streaming writer differs from ordered writer");
+
+                ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+                parallelWriter.write(parallel, model);
+                assertEquals(ordered.toString(StandardCharsets.UTF_8), parallel.toString(StandardCharsets.UTF_8),
+                        "Parallel writer differs from ordered writer");
+
+                assertCanonicalRoundTrip(model, path);
             } catch (IOException ioe) {
                 logger.error("---> Could not dump model to " + outputFilename);
             }
@@ -440,6 +470,32 @@ class TestUtils {
         }
     }
 
+    /**
+     * Assert that the canonical form of a model is unchanged by writing and reading it back, and that merging
+     * canonical files drops the lines they share
+     */
+    private void assertCanonicalRoundTrip(Model model, Path dump) throws IOException {
+        Model reread = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(reread, dump.toString());
+        ByteArrayOutputStream canonical = new ByteArrayOutputStream();
+        canonicalWriter.write(canonical, model);
+        ByteArrayOutputStream rereadCanonical = new ByteArrayOutputStream();
+        canonicalWriter.write(rereadCanonical, reread);
+        assertEquals(canonical.toString(StandardCharsets.UTF_8), rereadCanonical.toString(StandardCharsets.UTF_8),
+                "Canonical form differs after reading back " + dump);
+
+        Path shard = Files.createTempFile(Paths.get("target"), "canonical", ".nt");
+        try {
+            Files.write(shard, canonical.toByteArray());
+            ByteArrayOutputStream merged = new ByteArrayOutputStream();
+            AIFCanonicalWriter.merge(List.of(shard, shard), merged);
+            assertEquals(canonical.toString(StandardCharsets.UTF_8), merged.toString(StandardCharsets.UTF_8),
+                    "Merged canonical form differs");
+        } finally {
+            Files.delete(shard);
+        }
+    }
+
     /**
      * This method dumps the model either to stdout or to a file
      *
@@ -174,6 +174,30 @@ public class ValidateCLITest {
 
     }
 
+    @Nested
+    class ModelArguments {
+        @Test
+        void correctFrozen() {
+            expectCorrect("--ldc", "--frozen", "-t", "4", "-f", "tmp.ttl");
+        }
+        @Test
+        void correctCompact() {
+            expectCorrect("--ldc", "--compact", "-f", "tmp.ttl");
+        }
+        @Test
+        void correctMapped() {
+            expectCorrect("--ldc", "--mapped", "-f", "tmp.ttl");
+        }
+        @Test
+        void correctAutoStorage() {
+            expectCorrect("--ldc", "--auto-storage", "-t", "4", "-f", "tmp.ttl");
+        }
+        @Test
+        void tooManyModelArguments() {
+            expectUsageError(ValidateAIFCli.ERR_TOO_MANY_MODEL_FLAGS, "--ldc", "--compact", "--mapped", "-f", "tmp.ttl");
+        }
+    }
+
     @Nested
     class FileArguments {
         @Test
@@ -181,6 +205,16 @@ public class ValidateCLITest {
             expectCorrect("--ldc", "-t", "4", "-f", "tmp.ttl", "another.ttl");
         }
         @Test
+        void correctCompressedFiles() {
+            expect("Could not read tmp.ttl.zst", ValidateAIFCli.ReturnCode.FILE_ERROR,
+                    "--ldc", "-f", "tmp.ttl.gz", "tmp.ttl.zst");
+        }
+        @Test
+        void correctThriftFiles() {
+            expect("Could not read tmp.trdf", ValidateAIFCli.ReturnCode.FILE_ERROR,
+                    "--ldc", "-f", "tmp.rt", "tmp.trdf");
+        }
+        @Test
         void correctDirectory() {
             expectCorrect("--ldc", "-t", "4", "-d", "tmp");
         }
@@ -209,5 +243,9 @@ public class ValidateCLITest {
         void correctCombinedArguments() {
             expectCorrect("--ldc", "-op", "-f", "tmp.ttl");
         }
+        @Test
+        void correctCompressedReports() {
+            expectCorrect("--ldc", "-o", "--compress-reports", "gzip", "-f", "tmp.ttl");
+        }
     }
 }
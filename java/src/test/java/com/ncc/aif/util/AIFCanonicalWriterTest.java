@@ -0,0 +1,151 @@
+package com.ncc.aif.util;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class AIFCanonicalWriterTest {
+    private static final String NS = "http://example.com/";
+    private static final Pattern LABEL = Pattern.compile("_:c[0-9a-f]+");
+
+    private final AIFCanonicalWriter writer = new AIFCanonicalWriter(2, Paths.get("target"));
+
+    private String canonical(Model model) {
+        return canonical(writer, model);
+    }
+
+    private static String canonical(AIFCanonicalWriter writer, Model model) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, model);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Set<String> labels(String canonical) {
+        Set<String> labels = new HashSet<>();
+        Matcher matcher = LABEL.matcher(canonical);
+        while (matcher.find()) {
+            labels.add(matcher.group());
+        }
+        return labels;
+    }
+
+    private static long lines(String canonical) {
+        return canonical.lines().count();
+    }
+
+    @Test
+    void contentWhoseStringsConcatenateAlikeIsLabeledApart() {
+        // X = {p "ab", q "c"} and Y = {p "a", q "bc"} would share a label if their content were hashed unseparated
+        Model model = ModelFactory.createDefaultModel();
+        Resource s = model.createResource(NS + "s");
+        Property r = model.createProperty(NS + "r");
+        Property p = model.createProperty(NS + "p");
+        Property q = model.createProperty(NS + "q");
+        s.addProperty(r, model.createResource().addProperty(p, "ab").addProperty(q, "c"));
+        s.addProperty(r, model.createResource().addProperty(p, "a").addProperty(q, "bc"));
+
+        String canonical = canonical(model);
+        assertEquals(2, labels(canonical).size(), canonical);
+        assertEquals(6, lines(canonical), canonical);
+    }
+
+    @Test
+    void duplicateContentIsLabeledApart() {
+        Model model = ModelFactory.createDefaultModel();
+        Resource s = model.createResource(NS + "s");
+        Property r = model.createProperty(NS + "r");
+        Property p = model.createProperty(NS + "p");
+        for (int i = 0; i < 3; i++) {
+            s.addProperty(r, model.createResource().addProperty(p, "same"));
+        }
+
+        String canonical = canonical(model);
+        assertEquals(3, labels(canonical).size(), canonical);
+        assertEquals(6, lines(canonical), canonical);
+    }
+
+    @Test
+    void isomorphicModelsAreWrittenAlike() {
+        List<Integer> order = new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5));
+        String first = canonical(cycles(order, 6));
+        Collections.reverse(order);
+        assertEquals(first, canonical(cycles(order, 6)));
+        Collections.swap(order, 0, 3);
+        assertEquals(first, canonical(cycles(order, 6)));
+
+        // two cycles of three look the same as one of six to refinement, but are not isomorphic to it
+        String split = canonical(cycles(order, 3));
+        assertEquals(6, labels(split).size(), split);
+        assertNotEquals(first, split);
+        Collections.reverse(order);
+        assertEquals(split, canonical(cycles(order, 3)));
+    }
+
+    @Test
+    void identicalCyclicComponentsAreLabeledApart() {
+        Model model = ModelFactory.createDefaultModel();
+        Property p = model.createProperty(NS + "p");
+        for (int i = 0; i < 8; i++) {
+            Resource a = model.createResource();
+            Resource b = model.createResource();
+            model.add(a, p, b);
+            model.add(b, p, a);
+        }
+
+        String canonical = canonical(model);
+        assertEquals(16, labels(canonical).size(), canonical);
+        assertEquals(16, lines(canonical), canonical);
+    }
+
+    @Test
+    void duplicateSubtreesAreLabeledApart() {
+        // the same justification made many times for one subject, and many identical children of one blank node
+        Model model = ModelFactory.createDefaultModel();
+        Resource s = model.createResource(NS + "s");
+        Resource root = model.createResource();
+        Property r = model.createProperty(NS + "r");
+        Property p = model.createProperty(NS + "p");
+        Property q = model.createProperty(NS + "q");
+        s.addProperty(r, root);
+        for (int i = 0; i < 2000; i++) {
+            s.addProperty(p, model.createResource().addProperty(q, model.createResource().addProperty(p, "same")));
+            root.addProperty(p, model.createResource().addProperty(q, model.createResource().addProperty(p, "same")));
+        }
+
+        String canonical = canonical(new AIFCanonicalWriter(1 << 16, Paths.get("target")), model);
+        assertEquals(8001, labels(canonical).size());
+        assertEquals(12001, lines(canonical));
+    }
+
+    // six blank nodes in cycles of the specified length, created and linked in the specified order
+    private static Model cycles(List<Integer> order, int length) {
+        Model model = ModelFactory.createDefaultModel();
+        Property next = model.createProperty(NS + "next");
+        Resource[] nodes = new Resource[order.size()];
+        for (int i : order) {
+            nodes[i] = model.createResource();
+        }
+        for (int i : order) {
+            int cycle = i / length * length;
+            model.add(nodes[i], next, nodes[cycle + (i + 1) % length]);
+        }
+        return model;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ncc.aif.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExternalSorterTest {
+    // {key, order added}, sorted by key alone
+    private static final ExternalSorter.Codec<int[]> PAIRS = new ExternalSorter.Codec<int[]>() {
+        @Override
+        public void write(DataOutput out, int[] record) throws IOException {
+            out.writeInt(record[0]);
+            out.writeInt(record[1]);
+        }
+
+        @Override
+        public int[] read(DataInput in) throws IOException {
+            return new int[]{in.readInt(), in.readInt()};
+        }
+    };
+
+    @TempDir
+    Path directory;
+
+    private long runFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".run")).count();
+        }
+    }
+
+    @Test
+    void mergesManyRunsFewAtATime() throws IOException {
+        final int count = 1000;
+        final int fanIn = 3;
+        final List<int[]> expected = new ArrayList<>(count);
+        try (ExternalSorter<int[]> sorter = new ExternalSorter<>(PAIRS, Comparator.comparingInt(pair -> pair[0]),
+                1, fanIn, directory)) {
+            for (int i = 0; i < count; i++) {
+                int[] pair = {(i * 7919) % 13, i};
+                sorter.add(pair);
+                expected.add(pair);
+            }
+            // a run of one record is spilled as each is added
+            assertEquals(count, runFiles());
+
+            Iterator<int[]> sorted = sorter.sorted();
+            // fewer runs than the fan-in are left for the final merge, to leave room for the buffer
+            assertTrue(runFiles() < fanIn, "runs left to merge: " + runFiles());
+            expected.sort(Comparator.comparingInt(pair -> pair[0]));
+            for (int[] pair : expected) {
+                int[] actual = sorted.next();
+                assertEquals(pair[0], actual[0]);
+                // equal keys stay in the order they were added
+                assertEquals(pair[1], actual[1]);
+            }
+            assertFalse(sorted.hasNext());
+        }
+        assertEquals(0, runFiles());
+    }
+}
@@ -0,0 +1,90 @@
+package com.ncc.aif.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that {@link Utf8ByteSink} encodes exactly as the JDK's UTF-8 encoder does
+ */
+public class Utf8ByteSinkTest {
+    private static final String HIGH = "\uD83D";
+    private static final String LOW = "\uDE00";
+    private static final String PAIR = HIGH + LOW;
+
+    // Bytes written by Utf8ByteSink, each part in its own write call
+    private static byte[] sink(String... parts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new Utf8ByteSink(bytes)) {
+            for (String part : parts) {
+                writer.write(part);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // Bytes written by the JDK's encoding writer, each part in its own write call
+    private static byte[] jdk(String... parts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            for (String part : parts) {
+                writer.write(part);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertEncodedAsJdk(String text) throws IOException {
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), sink(text), text);
+    }
+
+    @Test
+    void bmpText() throws IOException {
+        assertEncodedAsJdk("plain ASCII <http://example.com/a> \"lit\" .\n");
+        assertEncodedAsJdk("Latin-1 é ñ ü, Greek αβγ, Cyrillic жизнь");
+        assertEncodedAsJdk("CJK 中文 日本語 한국어, symbols € ™ � ￿, controls \u0000\u007F\u0080߿ࠀ");
+    }
+
+    @Test
+    void supplementaryCharacters() throws IOException {
+        assertEncodedAsJdk(PAIR);
+        assertEncodedAsJdk("emoji " + PAIR + " and 𐀀 and 􏿿, music 𝄞");
+    }
+
+    @Test
+    void loneSurrogates() throws IOException {
+        assertEncodedAsJdk(HIGH);
+        assertEncodedAsJdk(LOW);
+        assertEncodedAsJdk("a" + HIGH + "b");
+        assertEncodedAsJdk("a" + LOW + "b");
+        assertEncodedAsJdk(HIGH + HIGH + LOW);
+        assertEncodedAsJdk(LOW + HIGH + LOW + LOW);
+        assertEncodedAsJdk(HIGH + "é" + HIGH + "中" + HIGH + PAIR);
+        assertEncodedAsJdk("end " + HIGH);
+    }
+
+    @Test
+    void surrogatePairSplitAcrossWrites() throws IOException {
+        assertArrayEquals(jdk(HIGH, LOW), sink(HIGH, LOW));
+        assertArrayEquals(PAIR.getBytes(StandardCharsets.UTF_8), sink(HIGH, LOW));
+        assertArrayEquals(jdk("a" + HIGH, LOW + "b", HIGH), sink("a" + HIGH, LOW + "b", HIGH));
+        assertArrayEquals(jdk(HIGH, "b"), sink(HIGH, "b"));
+    }
+
+    @Test
+    void textLargerThanBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 << 16) {
+            text.append("x").append(PAIR).append("中é");
+        }
+        assertEncodedAsJdk(text.toString());
+        String half = text.substring(0, (1 << 16) + 1);
+        assertArrayEquals(jdk(half, text.substring(half.length())), sink(half, text.substring(half.length())));
+    }
+}